@@ -0,0 +1,172 @@
+package com.example.android.booksapiapp;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the inflations, binds and frame times of the result list, on an Android device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookListBenchmarkTest {
+
+    private static final String LOG_TAG = BookListBenchmarkTest.class.getSimpleName();
+
+    // Frames slower than this miss the 60 fps deadline
+    private static final long JANK_FRAME_NANOS = 16700000L;
+
+    private static final int BOOK_COUNT = 60;
+
+    @Rule
+    public ActivityTestRule<BooksActivity> activityRule = new ActivityTestRule<>(BooksActivity.class);
+
+    @Test
+    public void updatingOneBookRebindsOnlyItsRow() throws Exception {
+        final RecyclerView list = (RecyclerView) activityRule.getActivity().findViewById(R.id.list);
+        final BookAdapter adapter = attachOwnAdapter(list);
+        final List<Book> books = TestBooks.makeBooks(BOOK_COUNT);
+
+        runAndWaitForIdle(new Runnable() {
+            @Override
+            public void run() {
+                adapter.swapBooks(books);
+            }
+        });
+        int bindsBefore = adapter.getBindCount();
+        int createsBefore = adapter.getCreateCount();
+
+        // The same books with a single title changed
+        final List<Book> updated = new ArrayList<>(books);
+        Book first = updated.get(0);
+        updated.set(0, new Book(first.getVolumeId(), first.getBookAuthor(), "Changed title", first.getBookLink()));
+        runAndWaitForIdle(new Runnable() {
+            @Override
+            public void run() {
+                adapter.swapBooks(updated);
+            }
+        });
+
+        int binds = adapter.getBindCount() - bindsBefore;
+        int creates = adapter.getCreateCount() - createsBefore;
+        Log.i(LOG_TAG, "One changed book: binds=" + binds + ", creates=" + creates);
+        assertTrue("binds=" + binds, binds <= 1);
+        assertTrue("creates=" + creates, creates <= 1);
+    }
+
+    @Test
+    public void scrollingTheListReusesRows() throws Exception {
+        final RecyclerView list = (RecyclerView) activityRule.getActivity().findViewById(R.id.list);
+        final BookAdapter adapter = attachOwnAdapter(list);
+        runAndWaitForIdle(new Runnable() {
+            @Override
+            public void run() {
+                adapter.swapBooks(TestBooks.makeBooks(BOOK_COUNT));
+            }
+        });
+
+        final FrameTimer frameTimer = new FrameTimer();
+        final CountDownLatch scrolled = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                    @Override
+                    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                            frameTimer.stop();
+                            scrolled.countDown();
+                        }
+                    }
+                });
+                frameTimer.start();
+                list.smoothScrollToPosition(BOOK_COUNT - 1);
+            }
+        });
+        assertTrue(scrolled.await(30, TimeUnit.SECONDS));
+
+        Log.i(LOG_TAG, "Scroll: frames=" + frameTimer.frameCount + ", janky=" + frameTimer.jankyCount
+                + ", creates=" + adapter.getCreateCount() + ", binds=" + adapter.getBindCount());
+
+        // Rows are recycled, so far fewer rows are inflated than bound
+        assertTrue(adapter.getCreateCount() < BOOK_COUNT);
+        assertTrue(adapter.getBindCount() >= adapter.getCreateCount());
+    }
+
+    /**
+     * Show the list with an adapter only the test fills. The search the activity started
+     * keeps delivering its books to the adapter of the activity, which would otherwise
+     * swap them in while the test measures.
+     */
+    private BookAdapter attachOwnAdapter(final RecyclerView list) {
+        final BooksActivity activity = activityRule.getActivity();
+        final BookAdapter[] adapter = new BookAdapter[1];
+        runAndWaitForIdle(new Runnable() {
+            @Override
+            public void run() {
+                adapter[0] = new BookAdapter(activity, new BookAdapter.OnBookClickListener() {
+                    @Override
+                    public void onBookClick(Book book) {
+                    }
+                });
+                list.setAdapter(adapter[0]);
+                list.setVisibility(View.VISIBLE);
+            }
+        });
+        return adapter[0];
+    }
+
+    private static void runAndWaitForIdle(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    /**
+     * Counts the frames drawn between start() and stop(), and the ones that were too slow
+     */
+    private static final class FrameTimer implements Choreographer.FrameCallback {
+
+        private boolean running;
+        private long lastFrameNanos;
+        int frameCount;
+        int jankyCount;
+
+        void start() {
+            running = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!running) {
+                return;
+            }
+            if (lastFrameNanos != 0) {
+                frameCount++;
+                if (frameTimeNanos - lastFrameNanos > JANK_FRAME_NANOS) {
+                    jankyCount++;
+                }
+            }
+            lastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.android.booksapiapp;
+
+import android.content.ComponentCallbacks2;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Tests the two tiers of {@link BookListCache} under the {@link MemoryBudget}, on an Android
+ * device where its in-memory LruCache is available.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookListCacheInstrumentedTest {
+
+    private static final String URL = "https://www.googleapis.com/books/v1/volumes?q=android";
+
+    private File cacheDir;
+
+    @Before
+    public void clearCacheDir() {
+        cacheDir = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "book_list_cache_test");
+        new BookListCache(cacheDir, 1).clear();
+    }
+
+    @Test
+    public void trimmedLists_areReadBackFromDisk() {
+        List<Book> books = TestBooks.makeBooks(20);
+        BookListCache cache = new BookListCache(cacheDir, 100 * BookListCache.estimateBytes(books));
+        MemoryBudget budget = new MemoryBudget(64, false);
+        budget.register("results", cache);
+        cache.put(URL, books);
+        assertEquals(BookListCache.estimateBytes(books), budget.getResidentBytes());
+
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(BookListCache.estimateBytes(books), budget.getResidentBytes());
+
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, budget.getResidentBytes());
+        List<Book> restored = cache.get(URL);
+        assertNotSame(books, restored);
+        assertEquals(books, restored);
+    }
+
+    @Test
+    public void listsPutInMemory_leaveTheFileAsItIs() {
+        List<Book> firstPage = TestBooks.makeBooks(20);
+        List<Book> twoPages = new ArrayList<>(firstPage);
+        twoPages.addAll(TestBooks.makeBooks(40).subList(20, 40));
+        BookListCache cache = new BookListCache(cacheDir, 100 * BookListCache.estimateBytes(twoPages));
+        cache.put(URL, firstPage);
+        cache.putInMemory(URL, twoPages);
+        assertEquals(twoPages, cache.get(URL));
+
+        // Once trimmed from memory, the list written last is read back
+        cache.trimToBytes(0);
+        assertEquals(firstPage, cache.get(URL));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.booksapiapp;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests saving, searching and evicting the books of {@link BookStore}, on an Android device
+ * where SQLite and its full-text tables are available.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookStoreInstrumentedTest {
+
+    private static final int MAX_BOOKS = 3;
+
+    private BookStore store;
+
+    @Before
+    public void openStore() {
+        // A null name keeps the database in memory, so every test starts from an empty store
+        store = new BookStore(InstrumentationRegistry.getTargetContext(), null, MAX_BOOKS);
+    }
+
+    @After
+    public void closeStore() {
+        store.close();
+    }
+
+    @Test
+    public void savedBooks_areFoundByTheStartOfTheirTitleOrAuthors() {
+        Book book = new Book("id1", Arrays.asList("Joshua Bloch", "Neal Gafter"), "Java Puzzlers",
+                "http://example.com/1", null, "2005-06-24", 312, 4.5f, 20);
+        store.saveBooks(Arrays.asList(book, new Book("id2", "Someone Else", "Kotlin", "http://example.com/2")));
+
+        List<Book> byTitle = store.search("jav puzz", 10);
+        assertEquals(1, byTitle.size());
+        assertEquals(book, byTitle.get(0));
+        assertEquals(312, byTitle.get(0).getPageCount());
+
+        // Every author is indexed, not only the main one
+        assertEquals(Arrays.asList(book), store.search("gaft", 10));
+        assertTrue(store.search("python", 10).isEmpty());
+    }
+
+    @Test
+    public void savingABookAgain_updatesItInsteadOfAddingIt() {
+        store.saveBooks(Arrays.asList(new Book("id1", "Author", "Old Title", "http://example.com/1")));
+        store.saveBooks(Arrays.asList(new Book("id1", "Author", "New Title", "http://example.com/1")));
+
+        assertTrue(store.search("old", 10).isEmpty());
+        List<Book> books = store.search("author", 10);
+        assertEquals(1, books.size());
+        assertEquals("New Title", books.get(0).getBookTitle());
+    }
+
+    @Test
+    public void trim_evictsTheBooksSeenTheLongestTimeAgo() throws InterruptedException {
+        for (int i = 0; i < MAX_BOOKS + 2; i++) {
+            store.saveBooks(Arrays.asList(new Book("id" + i, "Author", "Title " + i, "http://example.com/" + i)));
+            // Give every book its own last seen time
+            Thread.sleep(5);
+        }
+
+        List<Book> books = store.search("title", 10);
+        assertEquals(MAX_BOOKS, books.size());
+        // The most recently seen first, and the first two were evicted
+        assertEquals("id4", books.get(0).getVolumeId());
+        assertEquals("id2", books.get(MAX_BOOKS - 1).getVolumeId());
+        assertTrue(store.search("title 0", 10).isEmpty());
+        assertTrue(store.search("title 1", 10).isEmpty());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.booksapiapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the in-memory cache and the reuse pool of {@link ImageLoader}, on an Android device
+ * where bitmaps can be allocated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageLoaderTest {
+
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 96;
+
+    @Test
+    public void evictedBitmap_isOnlyReusedOnceNoViewShowsIt() {
+        ImageLoader loader = newLoader();
+        Bitmap shown = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        loader.retain(shown);
+        loader.memoryCache.put("http://example.com/shown", shown);
+
+        // Evicted while a row still shows it, so it must not be decoded into
+        MemoryBudget.trim(loader.memoryCache, 0);
+        assertEquals(0, loader.getReusableCount());
+        assertNull(loader.takeReusable(optionsFor(WIDTH, HEIGHT)));
+
+        loader.release(shown);
+        assertEquals(1, loader.getReusableCount());
+        assertSame(shown, loader.takeReusable(optionsFor(WIDTH, HEIGHT)));
+        assertEquals(0, loader.getReusableCount());
+    }
+
+    @Test
+    public void trimToBytes_dropsTheCacheAndTheReusePool() {
+        ImageLoader loader = newLoader();
+        loader.memoryCache.put("http://example.com/a", Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        loader.memoryCache.put("http://example.com/b", Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        assertEquals(2 * WIDTH * HEIGHT * 4, loader.getResidentBytes());
+
+        loader.trimToBytes(0);
+        assertEquals(0, loader.getResidentBytes());
+        assertEquals(0, loader.getReusableCount());
+    }
+
+    private static ImageLoader newLoader() {
+        File cacheDir = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "image_loader_test");
+        return new ImageLoader(cacheDir, 1024 * 1024);
+    }
+
+    // Returns the options of a thumbnail of the given size decoded without downsampling
+    private static BitmapFactory.Options optionsFor(int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.outWidth = width;
+        options.outHeight = height;
+        options.inSampleSize = 1;
+        return options;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.android.booksapiapp;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link ParsedBooks} returned by the streaming parser of {@link BookUtils}, on an
+ * Android device where android.util.JsonReader is available. The same response is parsed
+ * with the DOM parser by the local ParsedBooksTest.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParsedBooksStreamingTest {
+
+    // A valid volume, one without authors and info link, one without title and one that is not an object
+    private static final String RESPONSE = "{\"kind\":\"books#volumes\",\"items\":["
+            + "{\"id\":\"a\",\"volumeInfo\":{\"title\":\"Android\",\"authors\":[\"Ann\"],\"infoLink\":\"http://a\"}},"
+            + "{\"id\":\"b\",\"volumeInfo\":{\"title\":\"Basics\",\"pageCount\":12.5}},"
+            + "{\"id\":\"c\",\"volumeInfo\":{\"authors\":[\"Carl\"],\"infoLink\":\"http://c\"}},"
+            + "42,"
+            + "{\"id\":\"d\",\"volumeInfo\":{\"title\":\"Design\",\"authors\":\"Dora\",\"infoLink\":\"http://d\"}}"
+            + "],\"totalItems\":5}";
+
+    @Test
+    public void invalidVolumes_areSkippedOrCompletedWithDefaults() throws Exception {
+        ParsedBooks books = BookUtils.extractFromStream(stream(RESPONSE));
+
+        assertTrue(books.isComplete());
+        assertEquals(5, books.getItemCount());
+        assertEquals(3, books.size());
+        assertEquals(2, books.getSkippedCount());
+
+        Book basics = books.get(1);
+        assertEquals("Basics", basics.getBookTitle());
+        assertEquals("https://books.google.com/books?id=b", basics.getBookLink());
+        assertTrue(basics.getBookAuthors().isEmpty());
+        assertEquals(12, basics.getPageCount());
+
+        List<String> designAuthors = books.get(2).getBookAuthors();
+        assertEquals(1, designAuthors.size());
+        assertEquals("Dora", designAuthors.get(0));
+    }
+
+    @Test
+    public void cutOffResponse_keepsTheVolumesReadBefore() throws Exception {
+        String cutOff = RESPONSE.substring(0, RESPONSE.indexOf("{\"id\":\"c\"") + 20);
+
+        ParsedBooks books = BookUtils.extractFromStream(stream(cutOff));
+
+        assertFalse(books.isComplete());
+        assertEquals(2, books.size());
+        assertEquals(2, books.getItemCount());
+    }
+
+    @Test
+    public void failingStream_keepsTheVolumesReadBefore() throws Exception {
+        final byte[] bytes = RESPONSE.getBytes(Charset.forName("UTF-8"));
+        final int failAt = RESPONSE.indexOf("42,") + 3;
+        // Fails like a connection dropped in the middle of the body
+        InputStream dropped = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position == failAt) {
+                    throw new IOException("Connection reset");
+                }
+                return bytes[position++] & 0xff;
+            }
+        };
+
+        ParsedBooks books = BookUtils.extractFromStream(dropped);
+
+        assertFalse(books.isComplete());
+        assertEquals(2, books.size());
+        assertEquals(4, books.getItemCount());
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8")));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the time from launching {@link BooksActivity} to its first rendered row, with and
+ * without a startup snapshot, on an Android device. The times are logged, e.g.
+ * "adb logcat -s StartupBenchmarkTest", and the system also logs them as "Fully drawn".
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmarkTest {
+
+    private static final String LOG_TAG = StartupBenchmarkTest.class.getSimpleName();
+
+    // Time allowed to show the first row without a snapshot, which needs the network
+    private static final long NETWORK_TIMEOUT_SECONDS = 30;
+
+    // The snapshot rows must be shown within a few frames of the launch
+    private static final long SNAPSHOT_FIRST_ROW_MAX_MILLIS = 1000;
+
+    // Time between two checks of whether the first row was drawn
+    private static final long POLL_MILLIS = 5;
+
+    // The activity is launched by each test, after the snapshot is prepared
+    @Rule
+    public ActivityTestRule<BooksActivity> activityRule = new ActivityTestRule<>(BooksActivity.class, false, false);
+
+    @Test
+    public void firstRowWithSnapshot() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        StartupPipeline.saveSnapshot(context, "google", TestBooks.makeBooks(BookSearch.FIRST_PAGE_SIZE));
+        BookSearch.clearLastResults(context);
+
+        long millis = launchAndTimeFirstRow(SNAPSHOT_FIRST_ROW_MAX_MILLIS);
+
+        Log.i(LOG_TAG, "Time to first row with a snapshot: " + millis + " ms");
+        assertTrue("no row within " + SNAPSHOT_FIRST_ROW_MAX_MILLIS + " ms", millis >= 0);
+        assertTrue("first row after " + millis + " ms", millis <= SNAPSHOT_FIRST_ROW_MAX_MILLIS);
+    }
+
+    @Test
+    public void firstRowWithoutSnapshot() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        StartupPipeline.deleteSnapshot(context);
+        BookSearch.clearLastResults(context);
+
+        long millis = launchAndTimeFirstRow(TimeUnit.SECONDS.toMillis(NETWORK_TIMEOUT_SECONDS));
+
+        // Without network nor stored books there may be no row at all
+        Log.i(LOG_TAG, "Time to first row without a snapshot: "
+                + (millis >= 0 ? millis + " ms" : "no row within " + NETWORK_TIMEOUT_SECONDS + " s"));
+    }
+
+    /**
+     * Launch the activity and wait for it to draw the first row of its list
+     *
+     * @return the time from the launch to that frame, or -1 if no row was drawn in time
+     */
+    private long launchAndTimeFirstRow(long timeoutMillis) throws InterruptedException {
+        long start = SystemClock.uptimeMillis();
+        BooksActivity activity = activityRule.launchActivity(null);
+
+        // The activity records the frame itself, from a pre-draw listener of the list
+        long drawn;
+        while ((drawn = activity.getFirstRowDrawnUptimeMillis()) < 0) {
+            if (SystemClock.uptimeMillis() - start > timeoutMillis) {
+                return -1;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+        return drawn - start;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.android.booksapiapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Made-up books shared by the instrumented tests
+ */
+final class TestBooks {
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name TestBooks.
+     */
+    private TestBooks() {
+    }
+
+    /**
+     * Return the given number of books, each with its own id, author, title and link and
+     * without a thumbnail, so showing them never goes to the network
+     */
+    static List<Book> makeBooks(int count) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(new Book("volume" + i, "Author " + i, "Title " + i, "https://example.com/" + i));
+        }
+        return books;
+    }
+}
@@ -1,17 +1,56 @@
 package com.example.android.booksapiapp;
 
+import android.os.Parcel;
+import android.os.Parcelable;
 
-public class Book {
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.WeakHashMap;
+
+
+public class Book implements Parcelable {
+
+    // Separates the authors joined by joinAuthors(), authors cannot contain it
+    private static final String AUTHOR_SEPARATOR = "\u001f";
+
+    // Authors already used by a book, so books of the same author share a single String
+    private static final WeakHashMap<String, WeakReference<String>> sAuthors = new WeakHashMap<>();
+
+    //Create a variable for the Google Books volume id of the book
+    private String volumeId;
 
     //Create a variable for the author of the book
     private String bookAuthor;
 
+    //Create a variable for the other authors of the book, null when there is only one
+    private String[] otherAuthors;
+
     //Create a variable for the title of the book
     private String bookTitle;
 
     //Create a variable for the info link of the book
     private String bookLink;
 
+    //Create a variable for the URL of the book cover thumbnail
+    private String thumbnailUrl;
+
+    /* Create a variable for the published date of the book, packed as yyyymmdd with 00 for
+     * an unknown month or day, or 0 if the date is unknown. It is only formatted when asked for. */
+    private int publishedDate;
+
+    //Create a variable for the number of pages of the book, 0 if unknown
+    private int pageCount;
+
+    //Create a variable for the average rating of the book, 0 if it has no ratings
+    private float averageRating;
+
+    //Create a variable for the number of ratings of the book
+    private int ratingsCount;
+
     /**
      * CONSTRUCTOR
      * <p>
@@ -22,9 +61,90 @@ public class Book {
      * @param link   is the web link for the book
      */
     public Book(String author, String title, String link) {
-        bookAuthor = author;
+        this(null, author, title, link);
+    }
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Construct a book object with
+     *
+     * @param id     is the Google Books volume id of the book object, or null
+     * @param author is the author of the book object
+     * @param title  is the title of the book object
+     * @param link   is the web link for the book
+     */
+    public Book(String id, String author, String title, String link) {
+        this(id, author, title, link, null);
+    }
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Construct a book object with
+     *
+     * @param id        is the Google Books volume id of the book object, or null
+     * @param author    is the author of the book object
+     * @param title     is the title of the book object
+     * @param link      is the web link for the book
+     * @param thumbnail is the URL of the cover thumbnail of the book, or null
+     */
+    public Book(String id, String author, String title, String link, String thumbnail) {
+        this(id, author, null, title, link, thumbnail, 0, 0, 0, 0);
+    }
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Construct a book object with
+     *
+     * @param id            is the Google Books volume id of the book object, or null
+     * @param authors       is the list of authors of the book object, the first one is the main author
+     * @param title         is the title of the book object
+     * @param link          is the web link for the book
+     * @param thumbnail     is the URL of the cover thumbnail of the book, or null
+     * @param published     is the published date of the book, e.g. "2004", "2004-05" or "2004-05-12", or null
+     * @param pageCount     is the number of pages of the book, 0 if unknown
+     * @param averageRating is the average rating of the book, 0 if it has no ratings
+     * @param ratingsCount  is the number of ratings of the book
+     */
+    public Book(String id, List<String> authors, String title, String link, String thumbnail,
+                String published, int pageCount, float averageRating, int ratingsCount) {
+        this(id, authors == null || authors.isEmpty() ? null : authors.get(0),
+                authors == null || authors.size() < 2 ? null : authors.subList(1, authors.size()).toArray(new String[authors.size() - 1]),
+                title, link, thumbnail, packDate(published), pageCount, averageRating, ratingsCount);
+    }
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Construct a book object from its compact fields, e.g. when it is decoded
+     *
+     * @param otherAuthors  is the array of authors after the first one, or null. It is kept, not copied.
+     * @param publishedDate is the published date packed as yyyymmdd, or 0 if unknown
+     */
+    Book(String id, String author, String[] otherAuthors, String title, String link, String thumbnail,
+         int publishedDate, int pageCount, float averageRating, int ratingsCount) {
+        volumeId = id;
+        bookAuthor = internAuthor(author);
+        if (otherAuthors != null && otherAuthors.length > 0) {
+            for (int i = 0; i < otherAuthors.length; i++) {
+                otherAuthors[i] = internAuthor(otherAuthors[i]);
+            }
+            this.otherAuthors = otherAuthors;
+        }
         bookTitle = title;
         bookLink = link;
+        thumbnailUrl = thumbnail;
+        this.publishedDate = publishedDate;
+        this.pageCount = pageCount;
+        this.averageRating = averageRating;
+        this.ratingsCount = ratingsCount;
+    }
+
+    // Getter method that returns the Google Books volume id, or null if unknown
+    public String getVolumeId() {
+        return volumeId;
     }
 
     // Getter method that returns the author of the book
@@ -32,6 +152,25 @@ public class Book {
         return bookAuthor;
     }
 
+    // Getter method that returns all the authors of the book, the main author first
+    public List<String> getBookAuthors() {
+        if (bookAuthor == null) {
+            return Collections.emptyList();
+        }
+        if (otherAuthors == null) {
+            return Collections.singletonList(bookAuthor);
+        }
+        List<String> authors = new ArrayList<>(otherAuthors.length + 1);
+        authors.add(bookAuthor);
+        authors.addAll(Arrays.asList(otherAuthors));
+        return Collections.unmodifiableList(authors);
+    }
+
+    // Getter method that returns the authors after the first one, or null. Must not be changed.
+    String[] getOtherAuthors() {
+        return otherAuthors;
+    }
+
     // Getter method that returns the web link of the book
     public String getBookLink() {
         return bookLink;
@@ -41,4 +180,191 @@ public class Book {
     public String getBookTitle() {
         return bookTitle;
     }
+
+    // Getter method that returns the URL of the cover thumbnail, or null if there is none
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    // Getter method that returns the published date, e.g. "2004" or "2004-05-12", or null if unknown
+    public String getPublishedDate() {
+        return formatDate(publishedDate);
+    }
+
+    // Getter method that returns the published date packed as yyyymmdd, or 0 if unknown
+    int getPackedPublishedDate() {
+        return publishedDate;
+    }
+
+    // Getter method that returns the number of pages, 0 if unknown
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    // Getter method that returns the average rating, 0 if the book has no ratings
+    public float getAverageRating() {
+        return averageRating;
+    }
+
+    // Getter method that returns the number of ratings
+    public int getRatingsCount() {
+        return ratingsCount;
+    }
+
+    /**
+     * Pack a published date like "2004", "2004-05" or "2004-05-12" into an int like 20040512,
+     * with 00 for an unknown month or day.
+     *
+     * @return the packed date, or 0 if the date is null or not in one of these forms
+     */
+    static int packDate(String date) {
+        if (date == null || date.length() < 4) {
+            return 0;
+        }
+        try {
+            int year = Integer.parseInt(date.substring(0, 4));
+            int month = date.length() >= 7 && date.charAt(4) == '-' ? Integer.parseInt(date.substring(5, 7)) : 0;
+            int day = date.length() >= 10 && month != 0 && date.charAt(7) == '-' ? Integer.parseInt(date.substring(8, 10)) : 0;
+            if (year <= 0 || month < 0 || month > 12 || day < 0 || day > 31) {
+                return 0;
+            }
+            return year * 10000 + month * 100 + day;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Helper method that formats a date packed by packDate()
+    private static String formatDate(int packed) {
+        if (packed == 0) {
+            return null;
+        }
+        int year = packed / 10000;
+        int month = packed / 100 % 100;
+        int day = packed % 100;
+        if (month == 0) {
+            return String.format(Locale.US, "%04d", year);
+        }
+        if (day == 0) {
+            return String.format(Locale.US, "%04d-%02d", year, month);
+        }
+        return String.format(Locale.US, "%04d-%02d-%02d", year, month, day);
+    }
+
+    /**
+     * Join the given authors into a single String, e.g. to store them
+     *
+     * @return the joined authors, or null if there are none
+     */
+    static String joinAuthors(String[] authors) {
+        if (authors == null || authors.length == 0) {
+            return null;
+        }
+        StringBuilder joined = new StringBuilder(authors[0]);
+        for (int i = 1; i < authors.length; i++) {
+            joined.append(AUTHOR_SEPARATOR).append(authors[i]);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Split authors joined by {@link #joinAuthors(String[])}
+     *
+     * @return the authors, or null if there are none
+     */
+    static String[] splitAuthors(String joined) {
+        return joined == null ? null : joined.split(AUTHOR_SEPARATOR, -1);
+    }
+
+    /**
+     * Return the given author, or an equal String already used by another book
+     */
+    static String internAuthor(String author) {
+        if (author == null) {
+            return null;
+        }
+        synchronized (sAuthors) {
+            WeakReference<String> reference = sAuthors.get(author);
+            String interned = reference != null ? reference.get() : null;
+            if (interned == null) {
+                sAuthors.put(author, new WeakReference<>(author));
+                interned = author;
+            }
+            return interned;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Book)) {
+            return false;
+        }
+        Book book = (Book) other;
+        return equal(volumeId, book.volumeId)
+                && equal(bookAuthor, book.bookAuthor)
+                && Arrays.equals(otherAuthors, book.otherAuthors)
+                && equal(bookTitle, book.bookTitle)
+                && equal(bookLink, book.bookLink)
+                && equal(thumbnailUrl, book.thumbnailUrl)
+                && publishedDate == book.publishedDate
+                && pageCount == book.pageCount
+                && Float.compare(averageRating, book.averageRating) == 0
+                && ratingsCount == book.ratingsCount;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = volumeId != null ? volumeId.hashCode() : 0;
+        result = 31 * result + (bookAuthor != null ? bookAuthor.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(otherAuthors);
+        result = 31 * result + (bookTitle != null ? bookTitle.hashCode() : 0);
+        result = 31 * result + (bookLink != null ? bookLink.hashCode() : 0);
+        result = 31 * result + (thumbnailUrl != null ? thumbnailUrl.hashCode() : 0);
+        result = 31 * result + publishedDate;
+        result = 31 * result + pageCount;
+        result = 31 * result + Float.floatToIntBits(averageRating);
+        result = 31 * result + ratingsCount;
+        return result;
+    }
+
+    // Helper method that compares two values that may be null
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(volumeId);
+        dest.writeString(bookAuthor);
+        dest.writeStringArray(otherAuthors);
+        dest.writeString(bookTitle);
+        dest.writeString(bookLink);
+        dest.writeString(thumbnailUrl);
+        dest.writeInt(publishedDate);
+        dest.writeInt(pageCount);
+        dest.writeFloat(averageRating);
+        dest.writeInt(ratingsCount);
+    }
+
+    public static final Parcelable.Creator<Book> CREATOR = new Parcelable.Creator<Book>() {
+        @Override
+        public Book createFromParcel(Parcel source) {
+            return new Book(source.readString(), source.readString(), source.createStringArray(),
+                    source.readString(), source.readString(), source.readString(),
+                    source.readInt(), source.readInt(), source.readFloat(), source.readInt());
+        }
+
+        @Override
+        public Book[] newArray(int size) {
+            return new Book[size];
+        }
+    };
 }
@@ -1,64 +1,242 @@
 package com.example.android.booksapiapp;
 
 import android.content.Context;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
-public class BookAdapter extends ArrayAdapter<Book> {
+public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder> {
+
+    // The list of books shown by the adapter
+    private List<Book> bookList = new ArrayList<>();
+
+    // Loads the cover thumbnails of the rows
+    private final ImageLoader imageLoader;
+
+    // Size of the thumbnail view of a row, in pixels
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+
+    // Called when a row is clicked
+    private final OnBookClickListener clickListener;
+
+    // Stable id given to each book shown, so a book keeps its row across updates
+    private final Map<Object, Long> stableIds = new HashMap<>();
+
+    // Id given to the next book that has none yet, never reused
+    private long nextStableId;
+
+    // Counters used to measure the inflations and binds per search
+    private int createCount;
+    private int bindCount;
 
     /**
      * CONSTRUCTOR
      * <p>
      * Constructs {@link BookAdapter} object with
      *
-     * @param context is the context of the adapter
-     * @param books   is the list of book objects
+     * @param context       is the context of the adapter
+     * @param clickListener is called when a book is clicked
+     */
+    public BookAdapter(Context context, OnBookClickListener clickListener) {
+        this.clickListener = clickListener;
+        imageLoader = ImageLoader.getInstance(context);
+        thumbnailWidth = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_width);
+        thumbnailHeight = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_height);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replace the books shown by the adapter with the given ones, applying only the
+     * differences so only the changed rows are rebound and animated. Appending a page
+     * to the books already shown only inserts the new rows. Used when a page is loaded
+     * or the books are revalidated, where few rows change.
+     *
+     * @param books is the new list of books, or null to clear the adapter
+     */
+    public void swapBooks(List<Book> books) {
+        final List<Book> oldBooks = bookList;
+        final List<Book> newBooks = books == null ? new ArrayList<Book>() : new ArrayList<>(books);
+        bookList = newBooks;
+        forgetStableIds(newBooks);
+
+        // A new page was appended, no need to compare the books already shown
+        if (newBooks.size() >= oldBooks.size() && newBooks.subList(0, oldBooks.size()).equals(oldBooks)) {
+            if (newBooks.size() > oldBooks.size()) {
+                notifyItemRangeInserted(oldBooks.size(), newBooks.size() - oldBooks.size());
+            }
+            return;
+        }
+
+        long start = PipelineTracer.begin(PipelineTracer.STAGE_DIFF);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldBooks.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newBooks.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return idKey(oldBooks.get(oldItemPosition)).equals(idKey(newBooks.get(newItemPosition)));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldBooks.get(oldItemPosition).equals(newBooks.get(newItemPosition));
+            }
+        });
+        PipelineTracer.end(PipelineTracer.STAGE_DIFF, start, newBooks.size(), 0);
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Replace the books shown by the adapter with the given ones without comparing them,
+     * e.g. after a new sort order or filter, where most rows move and the diff would cost
+     * more than rebinding the visible rows. The stable ids keep the rows of the books
+     * that are still shown.
+     *
+     * @param books is the new list of books, or null to clear the adapter
      */
-    public BookAdapter(Context context, List<Book> books) {
-        super(context, 0, books);
+    public void replaceBooks(List<Book> books) {
+        bookList = books == null ? new ArrayList<Book>() : new ArrayList<>(books);
+        forgetStableIds(bookList);
+        notifyDataSetChanged();
     }
 
     /**
-     * @param position    The position in the list of data that should be displayed in the
-     *                    list item view.
-     * @param convertView The recycled view to populate.
-     * @param parent      The parent ViewGroup that is used for inflation.
-     * @return The View for the position in the AdapterView.
+     * Forget the ids of the books that are no longer shown, e.g. after a new search, so
+     * the map only ever holds the books of the list
      */
-    @NonNull
+    private void forgetStableIds(List<Book> books) {
+        if (stableIds.size() <= books.size()) {
+            return;
+        }
+        Set<Object> shownKeys = new HashSet<>();
+        for (Book book : books) {
+            shownKeys.add(idKey(book));
+        }
+        stableIds.keySet().retainAll(shownKeys);
+    }
+
+    // Getter method that returns the book at the given position
+    public Book getItem(int position) {
+        return bookList.get(position);
+    }
+
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        View listView = convertView;
+    public int getItemCount() {
+        return bookList.size();
+    }
 
-        // If there is no recyclable view, create a new one
-        if (listView == null) {
-            listView = LayoutInflater.from(getContext()).inflate(R.layout.list_item, parent, false);
+    @Override
+    public long getItemId(int position) {
+        Object key = idKey(bookList.get(position));
+        Long id = stableIds.get(key);
+        if (id == null) {
+            id = nextStableId++;
+            stableIds.put(key, id);
         }
+        return id;
+    }
+
+    // Books without a volume id can only be told apart by their content
+    private static Object idKey(Book book) {
+        return book.getVolumeId() != null ? book.getVolumeId() : book;
+    }
+
+    @Override
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        createCount++;
+        View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        return new BookViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+        bindCount++;
+        long start = PipelineTracer.begin(PipelineTracer.STAGE_BIND);
 
         // Get the current book object
-        Book currentBook = getItem(position);
-
-        /* Find the TextView that represent the title in the list_item.xml
-         *  by its ID */
-        TextView titleView = (TextView) listView.findViewById(R.id.title_view);
-        // And set the title name of the current book
-        titleView.setText(currentBook.getBookTitle());
-
-        /* Find the TextView that represent the author in the list_item.xml
-         *  by its ID  */
-        TextView authorView = (TextView) listView.findViewById(R.id.author_view);
-        // And set the author name of the current book
-        authorView.setText(currentBook.getBookAuthor());
-
-        // Return the list view
-        return listView;
+        Book currentBook = bookList.get(position);
+
+        // Set the title name of the current book
+        holder.titleView.setText(currentBook.getBookTitle());
+
+        // Set the author name of the current book, some books have no authors
+        if (currentBook.getBookAuthor() != null) {
+            holder.authorView.setText(currentBook.getBookAuthor());
+        } else {
+            holder.authorView.setText(R.string.unknown_author);
+        }
+
+        // Load the cover of the current book off the main thread
+        imageLoader.load(currentBook.getThumbnailUrl(), holder.thumbnailView, thumbnailWidth, thumbnailHeight);
+        PipelineTracer.end(PipelineTracer.STAGE_BIND, start, 1, 0);
+    }
+
+    @Override
+    public void onViewRecycled(BookViewHolder holder) {
+        // Cancel the cover request and release the bitmap of the recycled row
+        imageLoader.load(null, holder.thumbnailView, thumbnailWidth, thumbnailHeight);
+    }
+
+    // Getter method that returns the number of rows inflated so far
+    public int getCreateCount() {
+        return createCount;
+    }
+
+    // Getter method that returns the number of rows bound so far
+    public int getBindCount() {
+        return bindCount;
+    }
+
+    /**
+     * Called when a book of the list is clicked
+     */
+    public interface OnBookClickListener {
+        void onBookClick(Book book);
+    }
+
+    /**
+     * Holds the views of a row, so they are only looked up when the row is inflated
+     */
+    class BookViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView titleView;
+        final TextView authorView;
+        final ImageView thumbnailView;
+
+        BookViewHolder(View itemView) {
+            super(itemView);
+            titleView = (TextView) itemView.findViewById(R.id.title_view);
+            authorView = (TextView) itemView.findViewById(R.id.author_view);
+            thumbnailView = (ImageView) itemView.findViewById(R.id.thumbnail_view);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                clickListener.onBookClick(bookList.get(position));
+            }
+        }
     }
 }
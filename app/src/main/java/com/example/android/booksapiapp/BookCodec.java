@@ -0,0 +1,368 @@
+package com.example.android.booksapiapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Compact binary format for a list of {@link Book}s, e.g. a page of results, used where
+ * JSON would be too slow: caches, saved state and handing results to another process.
+ * <p>
+ * Every distinct string is stored once in a string table, so an author of many books only
+ * takes space once, and each book is a fixed-size record of references into that table.
+ * A decoded {@link BookList} reads directly from the buffer, which may be a memory-mapped
+ * file, and only turns a book into a {@link Book} when it is first asked for.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * int    magic
+ * int    format version
+ * int    key reference
+ * int    book count
+ * int    string count
+ * int[]  string offsets, one more than the string count, relative to the string data
+ * int[]  book records: volume id, author, other authors, title, link and thumbnail
+ *        references, then the packed published date, page count, average rating bits
+ *        and ratings count
+ * byte[] string data, UTF-8
+ * </pre>
+ * A reference is the index of a string in the table, or -1 for null. The other authors of
+ * a book are stored as one string, see {@link Book#joinAuthors(String[])}.
+ */
+public final class BookCodec {
+
+    // "BOOK" in ASCII, marks the start of an encoded list
+    private static final int MAGIC = 0x424F4F4B;
+
+    // Version of the format, lists encoded with another version are rejected
+    public static final int FORMAT_VERSION = 2;
+
+    // Size of the fixed header, in bytes
+    private static final int HEADER_BYTES = 5 * 4;
+
+    // Number of ints of a book record
+    private static final int FIELDS_PER_BOOK = 10;
+
+    private static final int FIELD_VOLUME_ID = 0;
+    private static final int FIELD_AUTHOR = 1;
+    private static final int FIELD_OTHER_AUTHORS = 2;
+    private static final int FIELD_TITLE = 3;
+    private static final int FIELD_LINK = 4;
+    private static final int FIELD_THUMBNAIL = 5;
+    private static final int FIELD_PUBLISHED_DATE = 6;
+    private static final int FIELD_PAGE_COUNT = 7;
+    private static final int FIELD_AVERAGE_RATING = 8;
+    private static final int FIELD_RATINGS_COUNT = 9;
+
+    private static final int NULL_REFERENCE = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BookCodec() {
+    }
+
+    /**
+     * Encode the given books
+     *
+     * @param key   is a string stored with the books, e.g. the request URL, or null
+     * @param books is the list of books
+     * @return the encoded list
+     */
+    public static byte[] encode(String key, List<Book> books) {
+        // Give every distinct string an index in the string table
+        Map<String, Integer> references = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int keyReference = reference(key, references, strings);
+        int[] records = new int[books.size() * FIELDS_PER_BOOK];
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            int record = i * FIELDS_PER_BOOK;
+            records[record + FIELD_VOLUME_ID] = reference(book.getVolumeId(), references, strings);
+            records[record + FIELD_AUTHOR] = reference(book.getBookAuthor(), references, strings);
+            records[record + FIELD_OTHER_AUTHORS] = reference(Book.joinAuthors(book.getOtherAuthors()), references, strings);
+            records[record + FIELD_TITLE] = reference(book.getBookTitle(), references, strings);
+            records[record + FIELD_LINK] = reference(book.getBookLink(), references, strings);
+            records[record + FIELD_THUMBNAIL] = reference(book.getThumbnailUrl(), references, strings);
+            records[record + FIELD_PUBLISHED_DATE] = book.getPackedPublishedDate();
+            records[record + FIELD_PAGE_COUNT] = book.getPageCount();
+            records[record + FIELD_AVERAGE_RATING] = Float.floatToIntBits(book.getAverageRating());
+            records[record + FIELD_RATINGS_COUNT] = book.getRatingsCount();
+        }
+
+        int stringBytes = 0;
+        for (byte[] string : strings) {
+            stringBytes += string.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (strings.size() + 1) * 4
+                + records.length * 4 + stringBytes);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(keyReference);
+        buffer.putInt(books.size());
+        buffer.putInt(strings.size());
+        int offset = 0;
+        for (byte[] string : strings) {
+            buffer.putInt(offset);
+            offset += string.length;
+        }
+        buffer.putInt(offset);
+        for (int reference : records) {
+            buffer.putInt(reference);
+        }
+        for (byte[] string : strings) {
+            buffer.put(string);
+        }
+        return buffer.array();
+    }
+
+    private static int reference(String value, Map<String, Integer> references, List<byte[]> strings) {
+        if (value == null) {
+            return NULL_REFERENCE;
+        }
+        Integer reference = references.get(value);
+        if (reference == null) {
+            reference = strings.size();
+            references.put(value, reference);
+            strings.add(value.getBytes(UTF_8));
+        }
+        return reference;
+    }
+
+    /**
+     * Decode a list of books from the given bytes. The bytes must not be changed while the
+     * list is used.
+     *
+     * @throws IOException if the bytes are not a list encoded with the current version
+     */
+    public static BookList decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decode a list of books from the remaining bytes of the given buffer, without copying
+     * them. The buffer must not be changed while the list is used.
+     *
+     * @throws IOException if the bytes are not a list encoded with the current version
+     */
+    public static BookList decode(ByteBuffer buffer) throws IOException {
+        return new BookList(buffer.slice());
+    }
+
+    /**
+     * Write the encoded books to the given file, replacing it
+     */
+    public static void write(File file, String key, List<Book> books) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(encode(key, books));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Decode a list of books from a memory-mapped file, so only the pages of the file that
+     * are actually read are loaded
+     *
+     * @throws IOException if the file cannot be read or is not a list encoded with the current version
+     */
+    public static BookList map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            // The mapping stays valid after the channel is closed
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A decoded list of books, read from the encoded bytes as its books are asked for.
+     * A book is turned into a {@link Book} the first time it is returned by {@link #get(int)},
+     * and each string only once, so an author shared by many books is a single String.
+     */
+    public static final class BookList extends AbstractList<Book> implements RandomAccess {
+
+        private final ByteBuffer buffer;
+
+        private final String key;
+
+        private final int bookCount;
+
+        private final int stringCount;
+
+        // Position of the string offsets, the book records and the string data in the buffer
+        private final int offsetsStart;
+        private final int recordsStart;
+        private final int stringsStart;
+
+        // Strings and books already decoded
+        private final String[] strings;
+        private final Book[] books;
+
+        BookList(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            try {
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Not an encoded book list");
+                }
+                int version = buffer.getInt(4);
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("Unsupported book list version " + version);
+                }
+                bookCount = buffer.getInt(12);
+                stringCount = buffer.getInt(16);
+                if (bookCount < 0 || stringCount < 0) {
+                    throw new IOException("Corrupt book list header");
+                }
+                // Computed as longs so a corrupt count cannot wrap around to a small position
+                long tablesEnd = HEADER_BYTES + (stringCount + 1L) * 4 + (long) bookCount * FIELDS_PER_BOOK * 4;
+                if (tablesEnd > buffer.limit()) {
+                    throw new IOException("Truncated book list");
+                }
+                offsetsStart = HEADER_BYTES;
+                recordsStart = offsetsStart + (stringCount + 1) * 4;
+                stringsStart = (int) tablesEnd;
+                // Check the tables once so reading a book later cannot fail
+                checkOffsets();
+                checkReferences();
+                strings = new String[stringCount];
+                books = new Book[bookCount];
+                int keyReference = buffer.getInt(8);
+                if (keyReference != NULL_REFERENCE && (keyReference < 0 || keyReference >= stringCount)) {
+                    throw new IOException("Corrupt book list, key " + keyReference);
+                }
+                key = string(keyReference);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new IOException("Truncated book list", e);
+            }
+        }
+
+        // Every string must start where the previous one ended and end inside the buffer
+        private void checkOffsets() throws IOException {
+            int previous = 0;
+            for (int i = 0; i <= stringCount; i++) {
+                int offset = buffer.getInt(offsetsStart + i * 4);
+                if (offset < previous || offset > buffer.limit() - stringsStart) {
+                    throw new IOException("Corrupt book list, string offset " + i);
+                }
+                previous = offset;
+            }
+        }
+
+        // Every string field of every book must refer to a string of the table, or be null
+        private void checkReferences() throws IOException {
+            int[] stringFields = {FIELD_VOLUME_ID, FIELD_AUTHOR, FIELD_OTHER_AUTHORS, FIELD_TITLE,
+                    FIELD_LINK, FIELD_THUMBNAIL};
+            for (int index = 0; index < bookCount; index++) {
+                for (int field : stringFields) {
+                    int reference = intField(index, field);
+                    if (reference != NULL_REFERENCE && (reference < 0 || reference >= stringCount)) {
+                        throw new IOException("Corrupt book list, book " + index);
+                    }
+                }
+            }
+        }
+
+        // Getter method that returns the key stored with the books
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public int size() {
+            return bookCount;
+        }
+
+        @Override
+        public Book get(int index) {
+            if (index < 0 || index >= bookCount) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + bookCount);
+            }
+            Book book = books[index];
+            if (book == null) {
+                book = new Book(field(index, FIELD_VOLUME_ID), field(index, FIELD_AUTHOR),
+                        Book.splitAuthors(field(index, FIELD_OTHER_AUTHORS)),
+                        field(index, FIELD_TITLE), field(index, FIELD_LINK), field(index, FIELD_THUMBNAIL),
+                        intField(index, FIELD_PUBLISHED_DATE), intField(index, FIELD_PAGE_COUNT),
+                        Float.intBitsToFloat(intField(index, FIELD_AVERAGE_RATING)),
+                        intField(index, FIELD_RATINGS_COUNT));
+                books[index] = book;
+            }
+            return book;
+        }
+
+        // Getter method that returns the title of a book, without decoding its other fields
+        public String getTitle(int index) {
+            return field(index, FIELD_TITLE);
+        }
+
+        // Getter method that returns the author of a book, without decoding its other fields
+        public String getAuthor(int index) {
+            return field(index, FIELD_AUTHOR);
+        }
+
+        // Getter method that returns the number of distinct strings of the list
+        public int getStringCount() {
+            return stringCount;
+        }
+
+        // Getter method that returns the number of UTF-8 bytes of all the distinct strings
+        public int getStringBytes() {
+            return buffer.capacity() - stringsStart;
+        }
+
+        private String field(int index, int field) {
+            return string(intField(index, field));
+        }
+
+        private int intField(int index, int field) {
+            if (index < 0 || index >= bookCount) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + bookCount);
+            }
+            return buffer.getInt(recordsStart + (index * FIELDS_PER_BOOK + field) * 4);
+        }
+
+        private String string(int reference) {
+            if (reference == NULL_REFERENCE) {
+                return null;
+            }
+            if (reference < 0 || reference >= stringCount) {
+                throw new IllegalStateException("Corrupt book list, string " + reference);
+            }
+            String string = strings[reference];
+            if (string == null) {
+                int start = buffer.getInt(offsetsStart + reference * 4);
+                int end = buffer.getInt(offsetsStart + (reference + 1) * 4);
+                string = decodeString(stringsStart + start, end - start);
+                strings[reference] = string;
+            }
+            return string;
+        }
+
+        private String decodeString(int position, int length) {
+            // Read heap buffers in place, copy the bytes out of direct and mapped ones
+            if (buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + position, length, UTF_8);
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position);
+            source.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+}
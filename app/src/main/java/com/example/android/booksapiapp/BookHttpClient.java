@@ -0,0 +1,395 @@
+package com.example.android.booksapiapp;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client used to talk to the Google Books API.
+ * <p>
+ * The end of each response body is drained and closed so the underlying keep-alive
+ * connection goes back to the platform connection pool and the next search skips the
+ * TCP and TLS handshakes. Only a few kilobytes are drained though: the connection of a
+ * cancelled request, or of a body with more left than that, is disconnected instead of
+ * downloading bytes nobody reads. Responses are requested gzip-compressed
+ * and decompressed transparently, cached responses are revalidated with
+ * If-None-Match / If-Modified-Since, and the bytes and latency of every request are
+ * accounted for.
+ */
+public class BookHttpClient {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = BookHttpClient.class.getSimpleName();
+
+    // Timeouts of a request made without a {@link RequestPolicy}
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    // Size of the buffer used to drain the rest of a response body
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    // Most bytes drained to reuse a connection, cheaper than a new handshake
+    private static final int MAX_DRAIN_BYTES = 8192;
+
+    private static final BookHttpClient sDefault = new BookHttpClient();
+
+    // Totals over all the requests made with this client
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+    // Listener told about every finished request, may be null
+    private volatile RequestListener requestListener;
+
+    /**
+     * Return the client shared by the whole app
+     */
+    public static BookHttpClient getDefault() {
+        return sDefault;
+    }
+
+    // Setter method for the listener told about every finished request
+    public void setRequestListener(RequestListener listener) {
+        requestListener = listener;
+    }
+
+    /**
+     * Make a GET request to the given URL.
+     *
+     * @param url    is the URL to request
+     * @param cached is the cached response for the URL, used to make a conditional
+     *               request, or null
+     * @return the response, which must be closed by the caller
+     */
+    public Response get(URL url, ResponseCache.Entry cached) throws IOException {
+        return get(url, cached, CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Make a GET request to the given URL with the given timeouts.
+     *
+     * @param url                  is the URL to request
+     * @param cached               is the cached response for the URL, or null
+     * @param connectTimeoutMillis is the time allowed to connect to the server
+     * @param readTimeoutMillis    is the time allowed to wait for each read
+     * @return the response, which must be closed by the caller
+     */
+    public Response get(URL url, ResponseCache.Entry cached, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException {
+        return get(url, cached, connectTimeoutMillis, readTimeoutMillis, null);
+    }
+
+    /**
+     * Make a GET request to the given URL with the given timeouts, which can be aborted
+     * from another thread with the given token.
+     *
+     * @param cancelToken is the token used to cancel the request, or null
+     * @return the response, which must be closed by the caller
+     */
+    public Response get(URL url, ResponseCache.Entry cached, int connectTimeoutMillis, int readTimeoutMillis,
+                        CancelToken cancelToken) throws IOException {
+        long start = System.currentTimeMillis();
+        long traceStart = PipelineTracer.begin(PipelineTracer.STAGE_CONNECT);
+        try {
+            return connect(url, cached, connectTimeoutMillis, readTimeoutMillis, cancelToken, start);
+        } finally {
+            PipelineTracer.end(PipelineTracer.STAGE_CONNECT, traceStart);
+        }
+    }
+
+    // Open the connection and wait for the response headers
+    private Response connect(URL url, ResponseCache.Entry cached, int connectTimeoutMillis, int readTimeoutMillis,
+                             CancelToken cancelToken, long start) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setReadTimeout(readTimeoutMillis);
+        urlConnection.setConnectTimeout(connectTimeoutMillis);
+        urlConnection.setRequestMethod("GET");
+
+        // Setting the header ourselves turns off the transparent gzip of the platform,
+        // so the compressed bytes can be counted
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                urlConnection.setRequestProperty("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                urlConnection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+            }
+        }
+
+        if (cancelToken != null) {
+            cancelToken.register(urlConnection);
+        }
+
+        int responseCode;
+        try {
+            urlConnection.connect();
+            responseCode = urlConnection.getResponseCode();
+        } catch (IOException e) {
+            // The connection is broken, so it must not go back to the pool
+            urlConnection.disconnect();
+            if (cancelToken != null) {
+                cancelToken.unregister(urlConnection);
+            }
+            throw e;
+        }
+        long latency = System.currentTimeMillis() - start;
+        return new Response(url, urlConnection, responseCode, start, latency, cancelToken);
+    }
+
+    // Getter method that returns the number of requests made
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    // Getter method that returns the number of requests answered with 304 Not Modified
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    // Getter method that returns the number of body bytes received, before decompression
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    // Getter method that returns the summed time to the response headers of all requests
+    public long getTotalLatencyMillis() {
+        return totalLatencyMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BookHttpClient[requests=" + getRequestCount() + ", notModified=" + getNotModifiedCount()
+                + ", bytes=" + getBytesReceived() + ", latencyMillis=" + getTotalLatencyMillis() + "]";
+    }
+
+    /**
+     * Called when a request made with the client is finished
+     */
+    public interface RequestListener {
+
+        /**
+         * @param url          is the requested URL
+         * @param responseCode is the HTTP response code
+         * @param bytes        is the number of body bytes received, before decompression
+         * @param latencyMillis is the time until the response headers were received
+         * @param totalMillis  is the time until the response body was closed
+         */
+        void onRequestFinished(URL url, int responseCode, long bytes, long latencyMillis, long totalMillis);
+    }
+
+    /**
+     * The response to a request. The body is decompressed when needed.
+     */
+    public final class Response implements Closeable {
+
+        private final URL url;
+
+        private final HttpURLConnection urlConnection;
+
+        private final int responseCode;
+
+        private final long startMillis;
+
+        private final long latencyMillis;
+
+        private final CancelToken cancelToken;
+
+        private CountingInputStream rawStream;
+
+        private InputStream body;
+
+        private boolean closed;
+
+        // True if the rest of the body is not wanted at all
+        private boolean discarded;
+
+        Response(URL url, HttpURLConnection urlConnection, int responseCode, long startMillis, long latencyMillis,
+                 CancelToken cancelToken) {
+            this.url = url;
+            this.urlConnection = urlConnection;
+            this.responseCode = responseCode;
+            this.startMillis = startMillis;
+            this.latencyMillis = latencyMillis;
+            this.cancelToken = cancelToken;
+        }
+
+        // Getter method that returns the HTTP response code
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        // Returns true if the server answered that the cached response is still valid
+        public boolean isNotModified() {
+            return responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        // Getter method that returns the ETag header of the response, or null
+        public String getEtag() {
+            return urlConnection.getHeaderField("ETag");
+        }
+
+        // Getter method that returns the Last-Modified header of the response, or null
+        public String getLastModified() {
+            return urlConnection.getHeaderField("Last-Modified");
+        }
+
+        // Getter method that returns the Retry-After header of the response, or null
+        public String getRetryAfter() {
+            return urlConnection.getHeaderField("Retry-After");
+        }
+
+        // Getter method that returns the time until the response headers were received
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        // Getter method that returns the number of body bytes read so far
+        public long getBytesReceived() {
+            return rawStream == null ? 0 : rawStream.count;
+        }
+
+        /**
+         * Return the response body, decompressed if the server sent it gzipped
+         */
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                InputStream stream = responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                        ? urlConnection.getInputStream() : urlConnection.getErrorStream();
+                if (stream == null) {
+                    return null;
+                }
+                rawStream = new CountingInputStream(stream);
+                if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                    body = new GZIPInputStream(rawStream);
+                } else {
+                    body = rawStream;
+                }
+            }
+            return body;
+        }
+
+        /**
+         * Close the body, and account for the request. The connection is reused when only
+         * a few bytes of the body are left, and disconnected otherwise.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            // A cancelled request is already disconnected, and a connection with unread
+            // bytes left must not be reused
+            boolean cancelled = cancelToken != null && cancelToken.isCancelled();
+            if (cancelled || discarded || !drain()) {
+                urlConnection.disconnect();
+            }
+            if (cancelToken != null) {
+                cancelToken.unregister(urlConnection);
+            }
+
+            long bytes = getBytesReceived();
+            long totalMillis = System.currentTimeMillis() - startMillis;
+            PipelineTracer.count(PipelineTracer.STAGE_CONNECT, 0, bytes);
+            requestCount.incrementAndGet();
+            bytesReceived.addAndGet(bytes);
+            totalLatencyMillis.addAndGet(latencyMillis);
+            if (isNotModified()) {
+                notModifiedCount.incrementAndGet();
+            }
+            RequestListener listener = requestListener;
+            if (listener != null) {
+                listener.onRequestFinished(url, responseCode, bytes, latencyMillis, totalMillis);
+            }
+        }
+
+        /**
+         * Close the response and disconnect its connection without reading any more of the
+         * body, e.g. for the attempt that lost a hedged request
+         */
+        public void abort() {
+            discarded = true;
+            close();
+        }
+
+        /**
+         * Read the rest of the raw body, up to {@link #MAX_DRAIN_BYTES}, so the connection
+         * can go back to the pool
+         *
+         * @return true if the whole body was read and closed
+         */
+        private boolean drain() {
+            try {
+                if (rawStream == null) {
+                    InputStream stream = responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                            ? urlConnection.getInputStream() : urlConnection.getErrorStream();
+                    if (stream == null) {
+                        return true;
+                    }
+                    rawStream = new CountingInputStream(stream);
+                }
+                long limit = rawStream.count + MAX_DRAIN_BYTES;
+                byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+                while (rawStream.count < limit) {
+                    if (rawStream.read(buffer) == -1) {
+                        rawStream.close();
+                        return true;
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not drain the response body of " + url, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * An {@link InputStream} that counts the bytes read through it
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
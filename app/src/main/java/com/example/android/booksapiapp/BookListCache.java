@@ -0,0 +1,234 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Two-tier cache of the last result of each search, keyed by the normalized request URL.
+ * <p>
+ * The lists of books are kept in an in-memory LRU, sized with the {@link MemoryBudget} by
+ * an estimate of the memory of their books, in front of {@link BookCodec} files under the
+ * app cache directory. A list trimmed from memory under memory pressure is mapped again
+ * from its file the next time its search is opened.
+ */
+public class BookListCache implements MemoryBudget.Tier {
+
+    // Tag for log messages
+    private static final String LOG_TAG = BookListCache.class.getSimpleName();
+
+    // Name of the directory inside the app cache directory that holds the lists
+    private static final String CACHE_DIR_NAME = "last_results";
+
+    // Number of lists kept on disk
+    private static final int DISK_ENTRIES = 50;
+
+    // Estimated memory of a book without its strings: the object, its fields and its list of authors
+    private static final int BOOK_OVERHEAD_BYTES = 96;
+
+    // Estimated memory of a string without its characters
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private static BookListCache sInstance;
+
+    // Directory that holds one file per list
+    private final File cacheDir;
+
+    // In-memory tier, sized by the estimated memory of the books
+    private final LruCache<String, List<Book>> memoryCache;
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link BookListCache} with
+     *
+     * @param cacheDir    is the directory of the disk tier
+     * @param memoryBytes is the byte budget of the in-memory tier
+     */
+    public BookListCache(File cacheDir, int memoryBytes) {
+        this.cacheDir = cacheDir;
+        memoryCache = new LruCache<String, List<Book>>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, List<Book> books) {
+                return estimateBytes(books);
+            }
+        };
+    }
+
+    /**
+     * Return the cache shared by the whole app, with the memory budget of the device
+     */
+    public static synchronized BookListCache getInstance(Context context) {
+        if (sInstance == null) {
+            File dir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME);
+            MemoryBudget budget = MemoryBudget.getInstance(context);
+            sInstance = new BookListCache(dir, budget.getResultsBytes());
+            budget.register("results", sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Return the last result of the given URL, from memory or else from disk. This may
+     * touch the disk, so it must not be called on the main thread.
+     *
+     * @return the books, or null if the URL has no known result
+     */
+    public List<Book> get(String url) {
+        String key = ResponseCache.normalizeUrl(url);
+        List<Book> books = memoryCache.get(key);
+        if (books == null) {
+            books = readFromDisk(key);
+            if (books != null) {
+                memoryCache.put(key, books);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Store the books as the last result of the given URL, in both tiers. This writes to
+     * the disk, so it must not be called on the main thread.
+     */
+    public void put(String url, List<Book> books) {
+        String key = ResponseCache.normalizeUrl(url);
+        memoryCache.put(key, books);
+        writeToDisk(key, books);
+    }
+
+    /**
+     * Store the books as the last result of the given URL in memory only, keeping the
+     * result on disk as it is, e.g. the first page of a search that has loaded more
+     */
+    public void putInMemory(String url, List<Book> books) {
+        memoryCache.put(ResponseCache.normalizeUrl(url), books);
+    }
+
+    /**
+     * Store the books as the last result of the given URL in memory, unless a result is
+     * already known, e.g. the books of the startup snapshot. Only looks whether the file
+     * exists, so it can be called on the main thread.
+     */
+    public void putIfAbsent(String url, List<Book> books) {
+        String key = ResponseCache.normalizeUrl(url);
+        if (memoryCache.get(key) == null && !fileFor(key).exists()) {
+            memoryCache.put(key, books);
+        }
+    }
+
+    /**
+     * Forget all the results, in both tiers, e.g. before measuring a cold start
+     */
+    public synchronized void clear() {
+        memoryCache.evictAll();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // Getter method that returns the estimated bytes of the books held in memory
+    @Override
+    public long getResidentBytes() {
+        return memoryCache.size();
+    }
+
+    // Getter method that returns the byte budget of the in-memory tier
+    @Override
+    public long getMaxBytes() {
+        return memoryCache.maxSize();
+    }
+
+    @Override
+    public void trimToBytes(long bytes) {
+        // The lists fetched are all on disk, only their copies in memory are dropped
+        MemoryBudget.trim(memoryCache, bytes);
+    }
+
+    /**
+     * Return an estimate of the memory used by the given books. A list decoded by
+     * {@link BookCodec} is estimated from its encoded size, without decoding its books, and
+     * counts each of its distinct strings once. Any other list counts each string as if no
+     * other book shared it.
+     */
+    static int estimateBytes(List<Book> books) {
+        if (books instanceof BookCodec.BookList) {
+            BookCodec.BookList list = (BookCodec.BookList) books;
+            // Decoded, the UTF-8 strings take about twice their bytes as UTF-16 characters
+            long bytes = (long) list.size() * BOOK_OVERHEAD_BYTES
+                    + (long) list.getStringCount() * STRING_OVERHEAD_BYTES + 2L * list.getStringBytes();
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes));
+        }
+        int bytes = 0;
+        for (Book book : books) {
+            bytes += BOOK_OVERHEAD_BYTES + estimateBytes(book.getVolumeId()) + estimateBytes(book.getBookTitle())
+                    + estimateBytes(book.getBookLink()) + estimateBytes(book.getThumbnailUrl())
+                    + estimateBytes(book.getPublishedDate());
+            for (String author : book.getBookAuthors()) {
+                bytes += estimateBytes(author);
+            }
+        }
+        // A list counts as at least one byte, or the cache could hold any number of them
+        return Math.max(1, bytes);
+    }
+
+    private static int estimateBytes(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + 2 * value.length();
+    }
+
+    /**
+     * Return the file that holds the list with the given key
+     */
+    private File fileFor(String key) {
+        return new File(cacheDir, ResponseCache.fileNameFor(key));
+    }
+
+    private synchronized List<Book> readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            BookCodec.BookList books = BookCodec.map(file);
+            // Ignore a list colliding with another key
+            if (!key.equals(books.getKey())) {
+                return null;
+            }
+
+            // Touch the file so the disk tier evicts the least recently used lists
+            file.setLastModified(System.currentTimeMillis());
+            return books;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Discarding the cached result " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private synchronized void writeToDisk(String key, List<Book> books) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create the cache directory " + cacheDir);
+            return;
+        }
+        try {
+            // Write a new file and rename it, so a list mapped from the old one is never changed
+            DiskCaches.writeAtomically(fileFor(key), BookCodec.encode(key, books));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the cached result.", e);
+        }
+        trimDisk();
+    }
+
+    /**
+     * Delete the least recently used files until the disk tier holds at most its number of lists
+     */
+    private void trimDisk() {
+        DiskCaches.trim(cacheDir, Long.MAX_VALUE, DISK_ENTRIES);
+    }
+}
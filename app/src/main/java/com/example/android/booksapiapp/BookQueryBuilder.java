@@ -0,0 +1,115 @@
+package com.example.android.booksapiapp;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Builds the request URL of a search, without the paging parameters which the
+ * {@link BookSearch} adds for each page.
+ * <p>
+ * The API returns dozens of fields for each volume, but a {@link Book} only keeps a few of
+ * them. The URL therefore asks only for the fields the given view needs with a fields=
+ * mask, and for the lite projection unless the view needs a field that only the full
+ * projection has. The search text is URL-encoded, so its spaces and other characters
+ * reach the API as typed.
+ * <p>
+ * A URL is built with
+ * <pre>
+ * String url = new BookQueryBuilder(BOOKS_API_URL)
+ *         .setQuery("android programming")
+ *         .setView(BookQueryBuilder.VIEW_LIST)
+ *         .build();
+ * </pre>
+ */
+public final class BookQueryBuilder {
+
+    // The list of books: the rows and the sort orders by title, author and date
+    public static final int VIEW_LIST = 0;
+
+    // The list of books sorted by rating, which needs the ratings of the books
+    public static final int VIEW_RATINGS = 1;
+
+    public static final String PROJECTION_LITE = "lite";
+    public static final String PROJECTION_FULL = "full";
+
+    // The fields of a volume read by {@link BookUtils} that the lite projection returns
+    private static final String LITE_VOLUME_FIELDS = "title,authors,publishedDate,infoLink,imageLinks/smallThumbnail";
+
+    // The fields of a volume read by {@link BookUtils} that only the full projection returns
+    private static final String FULL_VOLUME_FIELDS = "pageCount,averageRating,ratingsCount";
+
+    private final String baseUrl;
+
+    private String query = "";
+
+    private int view = VIEW_LIST;
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Create a new {@link BookQueryBuilder} object.
+     *
+     * @param baseUrl is the URL of the volumes collection, without parameters
+     */
+    public BookQueryBuilder(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Set the search text. Leading, trailing and repeated spaces are ignored, so the same
+     * search typed with other spaces gives the same URL.
+     */
+    public BookQueryBuilder setQuery(String query) {
+        this.query = normalizeQuery(query);
+        return this;
+    }
+
+    /**
+     * Set the view the books are shown in, which decides the fields asked for
+     *
+     * @param view is {@link #VIEW_LIST} or {@link #VIEW_RATINGS}
+     */
+    public BookQueryBuilder setView(int view) {
+        if (view != VIEW_LIST && view != VIEW_RATINGS) {
+            throw new IllegalArgumentException("Unknown view " + view);
+        }
+        this.view = view;
+        return this;
+    }
+
+    /**
+     * Return the request URL
+     */
+    public String build() {
+        return baseUrl + "?q=" + encode(query) + "&projection=" + projectionOf(view) + "&fields=" + encode(fieldsOf(view));
+    }
+
+    /**
+     * Return the projection the given view needs
+     */
+    public static String projectionOf(int view) {
+        return view == VIEW_RATINGS ? PROJECTION_FULL : PROJECTION_LITE;
+    }
+
+    /**
+     * Return the fields mask of the given view, in the syntax of the fields= parameter
+     */
+    public static String fieldsOf(int view) {
+        String volumeFields = view == VIEW_RATINGS ? LITE_VOLUME_FIELDS + "," + FULL_VOLUME_FIELDS : LITE_VOLUME_FIELDS;
+        return "items(id,volumeInfo(" + volumeFields + "))";
+    }
+
+    // Returns the text without leading, trailing and repeated spaces
+    static String normalizeQuery(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ");
+    }
+
+    private static String encode(String text) {
+        try {
+            return URLEncoder.encode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.android.booksapiapp;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+
+/**
+ * Sorts and filters the loaded books in memory, without another network request.
+ * <p>
+ * The sort keys of a book, e.g. the collation keys of its title and author, are computed
+ * once when the book is added. Each sort order is an index of book positions, built the
+ * first time the order is used and updated by merging when a page of books is appended.
+ * Queries return views over the loaded books, so no {@link Book} is copied or re-created.
+ * <p>
+ * Not thread-safe, it is meant to be used on the main thread.
+ */
+public class BookQueryEngine {
+
+    // The order of the Google Books API
+    public static final int SORT_RELEVANCE = 0;
+
+    // Alphabetical order of the titles
+    public static final int SORT_TITLE = 1;
+
+    // Alphabetical order of the main authors
+    public static final int SORT_AUTHOR = 2;
+
+    // The most recently published books first, the books without a date last
+    public static final int SORT_NEWEST = 3;
+
+    // The best rated books first, the books without ratings last
+    public static final int SORT_RATING = 4;
+
+    private static final int SORT_ORDER_COUNT = 5;
+
+    /**
+     * Decides which books are part of a query's result
+     */
+    public interface Filter {
+
+        /**
+         * @param book       is the book
+         * @param searchText is the lower-cased title and authors of the book
+         * @return true to keep the book
+         */
+        boolean accept(Book book, String searchText);
+    }
+
+    private final Collator collator;
+
+    private final Locale locale;
+
+    // The loaded books, and the keys of each of them at the same position
+    private final List<Book> books = new ArrayList<>();
+    private final List<CollationKey> titleKeys = new ArrayList<>();
+    private final List<CollationKey> authorKeys = new ArrayList<>();
+    private final List<String> searchTexts = new ArrayList<>();
+
+    // The positions of the books in each sort order, null until the order is used
+    private final int[][] sortIndexes = new int[SORT_ORDER_COUNT][];
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link BookQueryEngine} that sorts text for the default locale
+     */
+    public BookQueryEngine() {
+        this(Locale.getDefault());
+    }
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link BookQueryEngine} with
+     *
+     * @param locale is the locale whose rules are used to sort and match text
+     */
+    public BookQueryEngine(Locale locale) {
+        this.locale = locale;
+        collator = Collator.getInstance(locale);
+        // Ignore the case, but not the accents, when sorting
+        collator.setStrength(Collator.SECONDARY);
+    }
+
+    /**
+     * Replace the loaded books. When the given books start with the books already loaded,
+     * e.g. because a page was appended, only the new books are added to the sort indexes.
+     */
+    public void setBooks(List<Book> newBooks) {
+        if (newBooks == null) {
+            newBooks = new ArrayList<>();
+        }
+        int oldSize = books.size();
+        if (newBooks.size() < oldSize || !startsWithLoadedBooks(newBooks)) {
+            clear();
+            oldSize = 0;
+        }
+        if (newBooks.size() == oldSize) {
+            return;
+        }
+
+        for (int i = oldSize; i < newBooks.size(); i++) {
+            addKeys(newBooks.get(i));
+        }
+        for (int order = 0; order < SORT_ORDER_COUNT; order++) {
+            if (sortIndexes[order] != null) {
+                sortIndexes[order] = mergeAppended(order, sortIndexes[order], oldSize);
+            }
+        }
+    }
+
+    // Getter method that returns the number of loaded books
+    public int size() {
+        return books.size();
+    }
+
+    /**
+     * Return the loaded books that the filter accepts, in the given sort order. The result is
+     * a view over the loaded books and stays valid until the books are replaced.
+     *
+     * @param sortOrder is one of the SORT_ constants
+     * @param filter    is the filter, or null to keep every book
+     */
+    public List<Book> query(int sortOrder, Filter filter) {
+        int[] order = sortIndex(sortOrder);
+        int[] result = new int[books.size()];
+        int count = 0;
+        for (int i = 0; i < books.size(); i++) {
+            int position = order == null ? i : order[i];
+            if (filter == null || filter.accept(books.get(position), searchTexts.get(position))) {
+                result[count++] = position;
+            }
+        }
+        return new ResultList(books, result, count);
+    }
+
+    /**
+     * Return a filter that keeps the books that have a web link
+     */
+    public static Filter withLink() {
+        return new Filter() {
+            @Override
+            public boolean accept(Book book, String searchText) {
+                return book.getBookLink() != null && !book.getBookLink().isEmpty();
+            }
+        };
+    }
+
+    /**
+     * Return a filter that keeps the books whose title or authors contain every word of
+     * the given text, e.g. "andr prog" keeps "Android Programming"
+     */
+    public Filter matchingWords(String text) {
+        final String[] words = text.trim().toLowerCase(locale).split("\\s+");
+        return new Filter() {
+            @Override
+            public boolean accept(Book book, String searchText) {
+                for (String word : words) {
+                    if (!searchText.contains(word)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Return a filter that keeps the books that both filters keep. Either may be null.
+     */
+    public static Filter both(final Filter first, final Filter second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return new Filter() {
+            @Override
+            public boolean accept(Book book, String searchText) {
+                return first.accept(book, searchText) && second.accept(book, searchText);
+            }
+        };
+    }
+
+    private boolean startsWithLoadedBooks(List<Book> newBooks) {
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            Book newBook = newBooks.get(i);
+            if (book != newBook && !book.equals(newBook)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clear() {
+        books.clear();
+        titleKeys.clear();
+        authorKeys.clear();
+        searchTexts.clear();
+        Arrays.fill(sortIndexes, null);
+    }
+
+    private void addKeys(Book book) {
+        books.add(book);
+        titleKeys.add(collator.getCollationKey(book.getBookTitle() == null ? "" : book.getBookTitle()));
+        authorKeys.add(collator.getCollationKey(book.getBookAuthor() == null ? "" : book.getBookAuthor()));
+        StringBuilder searchText = new StringBuilder();
+        if (book.getBookTitle() != null) {
+            searchText.append(book.getBookTitle());
+        }
+        for (String author : book.getBookAuthors()) {
+            searchText.append(' ').append(author);
+        }
+        searchTexts.add(searchText.toString().toLowerCase(locale));
+    }
+
+    // Return the positions of the books in the given order, or null for the loaded order
+    private int[] sortIndex(int sortOrder) {
+        if (sortOrder < 0 || sortOrder >= SORT_ORDER_COUNT) {
+            throw new IllegalArgumentException("Unknown sort order " + sortOrder);
+        }
+        if (sortOrder == SORT_RELEVANCE) {
+            return null;
+        }
+        int[] index = sortIndexes[sortOrder];
+        if (index == null) {
+            index = new int[books.size()];
+            for (int i = 0; i < index.length; i++) {
+                index[i] = i;
+            }
+            sort(sortOrder, index, new int[index.length], 0, index.length);
+            sortIndexes[sortOrder] = index;
+        }
+        return index;
+    }
+
+    // Sort the books at the positions appended after oldSize, and merge them into the index
+    private int[] mergeAppended(int sortOrder, int[] index, int oldSize) {
+        int appendedCount = books.size() - oldSize;
+        int[] appended = new int[appendedCount];
+        for (int i = 0; i < appendedCount; i++) {
+            appended[i] = oldSize + i;
+        }
+        sort(sortOrder, appended, new int[appendedCount], 0, appendedCount);
+
+        int[] merged = new int[index.length + appendedCount];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < index.length && j < appendedCount) {
+            merged[k++] = compare(sortOrder, appended[j], index[i]) < 0 ? appended[j++] : index[i++];
+        }
+        while (i < index.length) {
+            merged[k++] = index[i++];
+        }
+        while (j < appendedCount) {
+            merged[k++] = appended[j++];
+        }
+        return merged;
+    }
+
+    // Stable merge sort of positions[from, to), so books with equal keys keep the API order
+    private void sort(int sortOrder, int[] positions, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(sortOrder, positions, buffer, from, middle);
+        sort(sortOrder, positions, buffer, middle, to);
+        if (compare(sortOrder, positions[middle - 1], positions[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < middle && compare(sortOrder, buffer[i], buffer[j]) <= 0)) {
+                positions[k] = buffer[i++];
+            } else {
+                positions[k] = buffer[j++];
+            }
+        }
+    }
+
+    // Compare the books at two positions in the given order, ties are broken by position
+    private int compare(int sortOrder, int first, int second) {
+        int result;
+        switch (sortOrder) {
+            case SORT_TITLE:
+                result = titleKeys.get(first).compareTo(titleKeys.get(second));
+                break;
+            case SORT_AUTHOR:
+                result = authorKeys.get(first).compareTo(authorKeys.get(second));
+                break;
+            case SORT_NEWEST:
+                result = compareDescending(books.get(first).getPackedPublishedDate(),
+                        books.get(second).getPackedPublishedDate());
+                break;
+            case SORT_RATING:
+                result = Float.compare(books.get(second).getAverageRating(), books.get(first).getAverageRating());
+                break;
+            default:
+                result = 0;
+                break;
+        }
+        return result != 0 ? result : first < second ? -1 : first == second ? 0 : 1;
+    }
+
+    private static int compareDescending(int first, int second) {
+        return first > second ? -1 : first == second ? 0 : 1;
+    }
+
+    /**
+     * The books of a query's result, in order, without copying them
+     */
+    private static final class ResultList extends AbstractList<Book> implements RandomAccess {
+
+        private final List<Book> books;
+
+        private final int[] positions;
+
+        private final int size;
+
+        ResultList(List<Book> books, int[] positions, int size) {
+            // Keep the books of this result even if the engine's books are replaced
+            this.books = new ArrayList<>(books);
+            this.positions = positions;
+            this.size = size;
+        }
+
+        @Override
+        public Book get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            }
+            return books.get(positions[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A search of the user and the {@link BookStream} of its books, delivered on the main thread.
+ * <p>
+ * The pages of the results are served from the response cache when possible and fetched
+ * otherwise: a small first page, then a bigger page each time {@link #loadNextPage()} is
+ * called. Every fetched page is saved in the {@link BookStore}, and the first one is also
+ * saved as the startup snapshot.
+ * <p>
+ * Until the first page arrives, the stream shows the last known result of the search, e.g.
+ * the books restored at startup, or else the cached first page even when it is stale, or
+ * else the stored books that match the search text. Those are then kept after the fetched
+ * books. A stale first page is revalidated with the server, so the stream delivers again
+ * when the result changed. Without network only the preview is shown.
+ * <p>
+ * The activity keeps its search across configuration changes, so the books already loaded
+ * are shown again without being fetched again.
+ */
+public final class BookSearch {
+
+    // Tag for log messages
+    private static final String LOG_TAG = BookSearch.class.getSimpleName();
+
+    // Number of books requested in the first page, small so it arrives quickly
+    public static final int FIRST_PAGE_SIZE = 10;
+
+    // Number of books requested in each of the following pages
+    public static final int PAGE_SIZE = 20;
+
+    // Number of stored books shown for a search
+    public static final int LOCAL_RESULTS_SIZE = 40;
+
+    // The threads the sources of the streams run on, one per stream loading at a time
+    private static final ExecutorService WORKER = Executors.newCachedThreadPool();
+
+    // Calls the observers of the streams on the main thread
+    private static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    private final Context context;
+
+    private final String query;
+
+    private final int view;
+
+    private final String requestUrl;
+
+    private final BookStream stream;
+
+    // Fetches the pages from the response cache or the network
+    private final BookSources.PageFetcher network;
+
+    // The fetched books of the pages loaded so far, only used on the worker thread
+    private List<Book> fetchedBooks = new ArrayList<>();
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Create a new {@link BookSearch} object, which loads nothing before {@link #start()}
+     *
+     * @param context    is the context of the activity
+     * @param query      is the text of the search, used to find the stored books
+     * @param view       is the view of {@link BookQueryBuilder} the request URL was built for
+     * @param requestUrl is the request URL without paging parameters
+     */
+    public BookSearch(Context context, String query, int view, String requestUrl) {
+        this.context = context.getApplicationContext();
+        // Let the request policy adapt its timeouts to the network of each request
+        RequestPolicy.getDefault().watchNetwork(context);
+        this.query = query;
+        this.view = view;
+        this.requestUrl = requestUrl;
+        final ResponseCache cache = ResponseCache.getInstance(this.context);
+        network = BookSources.network(requestUrl, cache);
+
+        BookStream.Source lastResult = new BookStream.Source() {
+            @Override
+            public List<Book> next(int wanted, CancelToken cancelToken) {
+                return BookListCache.getInstance(BookSearch.this.context).get(BookSearch.this.requestUrl);
+            }
+        };
+        BookStream.Source cachedPage = new BookStream.Source() {
+            @Override
+            public List<Book> next(int wanted, CancelToken cancelToken) {
+                return BookUtils.cachedBookData(
+                        BookUtils.pageUrl(BookSearch.this.requestUrl, 0, FIRST_PAGE_SIZE), cache);
+            }
+        };
+        BookStream.Source storedBooks = new BookStream.Source() {
+            @Override
+            public List<Book> next(int wanted, CancelToken cancelToken) {
+                return BookStore.getInstance(BookSearch.this.context).search(BookSearch.this.query, LOCAL_RESULTS_SIZE);
+            }
+        };
+        BookStream.Source preview = BookSources.orElse(lastResult, BookSources.orElse(cachedPage, storedBooks));
+        BookStream.Source pages = BookSources.pages(new BookSources.PageFetcher() {
+            @Override
+            public List<Book> fetchPage(int startIndex, int maxResults, CancelToken cancelToken) throws IOException {
+                return load(startIndex, maxResults, cancelToken);
+            }
+        }, FIRST_PAGE_SIZE, PAGE_SIZE);
+        stream = new BookStream(pages, preview, WORKER, MAIN_THREAD);
+    }
+
+    /**
+     * Remember the given books as the last result for the URL, e.g. the books restored at
+     * startup, unless a result is already known. Searches of the URL show them until their
+     * first page is fetched.
+     */
+    public static void putLastResult(Context context, String url, List<Book> books) {
+        BookListCache.getInstance(context).putIfAbsent(url, books);
+    }
+
+    /**
+     * Forget the last results of all the URLs, e.g. before measuring a cold start
+     */
+    public static void clearLastResults(Context context) {
+        BookListCache.getInstance(context).clear();
+    }
+
+    /**
+     * Start loading the first page
+     */
+    public void start() {
+        stream.request(FIRST_PAGE_SIZE);
+    }
+
+    /**
+     * Start loading the page after the last loaded one, e.g. when the list is scrolled near
+     * its end. After a page failed to load, this loads it again.
+     *
+     * @return true if a page is being loaded, false if there is nothing more to load or a
+     * page is already loading
+     */
+    public boolean loadNextPage() {
+        if (!stream.isIdle()) {
+            return false;
+        }
+        stream.request(PAGE_SIZE);
+        return true;
+    }
+
+    /**
+     * Stop loading, e.g. when the search is replaced by another one
+     */
+    public void cancel() {
+        stream.cancel();
+    }
+
+    // Getter method that returns the text of the search
+    public String getQuery() {
+        return query;
+    }
+
+    // Getter method that returns the view of BookQueryBuilder the search asks the fields of
+    public int getView() {
+        return view;
+    }
+
+    // Getter method that returns the stream of the books of the search
+    public BookStream getStream() {
+        return stream;
+    }
+
+    /**
+     * Load a page of results. This is on a background thread.
+     */
+    private List<Book> load(int startIndex, int maxResults, CancelToken cancelToken) throws IOException {
+        // Without network, the stored books are all we can show
+        if (!isConnected()) {
+            throw new IOException("No network connection");
+        }
+
+        long start = PipelineTracer.begin(PipelineTracer.STAGE_LOAD);
+        List<Book> page = null;
+        try {
+            page = network.fetchPage(startIndex, maxResults, cancelToken);
+            Log.v(LOG_TAG, ResponseCache.getInstance(context).toString());
+            Log.v(LOG_TAG, BookUtils.getNetworkFetches().toString());
+        } finally {
+            PipelineTracer.end(PipelineTracer.STAGE_LOAD, start, page == null ? 0 : page.size(), 0);
+        }
+
+        // The result of a cancelled fetch is thrown away
+        if (cancelToken.isCancelled()) {
+            throw new IOException("Cancelled");
+        }
+
+        // Keep the books for the searches made offline
+        BookStore.getInstance(context).saveBooks(page);
+
+        // Show this page on the next cold start, before anything is fetched, unless the
+        // response was cut off and would replace a whole snapshot with a part of one
+        if (startIndex == 0 && ParsedBooks.isComplete(page)) {
+            StartupPipeline.saveSnapshot(context, query, page);
+        }
+
+        // Remember the books fetched so far, so the next search of the URL shows them first
+        List<Book> books = new ArrayList<>(fetchedBooks.size() + page.size());
+        books.addAll(fetchedBooks);
+        books.addAll(page);
+        fetchedBooks = books;
+        // Only the first page is written to disk, rewriting the whole list for every page
+        // would write the first books again and again
+        if (startIndex == 0) {
+            BookListCache.getInstance(context).put(requestUrl, books);
+        } else {
+            BookListCache.getInstance(context).putInMemory(requestUrl, books);
+        }
+        return page;
+    }
+
+    // Helper method to check network connection
+    private boolean isConnected() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.android.booksapiapp;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Sources of a {@link BookStream}, and ways to combine them, e.g. the books stored in
+ * earlier sessions as the preview of the pages fetched from the network:
+ * <pre>
+ * new BookStream(BookSources.pages(BookSources.network(url, cache), 10, 20),
+ *         BookSources.orElse(BookSources.of(lastResult), storedBooks), worker, callbacks);
+ * </pre>
+ */
+public final class BookSources {
+
+    /**
+     * Loads a page of results
+     */
+    public interface PageFetcher {
+
+        /**
+         * @return the books of the page, a {@link ParsedBooks} when some volumes of the page
+         * could not be read
+         * @throws IOException if the page could not be loaded
+         */
+        List<Book> fetchPage(int startIndex, int maxResults, CancelToken cancelToken) throws IOException;
+    }
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name BookSources.
+     */
+    private BookSources() {
+    }
+
+    /**
+     * Return a source of the given books, in a single batch
+     *
+     * @param books is the list of books, or null for a source without books
+     */
+    public static BookStream.Source of(final List<Book> books) {
+        return new BookStream.Source() {
+            private boolean done;
+
+            @Override
+            public List<Book> next(int wanted, CancelToken cancelToken) {
+                if (done || books == null) {
+                    return null;
+                }
+                done = true;
+                return books;
+            }
+        };
+    }
+
+    /**
+     * Return a source of the books of the first source, or of the second one when the
+     * first one has no books at all, e.g. the last known result or else the stored books
+     */
+    public static BookStream.Source orElse(final BookStream.Source first, final BookStream.Source second) {
+        return new BookStream.Source() {
+            private BookStream.Source chosen;
+
+            @Override
+            public List<Book> next(int wanted, CancelToken cancelToken) throws IOException {
+                if (chosen != null) {
+                    return chosen.next(wanted, cancelToken);
+                }
+                List<Book> batch = first.next(wanted, cancelToken);
+                if (batch != null && !batch.isEmpty()) {
+                    chosen = first;
+                    return batch;
+                }
+                chosen = second;
+                return second.next(wanted, cancelToken);
+            }
+        };
+    }
+
+    /**
+     * Return a source of the pages of results loaded by the given fetcher: a small first
+     * page so it arrives quickly, then bigger pages. The source ends with the first page
+     * without any volume. A page whose response was cut off is continued right after its
+     * last volume read, so the volumes it missed come with the next page.
+     */
+    public static BookStream.Source pages(final PageFetcher fetcher, final int firstPageSize, final int pageSize) {
+        return new BookStream.Source() {
+            // Index of the first volume of the next page
+            private int startIndex;
+
+            @Override
+            public List<Book> next(int wanted, CancelToken cancelToken) throws IOException {
+                int size = startIndex == 0 ? firstPageSize : pageSize;
+                List<Book> page = fetcher.fetchPage(startIndex, size, cancelToken);
+                int itemCount = ParsedBooks.itemCountOf(page);
+                if (itemCount == 0) {
+                    return null;
+                }
+                startIndex += ParsedBooks.isComplete(page) ? size : itemCount;
+                return page;
+            }
+        };
+    }
+
+    /**
+     * Return a fetcher of the pages of results of the given request URL, served from the
+     * cache while it is fresh and revalidated with the server once it is stale, see
+     * {@link BookUtils#fetchFreshBookData(String, ResponseCache, CancelToken, int)}.
+     * The first page is what the user waits for, the next ones are fetched at the lower
+     * priority of a prefetch.
+     *
+     * @param requestUrl is the request URL without paging parameters
+     * @param cache      is the cache to use, or null to always go to the network
+     */
+    public static PageFetcher network(final String requestUrl, final ResponseCache cache) {
+        return new PageFetcher() {
+            @Override
+            public List<Book> fetchPage(int startIndex, int maxResults, CancelToken cancelToken) throws IOException {
+                String url = BookUtils.pageUrl(requestUrl, startIndex, maxResults);
+                int priority = startIndex == 0 ? RequestScheduler.PRIORITY_FOREGROUND : RequestScheduler.PRIORITY_PREFETCH;
+                List<Book> page = BookUtils.fetchFreshBookData(url, cache, cancelToken, priority);
+                if (page == null) {
+                    throw new IOException("Could not load " + url);
+                }
+                return page;
+            }
+        };
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.android.booksapiapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Local database of every {@link Book} fetched so far, so searches can be answered without
+ * the network.
+ * <p>
+ * The title and author of the books are indexed in an SQLite full-text table. The number of
+ * stored books is bounded: when there are too many, the books that were fetched the longest
+ * time ago are deleted first.
+ */
+public class BookStore extends SQLiteOpenHelper {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = BookStore.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "books.db";
+
+    private static final int DATABASE_VERSION = 2;
+
+    // Default number of books kept in the store
+    public static final int DEFAULT_MAX_BOOKS = 2000;
+
+    // Table with one row per book
+    private static final String TABLE_BOOKS = "books";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_KEY = "book_key";
+    private static final String COLUMN_VOLUME_ID = "volume_id";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_AUTHOR = "author";
+    private static final String COLUMN_OTHER_AUTHORS = "other_authors";
+    private static final String COLUMN_LINK = "link";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+    private static final String COLUMN_PUBLISHED_DATE = "published_date";
+    private static final String COLUMN_PAGE_COUNT = "page_count";
+    private static final String COLUMN_AVERAGE_RATING = "average_rating";
+    private static final String COLUMN_RATINGS_COUNT = "ratings_count";
+    private static final String COLUMN_LAST_SEEN = "last_seen";
+
+    // Full-text index of the title and author, whose docid is the _id of the book
+    private static final String TABLE_FTS = "books_fts";
+
+    private static BookStore sInstance;
+
+    // Number of books kept in the store
+    private final int maxBooks;
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link BookStore} with
+     *
+     * @param context  is the context used to open the database
+     * @param name     is the name of the database file, or null for an in-memory database
+     * @param maxBooks is the number of books kept in the store
+     */
+    public BookStore(Context context, String name, int maxBooks) {
+        super(context, name, null, DATABASE_VERSION);
+        this.maxBooks = maxBooks;
+    }
+
+    /**
+     * Return the store shared by the whole app
+     *
+     * @param context is any context, only the application context is kept
+     */
+    public static synchronized BookStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BookStore(context.getApplicationContext(), DATABASE_NAME, DEFAULT_MAX_BOOKS);
+        }
+        return sInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_BOOKS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_KEY + " TEXT NOT NULL UNIQUE, "
+                + COLUMN_VOLUME_ID + " TEXT, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_AUTHOR + " TEXT, "
+                + COLUMN_OTHER_AUTHORS + " TEXT, "
+                + COLUMN_LINK + " TEXT, "
+                + COLUMN_THUMBNAIL + " TEXT, "
+                + COLUMN_PUBLISHED_DATE + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_PAGE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_AVERAGE_RATING + " REAL NOT NULL DEFAULT 0, "
+                + COLUMN_RATINGS_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_LAST_SEEN + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX books_last_seen ON " + TABLE_BOOKS + " (" + COLUMN_LAST_SEEN + ")");
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_FTS + " USING fts4(" + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store only holds copies of fetched books, so it can simply be rebuilt
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKS);
+        onCreate(db);
+    }
+
+    /**
+     * Save the given books, or update them if they are already stored, and mark them as
+     * seen now. Called on a background thread, e.g. after every fetched page.
+     */
+    public void saveBooks(List<Book> books) {
+        if (books == null || books.isEmpty()) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            long now = System.currentTimeMillis();
+            db.beginTransaction();
+            try {
+                for (Book book : books) {
+                    saveBook(db, book, now);
+                }
+                trim(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem saving the books.", e);
+        }
+    }
+
+    private void saveBook(SQLiteDatabase db, Book book, long now) {
+        String key = keyFor(book);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_VOLUME_ID, book.getVolumeId());
+        values.put(COLUMN_TITLE, book.getBookTitle());
+        values.put(COLUMN_AUTHOR, book.getBookAuthor());
+        values.put(COLUMN_OTHER_AUTHORS, Book.joinAuthors(book.getOtherAuthors()));
+        values.put(COLUMN_LINK, book.getBookLink());
+        values.put(COLUMN_THUMBNAIL, book.getThumbnailUrl());
+        values.put(COLUMN_PUBLISHED_DATE, book.getPackedPublishedDate());
+        values.put(COLUMN_PAGE_COUNT, book.getPageCount());
+        values.put(COLUMN_AVERAGE_RATING, book.getAverageRating());
+        values.put(COLUMN_RATINGS_COUNT, book.getRatingsCount());
+        values.put(COLUMN_LAST_SEEN, now);
+
+        ContentValues ftsValues = new ContentValues();
+        ftsValues.put(COLUMN_TITLE, book.getBookTitle());
+        // Every author is searchable, not only the main one
+        List<String> authors = book.getBookAuthors();
+        StringBuilder authorText = new StringBuilder();
+        for (String author : authors) {
+            if (authorText.length() > 0) {
+                authorText.append(", ");
+            }
+            authorText.append(author);
+        }
+        ftsValues.put(COLUMN_AUTHOR, authorText.toString());
+
+        long rowId = findRowId(db, key);
+        if (rowId == -1) {
+            rowId = db.insert(TABLE_BOOKS, null, values);
+            ftsValues.put("docid", rowId);
+            db.insert(TABLE_FTS, null, ftsValues);
+        } else {
+            String[] whereArgs = {String.valueOf(rowId)};
+            db.update(TABLE_BOOKS, values, COLUMN_ID + " = ?", whereArgs);
+            db.update(TABLE_FTS, ftsValues, "docid = ?", whereArgs);
+        }
+    }
+
+    // Return the _id of the book with the given key, or -1 if it is not stored
+    private static long findRowId(SQLiteDatabase db, String key) {
+        Cursor cursor = db.query(TABLE_BOOKS, new String[]{COLUMN_ID}, COLUMN_KEY + " = ?",
+                new String[]{key}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Delete the books seen the longest time ago, until there are at most maxBooks
+    private void trim(SQLiteDatabase db) {
+        long excess = DatabaseUtils.queryNumEntries(db, TABLE_BOOKS) - maxBooks;
+        if (excess <= 0) {
+            return;
+        }
+        String oldest = "SELECT " + COLUMN_ID + " FROM " + TABLE_BOOKS
+                + " ORDER BY " + COLUMN_LAST_SEEN + " ASC LIMIT " + excess;
+        db.execSQL("DELETE FROM " + TABLE_FTS + " WHERE docid IN (" + oldest + ")");
+        db.execSQL("DELETE FROM " + TABLE_BOOKS + " WHERE " + COLUMN_ID + " IN (" + oldest + ")");
+        Log.v(LOG_TAG, "Evicted " + excess + " books");
+    }
+
+    /**
+     * Return the stored books whose title or author contain words starting with every word
+     * of the given query, the most recently seen first. Called on a background thread.
+     *
+     * @param query is the text typed by the user
+     * @param limit is the largest number of books returned
+     */
+    public List<Book> search(String query, int limit) {
+        String match = matchQuery(query);
+        if (match == null) {
+            return Collections.emptyList();
+        }
+        List<Book> books = new ArrayList<>();
+        try {
+            Cursor cursor = getReadableDatabase().rawQuery("SELECT "
+                    + TABLE_BOOKS + "." + COLUMN_VOLUME_ID + ", "
+                    + TABLE_BOOKS + "." + COLUMN_AUTHOR + ", "
+                    + TABLE_BOOKS + "." + COLUMN_OTHER_AUTHORS + ", "
+                    + TABLE_BOOKS + "." + COLUMN_TITLE + ", "
+                    + TABLE_BOOKS + "." + COLUMN_LINK + ", "
+                    + TABLE_BOOKS + "." + COLUMN_THUMBNAIL + ", "
+                    + TABLE_BOOKS + "." + COLUMN_PUBLISHED_DATE + ", "
+                    + TABLE_BOOKS + "." + COLUMN_PAGE_COUNT + ", "
+                    + TABLE_BOOKS + "." + COLUMN_AVERAGE_RATING + ", "
+                    + TABLE_BOOKS + "." + COLUMN_RATINGS_COUNT
+                    + " FROM " + TABLE_FTS + " JOIN " + TABLE_BOOKS
+                    + " ON " + TABLE_BOOKS + "." + COLUMN_ID + " = " + TABLE_FTS + ".docid"
+                    + " WHERE " + TABLE_FTS + " MATCH ?"
+                    + " ORDER BY " + TABLE_BOOKS + "." + COLUMN_LAST_SEEN + " DESC"
+                    + " LIMIT " + limit, new String[]{match});
+            try {
+                while (cursor.moveToNext()) {
+                    books.add(new Book(cursor.getString(0), cursor.getString(1), Book.splitAuthors(cursor.getString(2)),
+                            cursor.getString(3), cursor.getString(4), cursor.getString(5),
+                            cursor.getInt(6), cursor.getInt(7), cursor.getFloat(8), cursor.getInt(9)));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem searching the stored books.", e);
+        }
+        return books;
+    }
+
+    /**
+     * Turn the text typed by the user into a full-text query that matches the words starting
+     * with each of its words, e.g. "andr prog" into "andr* prog*".
+     *
+     * @return the query, or null if the text has no words
+     */
+    static String matchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : text.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    // Books without a volume id are told apart by their link
+    private static String keyFor(Book book) {
+        return book.getVolumeId() != null ? book.getVolumeId() : "link:" + book.getBookLink();
+    }
+}
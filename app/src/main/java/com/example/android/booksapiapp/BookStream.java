@@ -0,0 +1,413 @@
+package com.example.android.booksapiapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * The books of a search, delivered in batches as they are loaded.
+ * <p>
+ * The books come from a main {@link Source}, e.g. the pages of the network results, and
+ * optionally from a preview source, e.g. the books stored in earlier sessions. The preview
+ * books are shown until the main books arrive, and are then kept after them, without the
+ * ones the main source also returned. A book is only kept the first time its volume id is
+ * seen, e.g. when two pages of the API overlap, so every book of the stream is distinct.
+ * <p>
+ * Nothing is loaded until an observer asks for books with {@link #request(int)}: the
+ * stream then pulls batches from its main source on the worker executor until it has
+ * delivered that many books, so a slow reader never makes the stream fetch ahead. The
+ * observers are called on the callback executor, e.g. the main thread. When they are
+ * slower than the source, the batches loaded in between are merged into one call.
+ * <p>
+ * The stream keeps its books and its state when it has no observers, so a stream kept
+ * across a configuration change is observed again without loading anything. It does not
+ * depend on Android and can be tested on the JVM.
+ */
+public final class BookStream {
+
+    /**
+     * Produces the books of a stream, one batch at a time. Called on the worker executor,
+     * never by two threads at once.
+     */
+    public interface Source {
+
+        /**
+         * Return the next batch of books
+         *
+         * @param wanted      is the number of books the observers still asked for, the batch
+         *                    may be smaller or bigger, e.g. a page of results
+         * @param cancelToken is cancelled when the stream is cancelled
+         * @return the batch, which may be empty, or null when the source has no more books
+         * @throws IOException if the batch could not be loaded, the next request retries it
+         */
+        List<Book> next(int wanted, CancelToken cancelToken) throws IOException;
+    }
+
+    /**
+     * Receives the books and the state of a stream, on the callback executor
+     */
+    public interface Observer {
+
+        /**
+         * The books of the stream changed
+         *
+         * @param books is all the books of the stream, the main books then the preview ones
+         * @param batch is the main books added since the last call, all of them when the
+         *              observer was just subscribed
+         */
+        void onBooks(List<Book> books, List<Book> batch);
+
+        /**
+         * A batch started or stopped loading
+         */
+        void onLoading(boolean loading);
+
+        /**
+         * A batch could not be loaded. The books already delivered are kept, and the next
+         * call to {@link #request(int)} retries the batch.
+         */
+        void onError(IOException error);
+
+        /**
+         * The main source has no more books
+         */
+        void onComplete();
+    }
+
+    private final Source source;
+
+    private final Source preview;
+
+    private final Executor worker;
+
+    private final Executor callbacks;
+
+    private final CancelToken cancelToken = new CancelToken();
+
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+
+    // All guarded by this
+    private List<Book> mainBooks = Collections.emptyList();
+    private final Set<Object> mainKeys = new HashSet<>();
+    private List<Book> previewBooks = Collections.emptyList();
+    private List<Book> books = Collections.emptyList();
+    private List<Book> deliveredBooks = Collections.emptyList();
+    private List<Book> undeliveredBatch = new ArrayList<>();
+    private boolean booksChanged;
+    private boolean previewLoaded;
+    private int demand;
+    private boolean pulling;
+    private boolean loading;
+    private boolean deliveredLoading;
+    private IOException error;
+    private boolean errorDelivered = true;
+    private boolean complete;
+    private boolean completeDelivered;
+    private boolean deliveryPending;
+
+    // Runs a pull of the sources on the worker executor
+    private final Runnable pullRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pull();
+        }
+    };
+
+    // Calls the observers with what changed, on the callback executor
+    private final Runnable deliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Create a new {@link BookStream} object, which loads nothing before the first request
+     *
+     * @param source    is the source of the main books
+     * @param preview   is the source of the books shown until the main books arrive, or null.
+     *                  Only its first batch is used.
+     * @param worker    is the executor the sources are called on
+     * @param callbacks is the executor the observers are called on
+     */
+    public BookStream(Source source, Source preview, Executor worker, Executor callbacks) {
+        this.source = source;
+        this.preview = preview;
+        this.worker = worker;
+        this.callbacks = callbacks;
+        previewLoaded = preview == null;
+    }
+
+    /**
+     * Start observing the stream. The observer first gets the books and the state the
+     * stream already has.
+     */
+    public void subscribe(final Observer observer) {
+        observers.add(observer);
+        callbacks.execute(new Runnable() {
+            @Override
+            public void run() {
+                replay(observer);
+            }
+        });
+    }
+
+    /**
+     * Stop observing the stream. The stream keeps loading the books already requested.
+     */
+    public void unsubscribe(Observer observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Ask for the given number of books more than already asked for. After an error, this
+     * also retries the batch that failed.
+     */
+    public void request(int count) {
+        synchronized (this) {
+            if (cancelToken.isCancelled() || complete) {
+                return;
+            }
+            if (error != null) {
+                // The books of the failed batch are still asked for
+                error = null;
+                demand = Math.max(demand, count);
+            } else {
+                demand += count;
+            }
+            if (pulling) {
+                return;
+            }
+            pulling = true;
+        }
+        worker.execute(pullRunnable);
+    }
+
+    /**
+     * Stop loading for good, e.g. when the search is replaced. The observers are not
+     * called anymore.
+     */
+    public void cancel() {
+        cancelToken.cancel();
+        observers.clear();
+    }
+
+    // Returns true if the stream was cancelled
+    public boolean isCancelled() {
+        return cancelToken.isCancelled();
+    }
+
+    /**
+     * Returns true if the stream loads nothing and may have more books: all the books
+     * asked for were delivered or a batch failed, and the main source is not exhausted
+     */
+    public synchronized boolean isIdle() {
+        return !pulling && !complete && !cancelToken.isCancelled();
+    }
+
+    // Returns true if the main source has no more books
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    // Getter method that returns all the books loaded so far, the main books then the preview ones
+    public synchronized List<Book> getBooks() {
+        return books;
+    }
+
+    /**
+     * Pull batches until the demand is met, the main source is exhausted or a batch fails
+     */
+    private void pull() {
+        if (!previewLoaded) {
+            loadPreview();
+        }
+        while (true) {
+            int wanted;
+            synchronized (this) {
+                if (demand <= 0 || error != null || complete || cancelToken.isCancelled()) {
+                    pulling = false;
+                    loading = false;
+                    scheduleDelivery();
+                    return;
+                }
+                wanted = demand;
+                loading = true;
+                scheduleDelivery();
+            }
+
+            List<Book> batch;
+            try {
+                batch = source.next(wanted, cancelToken);
+            } catch (IOException e) {
+                synchronized (this) {
+                    error = e;
+                    errorDelivered = false;
+                }
+                continue;
+            }
+
+            synchronized (this) {
+                if (batch == null) {
+                    complete = true;
+                } else if (!batch.isEmpty()) {
+                    // Books already returned by an earlier batch are dropped, but still count
+                    // towards the demand, or overlapping pages would be pulled forever
+                    List<Book> newBooks = new ArrayList<>(batch.size());
+                    for (Book book : batch) {
+                        if (mainKeys.add(keyOf(book))) {
+                            newBooks.add(book);
+                        }
+                    }
+                    demand -= batch.size();
+                    if (!newBooks.isEmpty()) {
+                        List<Book> newMainBooks = new ArrayList<>(mainBooks.size() + newBooks.size());
+                        newMainBooks.addAll(mainBooks);
+                        newMainBooks.addAll(newBooks);
+                        mainBooks = Collections.unmodifiableList(newMainBooks);
+                        undeliveredBatch.addAll(newBooks);
+                        updateBooks();
+                    }
+                }
+            }
+        }
+    }
+
+    private void loadPreview() {
+        List<Book> batch = null;
+        try {
+            batch = preview.next(0, cancelToken);
+        } catch (IOException e) {
+            // The preview is only a nicety, the main source decides whether the stream fails
+        }
+        synchronized (this) {
+            previewLoaded = true;
+            if (batch != null && !batch.isEmpty()) {
+                previewBooks = Collections.unmodifiableList(new ArrayList<>(batch));
+                updateBooks();
+            }
+        }
+    }
+
+    // Combine the main and the preview books, guarded by this
+    private void updateBooks() {
+        List<Book> combined = mainBooks;
+        if (!previewBooks.isEmpty()) {
+            Set<Object> keys = new HashSet<>(mainKeys);
+            combined = new ArrayList<>(mainBooks.size() + previewBooks.size());
+            combined.addAll(mainBooks);
+            for (Book book : previewBooks) {
+                if (keys.add(keyOf(book))) {
+                    combined.add(book);
+                }
+            }
+            combined = Collections.unmodifiableList(combined);
+        }
+
+        // The main source returned the books of the preview, which are already shown
+        if (combined.equals(books)) {
+            return;
+        }
+        books = combined;
+        booksChanged = true;
+        scheduleDelivery();
+    }
+
+    // Books without a volume id can only be told apart by their content
+    private static Object keyOf(Book book) {
+        return book.getVolumeId() != null ? book.getVolumeId() : book;
+    }
+
+    // Make sure the observers are called once with everything that changed, guarded by this
+    private void scheduleDelivery() {
+        if (deliveryPending) {
+            return;
+        }
+        deliveryPending = true;
+        callbacks.execute(deliverRunnable);
+    }
+
+    private void deliver() {
+        List<Book> changedBooks = null;
+        List<Book> batch = null;
+        Boolean loadingChange = null;
+        IOException deliveredError = null;
+        boolean deliveredComplete = false;
+        synchronized (this) {
+            deliveryPending = false;
+            if (booksChanged) {
+                booksChanged = false;
+                changedBooks = books;
+                deliveredBooks = books;
+                batch = Collections.unmodifiableList(undeliveredBatch);
+                undeliveredBatch = new ArrayList<>();
+            }
+            if (loading != deliveredLoading) {
+                deliveredLoading = loading;
+                loadingChange = loading;
+            }
+            if (error != null && !errorDelivered) {
+                errorDelivered = true;
+                deliveredError = error;
+            }
+            if (complete && !completeDelivered) {
+                completeDelivered = true;
+                deliveredComplete = true;
+            }
+        }
+        if (cancelToken.isCancelled()) {
+            return;
+        }
+        for (Observer observer : observers) {
+            if (changedBooks != null) {
+                observer.onBooks(changedBooks, batch);
+            }
+            if (loadingChange != null) {
+                observer.onLoading(loadingChange);
+            }
+            if (deliveredError != null) {
+                observer.onError(deliveredError);
+            }
+            if (deliveredComplete) {
+                observer.onComplete();
+            }
+        }
+    }
+
+    // Give a new observer the books and the state delivered so far to the others
+    private void replay(Observer observer) {
+        List<Book> replayedBooks;
+        boolean replayedLoading;
+        IOException replayedError;
+        boolean replayedComplete;
+        synchronized (this) {
+            // What is not delivered yet reaches the new observer with the next delivery
+            replayedBooks = deliveredBooks;
+            replayedLoading = deliveredLoading;
+            replayedError = errorDelivered ? error : null;
+            replayedComplete = completeDelivered;
+        }
+        if (cancelToken.isCancelled() || !observers.contains(observer)) {
+            return;
+        }
+        if (!replayedBooks.isEmpty()) {
+            observer.onBooks(replayedBooks, replayedBooks);
+        }
+        if (replayedLoading) {
+            observer.onLoading(true);
+        }
+        if (replayedError != null) {
+            observer.onError(replayedError);
+        }
+        if (replayedComplete) {
+            observer.onComplete();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.android.booksapiapp;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Refreshes the books of all the saved searches in the background, so they are ready when
+ * the user opens them.
+ * <p>
+ * All the saved searches are refreshed in a single wake-up, one after the other over the
+ * same keep-alive connection. The wake-ups are only scheduled while the network is
+ * unmetered or the device is charging: with two {@link JobScheduler} jobs from API 21,
+ * one for each condition, and before that with an inexact alarm that checks them itself.
+ * Each search is revalidated with a conditional request, so a search whose books did not
+ * change only costs a 304 Not Modified.
+ */
+public final class BookSync {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = BookSync.class.getSimpleName();
+
+    // Time between two syncs of the saved searches
+    public static final long SYNC_INTERVAL_MILLIS = AlarmManager.INTERVAL_HALF_DAY;
+
+    // A wake-up this soon after the last sync does nothing, e.g. when both jobs run
+    private static final long MIN_SYNC_GAP_MILLIS = SYNC_INTERVAL_MILLIS / 2;
+
+    // Ids of the jobs: while unmetered, and while charging on any network
+    private static final int JOB_ID_UNMETERED = 1001;
+    private static final int JOB_ID_CHARGING = 1002;
+
+    // Preferences that remember when the last sync ran
+    private static final String PREFS_NAME = "book_sync";
+    private static final String KEY_LAST_SYNC = "last_sync";
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name BookSync.
+     */
+    private BookSync() {
+    }
+
+    /**
+     * Schedule the sync of the saved searches if there are any, or cancel it if there are
+     * none. Can be called often, e.g. on every start of the app, it only schedules once.
+     */
+    public static void schedule(Context context) {
+        Context appContext = context.getApplicationContext();
+        boolean hasSavedSearches = !SavedSearches.getAll(appContext).isEmpty();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJobs(appContext, hasSavedSearches);
+        } else {
+            scheduleAlarm(appContext, hasSavedSearches);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJobs(Context context, boolean hasSavedSearches) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (!hasSavedSearches) {
+            scheduler.cancel(JOB_ID_UNMETERED);
+            scheduler.cancel(JOB_ID_CHARGING);
+            return;
+        }
+
+        // Scheduling a job again would restart its period, so only schedule missing jobs
+        boolean unmeteredPending = false;
+        boolean chargingPending = false;
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            unmeteredPending |= job.getId() == JOB_ID_UNMETERED;
+            chargingPending |= job.getId() == JOB_ID_CHARGING;
+        }
+        ComponentName service = new ComponentName(context, BookSyncJobService.class);
+        if (!unmeteredPending) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_UNMETERED, service)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setPeriodic(SYNC_INTERVAL_MILLIS)
+                    .setPersisted(true)
+                    .build());
+        }
+        if (!chargingPending) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, service)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                    .setRequiresCharging(true)
+                    .setPeriodic(SYNC_INTERVAL_MILLIS)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    private static void scheduleAlarm(Context context, boolean hasSavedSearches) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        Intent intent = new Intent(context, BookSyncService.class);
+        PendingIntent pending = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_NO_CREATE);
+        if (!hasSavedSearches) {
+            if (pending != null) {
+                alarmManager.cancel(pending);
+                pending.cancel();
+            }
+            return;
+        }
+        if (pending != null) {
+            // Already scheduled
+            return;
+        }
+        // An inexact alarm is batched with the alarms of other apps into the same wake-up
+        pending = PendingIntent.getService(context, 0, intent, 0);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, pending);
+    }
+
+    /**
+     * Returns true if the device is on an unmetered network, or charging and on any
+     * network. The jobs check this themselves, the alarm does not.
+     */
+    public static boolean constraintsMet(Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return false;
+        }
+        boolean metered = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? connectivityManager.isActiveNetworkMetered()
+                : networkInfo.getType() != ConnectivityManager.TYPE_WIFI;
+        return !metered || isCharging(context);
+    }
+
+    private static boolean isCharging(Context context) {
+        // The battery broadcast is sticky, so this returns the last one without a receiver
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int plugged = battery == null ? 0 : battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        return plugged != 0;
+    }
+
+    /**
+     * Refresh the books of every saved search, unless the last sync ran recently. This is
+     * on a background thread.
+     *
+     * @param cancelToken is cancelled to stop the sync between two searches and abort the
+     *                    one running, or null
+     * @return false if a search failed or the sync was stopped, and it should be retried later
+     */
+    public static boolean syncSavedSearches(Context context, CancelToken cancelToken) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        long lastSync = prefs.getLong(KEY_LAST_SYNC, 0);
+        if (now >= lastSync && now - lastSync < MIN_SYNC_GAP_MILLIS) {
+            Log.v(LOG_TAG, "Skipping the sync, the last one ran " + (now - lastSync) / 60000 + " minutes ago");
+            return true;
+        }
+
+        // The timeouts follow the network the sync runs on, there is no activity to tell it
+        RequestPolicy.getDefault().watchNetwork(context);
+        ResponseCache cache = ResponseCache.getInstance(context);
+        BookStore store = BookStore.getInstance(context);
+        int changed = 0;
+        int unchanged = 0;
+        int failed = 0;
+        boolean stopped = false;
+        for (String query : SavedSearches.getAll(context)) {
+            // The searches already synced are kept, the next run syncs again
+            if (cancelToken != null && cancelToken.isCancelled()) {
+                stopped = true;
+                break;
+            }
+            // The same first page the search asks for, so opening the search hits the cache
+            String url = BookUtils.pageUrl(BooksActivity.requestUrl(query, BookQueryBuilder.VIEW_LIST),
+                    0, BookSearch.FIRST_PAGE_SIZE);
+            List<Book> books = BookUtils.revalidateBookData(url, cache, cancelToken);
+            // A response cut off, e.g. by leaving the Wi-Fi network, must not replace the saved results
+            if (books == null || !ParsedBooks.isComplete(books)) {
+                failed++;
+                continue;
+            }
+            List<Book> previous = SavedSearches.readResults(context, query);
+            if (previous != null && previous.equals(books)) {
+                unchanged++;
+                continue;
+            }
+            try {
+                SavedSearches.writeResults(context, query, books);
+                store.saveBooks(books);
+                changed++;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem saving the results of " + query, e);
+                failed++;
+            }
+        }
+        Log.i(LOG_TAG, "Synced saved searches: changed=" + changed + ", unchanged=" + unchanged
+                + ", failed=" + failed + (stopped ? ", stopped" : "") + ", " + BookHttpClient.getDefault());
+
+        if (failed == 0 && !stopped) {
+            prefs.edit().putLong(KEY_LAST_SYNC, now).apply();
+        }
+        return failed == 0 && !stopped;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.android.booksapiapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Schedules the sync of the saved searches again after the device restarts, because the
+ * alarm used before API 21 does not survive a restart. The jobs from API 21 are persisted.
+ */
+public class BookSyncBootReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            BookSync.schedule(context);
+        }
+    }
+}
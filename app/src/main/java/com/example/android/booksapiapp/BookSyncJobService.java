@@ -0,0 +1,46 @@
+package com.example.android.booksapiapp;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/**
+ * Runs the sync of the saved searches when the {@link android.app.job.JobScheduler}
+ * decides its constraints are met, see {@link BookSync}.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class BookSyncJobService extends JobService {
+
+    // Stops the sync currently running, if any
+    private CancelToken syncCancelToken;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancelToken cancelToken = new CancelToken();
+        syncCancelToken = cancelToken;
+        // The jobs run on the main thread, so sync on a background thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean synced = BookSync.syncSavedSearches(getApplicationContext(), cancelToken);
+                // A stopped job is rescheduled by onStopJob, it must not be finished too
+                if (!cancelToken.isCancelled()) {
+                    jobFinished(params, !synced);
+                }
+            }
+        }, "BookSync").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are no longer met, e.g. the device left the Wi-Fi network.
+        // Aborting the request running makes the sync stop before the next search.
+        // The searches already synced are kept, the next run syncs again.
+        if (syncCancelToken != null) {
+            syncCancelToken.cancel();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.booksapiapp;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Runs the sync of the saved searches when the alarm used before API 21 goes off, see
+ * {@link BookSync}. The alarm does not know about the network or the charger, so the
+ * sync only runs if the constraints are met.
+ */
+public class BookSyncService extends IntentService {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = BookSyncService.class.getSimpleName();
+
+    public BookSyncService() {
+        super("BookSyncService");
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (!BookSync.constraintsMet(this)) {
+            Log.v(LOG_TAG, "Skipping the sync, the network is metered and the device is not charging");
+            return;
+        }
+        BookSync.syncSavedSearches(this, null);
+    }
+}
@@ -1,22 +1,33 @@
 package com.example.android.booksapiapp;
 
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Helper methods related to requesting and receiving book data from Google Books API.
@@ -28,6 +39,38 @@ public final class BookUtils {
      */
     private static final String LOG_TAG = BookUtils.class.getSimpleName();
 
+    /**
+     * Parse the whole response into a String and then into an org.json tree
+     */
+    public static final int PARSER_DOM = 0;
+
+    /**
+     * Parse the response with a {@link JsonReader} straight from the connection stream
+     */
+    public static final int PARSER_STREAMING = 1;
+
+    /**
+     * The parser used by {@link #fetchBookData(String)}. Kept selectable so both paths
+     * can be compared in a benchmark.
+     */
+    private static volatile int sParser = PARSER_STREAMING;
+
+    /**
+     * Background thread used to revalidate stale cached responses
+     */
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Normalized URLs that are currently being refreshed in the background
+     */
+    private static final Set<String> sRefreshing = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Network fetches currently running, by normalized URL, so callers asking for the same
+     * URL at the same time share one request and one parse
+     */
+    private static final SingleFlight<List<Book>> sNetworkFetches = new SingleFlight<>();
+
     /**
      * Create a private constructor because no one should ever create a {@link BookUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -36,24 +79,306 @@ public final class BookUtils {
     private BookUtils() {
     }
 
+    /**
+     * Select which parser {@link #fetchBookData(String)} uses
+     *
+     * @param parser is either {@link #PARSER_DOM} or {@link #PARSER_STREAMING}
+     */
+    public static void setParser(int parser) {
+        if (parser != PARSER_DOM && parser != PARSER_STREAMING) {
+            throw new IllegalArgumentException("Unknown parser: " + parser);
+        }
+        sParser = parser;
+    }
+
+    // Getter method that returns the parser currently in use
+    public static int getParser() {
+        return sParser;
+    }
+
+    /**
+     * Return the metrics of the network fetches, e.g. how many were shared by several callers
+     */
+    public static SingleFlight<List<Book>> getNetworkFetches() {
+        return sNetworkFetches;
+    }
+
     public static List<Book> fetchBookData(String query) {
+        return fetchBookData(query, null);
+    }
+
+    /**
+     * Return the list of {@link Book}s for the given request URL, serving it from the cache
+     * when possible. A stale cached response is still returned, and is refreshed from the
+     * network in the background for the next request.
+     *
+     * @param query is the request URL
+     * @param cache is the cache to use, or null to always go to the network
+     */
+    public static List<Book> fetchBookData(String query, ResponseCache cache) {
+        return fetchBookData(query, cache, null);
+    }
+
+    /**
+     * Return the list of {@link Book}s for the given request URL like
+     * {@link #fetchBookData(String, ResponseCache)}, aborting the network request as soon
+     * as the given token is cancelled.
+     *
+     * @param cancelToken is the token used to cancel the fetch, or null
+     * @return the books, or null if the fetch failed or was cancelled
+     */
+    public static List<Book> fetchBookData(String query, ResponseCache cache, CancelToken cancelToken) {
+        return fetchBookData(query, cache, cancelToken, RequestScheduler.PRIORITY_FOREGROUND);
+    }
+
+    /**
+     * Return the list of {@link Book}s for the given request URL like
+     * {@link #fetchBookData(String, ResponseCache, CancelToken)}, with the network request
+     * queued at the given priority, e.g. lower for the pages fetched ahead of the user.
+     *
+     * @param priority is one of the PRIORITY constants of {@link RequestScheduler}
+     * @return the books, or null if the fetch failed, was cancelled or waited too long
+     */
+    public static List<Book> fetchBookData(String query, ResponseCache cache, CancelToken cancelToken,
+                                           int priority) {
+        if (cache != null) {
+            ResponseCache.Entry entry = cache.get(query);
+            if (entry != null) {
+                if (cache.isStale(entry)) {
+                    refreshInBackground(query, cache);
+                }
+                return parseBody(entry.getBody());
+            }
+        }
+        return fetchFromNetwork(query, cache, cancelToken, priority);
+    }
+
+    /**
+     * Return the current list of {@link Book}s for the given request URL. A fresh cached
+     * response is used as it is, but a stale one is revalidated with a conditional request
+     * first, so the caller gets the result of the server and not the one it may already
+     * have shown, see {@link #cachedBookData(String, ResponseCache)}.
+     *
+     * @param cache       is the cache to use, or null to always go to the network
+     * @param cancelToken is the token used to cancel the fetch, or null
+     * @param priority    is one of the PRIORITY constants of {@link RequestScheduler}
+     * @return the books, or null if the fetch failed, was cancelled or waited too long
+     */
+    public static List<Book> fetchFreshBookData(String query, ResponseCache cache, CancelToken cancelToken,
+                                                int priority) {
+        if (cache != null) {
+            ResponseCache.Entry entry = cache.get(query);
+            if (entry != null && !cache.isStale(entry)) {
+                return parseBody(entry.getBody());
+            }
+        }
+        return fetchFromNetwork(query, cache, cancelToken, priority);
+    }
+
+    /**
+     * Return the list of {@link Book}s of the cached response for the given request URL,
+     * even a stale one, without going to the network. Used to show the last known result
+     * while {@link #fetchFreshBookData} gets the current one.
+     *
+     * @return the books, or null if the URL is not cached
+     */
+    public static List<Book> cachedBookData(String query, ResponseCache cache) {
+        ResponseCache.Entry entry = cache.peek(query);
+        return entry == null ? null : parseBody(entry.getBody());
+    }
+
+    /**
+     * Return the list of {@link Book}s for the given request URL from the network, even if
+     * the cache holds a fresh response. A cached response is revalidated with a conditional
+     * request, so a result that did not change only costs a 304 Not Modified. The request
+     * is a background refresh, sent after the requests of the user.
+     *
+     * @param cancelToken is cancelled to abort the fetch, or null
+     * @return the books, or null if the fetch failed or was cancelled
+     */
+    public static List<Book> revalidateBookData(String query, ResponseCache cache, CancelToken cancelToken) {
+        return fetchFromNetwork(query, cache, cancelToken, RequestScheduler.PRIORITY_BACKGROUND);
+    }
+
+    /**
+     * Fetch the books for the given request URL from the network and store the response
+     * in the cache, if there is one. Callers fetching the same URL at the same time share
+     * a single request, and all get its books, at the priority of the first caller.
+     */
+    private static List<Book> fetchFromNetwork(final String query, final ResponseCache cache, CancelToken cancelToken,
+                                               final int priority) {
 
         // Create a URL with createUrl() method
-        URL url = createUrl(query);
+        final URL url = createUrl(query);
+
+        // If the URL is null, then return early.
+        if (url == null) {
+            return null;
+        }
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            return sNetworkFetches.execute(ResponseCache.normalizeUrl(query), cancelToken,
+                    new SingleFlight.Call<List<Book>>() {
+                        @Override
+                        public List<Book> call(CancelToken sharedToken) throws IOException {
+                            return fetchAndParse(query, url, cache, sharedToken, priority);
+                        }
+                    });
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+            if (cancelToken == null || !cancelToken.isCancelled()) {
+                Log.e(LOG_TAG, "Problem retrieving the book JSON results.", e);
+            }
+            return null;
         }
+    }
 
-        // Extract relevant fields from the JSON response and create a list of {@link Book}s
-        List<Book> books = extractFromJson(jsonResponse);
+    /**
+     * Perform the request and parse its response. A cached response is revalidated with a
+     * conditional request, and reused when the server answers 304 Not Modified.
+     *
+     * @return the books, which may be shared by several callers and must not be changed,
+     * or null if the server answered with an error
+     */
+    private static List<Book> fetchAndParse(String query, URL url, ResponseCache cache, CancelToken cancelToken,
+                                            int priority) throws IOException {
+        ResponseCache.Entry cached = cache == null ? null : cache.peek(query);
+        BookHttpClient.Response response = null;
+        try {
+            response = RequestPolicy.getDefault().execute(BookHttpClient.getDefault(), url, cached, cancelToken,
+                    priority);
+
+            // The cached response is still valid, so there is no body to download
+            if (response.isNotModified() && cached != null) {
+                cache.markNotModified(query, cached);
+                return parseBody(cached.getBody());
+            }
+
+            // If the request was not successful (response code 200), there is nothing to parse
+            if (response.getResponseCode() != 200) {
+                Log.e(LOG_TAG, "Error response code: " + response.getResponseCode());
+                return null;
+            }
+
+            // Copy the bytes while they are parsed so the response can be cached
+            InputStream inputStream = response.getBody();
+            CapturingInputStream capturingStream = null;
+            if (cache != null) {
+                capturingStream = new CapturingInputStream(inputStream);
+                inputStream = capturingStream;
+            }
+
+            // The streaming parser reads the books directly from the connection
+            ParsedBooks books;
+            if (sParser == PARSER_STREAMING) {
+                books = tracedParse(inputStream);
+            } else {
+                String json = null;
+                long readStart = PipelineTracer.begin(PipelineTracer.STAGE_READ);
+                try {
+                    json = readFromStream(inputStream);
+                } finally {
+                    PipelineTracer.end(PipelineTracer.STAGE_READ, readStart, 0, json == null ? 0 : json.length());
+                }
+                books = tracedParse(json);
+            }
+
+            // A response cut off before its first volume is a failed request. A response cut
+            // off later still gives its first books, but it is not cached.
+            if (books != null && !books.isComplete() && books.getItemCount() == 0) {
+                throw new IOException("The response ended before its first volume");
+            }
 
-        // Return the list of {@link Book}s
-        return books;
+            // Keep the response for the next request
+            if (capturingStream != null && books != null && books.isComplete()) {
+                cache.put(query, capturingStream.getCapturedBytes(), response.getEtag(), response.getLastModified());
+            }
+
+            // Return the list of {@link Book}s, shared by all the callers
+            return books;
+        } finally {
+            closeQuietly(response);
+        }
+    }
+
+    /**
+     * Refresh the cached response for the given request URL on a background thread.
+     * A refresh that is already running for the same URL is not started again.
+     */
+    private static void refreshInBackground(final String query, final ResponseCache cache) {
+        final String key = ResponseCache.normalizeUrl(query);
+        if (!sRefreshing.add(key)) {
+            return;
+        }
+        REFRESH_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fetchFromNetwork(query, cache, null, RequestScheduler.PRIORITY_BACKGROUND);
+                } finally {
+                    sRefreshing.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Parse a cached response body with the parser currently in use
+     */
+    private static ParsedBooks parseBody(byte[] body) {
+        if (sParser == PARSER_STREAMING) {
+            return tracedParse(new ByteArrayInputStream(body));
+        }
+        return tracedParse(new String(body, Charset.forName("UTF-8")));
+    }
+
+    // Parse the books with the streaming parser, as the parse stage of the pipeline
+    private static ParsedBooks tracedParse(InputStream inputStream) {
+        ParsedBooks books = null;
+        long start = PipelineTracer.begin(PipelineTracer.STAGE_PARSE);
+        try {
+            books = extractFromStream(inputStream);
+            return books;
+        } finally {
+            PipelineTracer.end(PipelineTracer.STAGE_PARSE, start, books == null ? 0 : books.size(), 0);
+            logDiagnostics(books);
+        }
+    }
+
+    // Parse the books with the DOM parser, as the parse stage of the pipeline
+    private static ParsedBooks tracedParse(String json) {
+        ParsedBooks books = null;
+        long start = PipelineTracer.begin(PipelineTracer.STAGE_PARSE);
+        try {
+            books = extractFromJson(json);
+            return books;
+        } finally {
+            PipelineTracer.end(PipelineTracer.STAGE_PARSE, start, books == null ? 0 : books.size(), 0);
+            logDiagnostics(books);
+        }
+    }
+
+    // Log the volumes that were skipped or completed with default values
+    private static void logDiagnostics(ParsedBooks books) {
+        if (books == null || books.getDiagnostics().isEmpty()) {
+            return;
+        }
+        Log.w(LOG_TAG, "Parsed " + books.size() + " books from " + books.getItemCount() + " volumes, "
+                + books.getSkippedCount() + " skipped" + (books.isComplete() ? "" : ", response incomplete"));
+        for (ParsedBooks.Diagnostic diagnostic : books.getDiagnostics()) {
+            Log.v(LOG_TAG, diagnostic.toString());
+        }
+    }
+
+    /**
+     * Return the request URL for the page of results that starts at the given index
+     *
+     * @param requestUrl is the request URL without paging parameters
+     * @param startIndex is the index of the first result of the page
+     * @param maxResults is the number of results of the page
+     */
+    public static String pageUrl(String requestUrl, int startIndex, int maxResults) {
+        String separator = requestUrl.indexOf('?') == -1 ? "?" : "&";
+        return requestUrl + separator + "startIndex=" + startIndex + "&maxResults=" + maxResults;
     }
 
     /**
@@ -78,54 +403,57 @@ public final class BookUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * An {@link InputStream} that keeps a copy of every byte read through it
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static final class CapturingInputStream extends FilterInputStream {
 
-        // If the URL is null, then return early.
-        if (url == null) {
-            return jsonResponse;
+        private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+        CapturingInputStream(InputStream in) {
+            super(in);
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
-        try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(1000 /* milliseconds */);
-            urlConnection.setConnectTimeout(1500 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                captured.write(b);
             }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                captured.write(buffer, offset, read);
             }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
+            return read;
+        }
+
+        byte[] getCapturedBytes() {
+            return captured.toByteArray();
+        }
+    }
+
+    /**
+     * Close the given stream, logging instead of throwing if that fails
+     */
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing the stream.", e);
             }
         }
-        return jsonResponse;
     }
 
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
         if (inputStream != null) {
             InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
@@ -142,8 +470,12 @@ public final class BookUtils {
     /**
      * Return a list of {@link Book} objects that has been built up from
      * parsing the given JSON response.
+     * <p>
+     * The tree of the whole response is built first. If the response is corrupt or cut
+     * off, it is read again volume by volume, so the volumes before the problem are still
+     * returned, see {@link ParsedBooks}.
      */
-    private static List<Book> extractFromJson(String responseJson) {
+    static ParsedBooks extractFromJson(String responseJson) {
 
         // If the JSON string is empty or null, then return early.
         if (TextUtils.isEmpty(responseJson)) {
@@ -151,63 +483,312 @@ public final class BookUtils {
         }
 
         // Create an empty ArrayList that we can start adding books to
-        List<Book> booksList = new ArrayList<>();
+        ParsedBooks booksList = new ParsedBooks();
 
         // Try to parse the JSON response string. If there's a problem with the way the JSON
         // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
         try {
 
             // Create a JSONObject from the JSON response string
             JSONObject baseJsonResponse = new JSONObject(responseJson);
 
-            // Extract the JSONArray associated with the key called "volumes",
-            // which represents a list of features (or earthquakes).
-            JSONArray bookArray = baseJsonResponse.getJSONArray("items");
-
+            // Extract the JSONArray associated with the key called "items",
+            // which represents a list of books.
+            JSONArray bookArray = baseJsonResponse.optJSONArray("items");
+            if (bookArray != null) {
+                for (int i = 0; i < bookArray.length(); i++) {
+
+                    // Get a single book at position i within the list of books
+                    Object item = bookArray.opt(i);
+                    if (item instanceof JSONObject) {
+                        addVolume((JSONObject) item, booksList);
+                    } else {
+                        booksList.skipItem("not a volume object");
+                    }
+                }
+            }
+        } catch (JSONException e) {
 
-            /** For each book in the bookArray, create an {@link Book} object */
-            for (int i = 0; i < bookArray.length(); i++) {
+            // Catch the exception so the app doesn't crash, and keep the books before the problem
+            return extractVolumes(responseJson);
+        }
 
-                // Get a single book at position i within the list of books
-                JSONObject currentBookObject = bookArray.getJSONObject(i);
+        // Return the list of books
+        return booksList;
+    }
 
-                // For a given book, extract the JSONObject associated with the
-                // key called "volumeInfo", which represents a list of all properties
-                // for that book.
-                JSONObject volumeInfo = currentBookObject.getJSONObject("volumeInfo");
+    /**
+     * Return the books of the given JSON response, read one after the other with a
+     * {@link JSONTokener} instead of building the tree of the whole response first, so
+     * the volumes before a corrupt or cut off part of the response are still returned
+     */
+    private static ParsedBooks extractVolumes(String responseJson) {
+        ParsedBooks booksList = new ParsedBooks();
+        try {
+            JSONTokener tokener = new JSONTokener(responseJson);
+            if (tokener.nextClean() != '{') {
+                throw tokener.syntaxError("Expected the response object");
+            }
+            char next = tokener.nextClean();
+            while (next != '}') {
+                tokener.back();
+                String name = String.valueOf(tokener.nextValue());
+                if (tokener.nextClean() != ':') {
+                    throw tokener.syntaxError("Expected ':' after " + name);
+                }
+
+                // The books are in the array with the key called "items", skip everything else
+                if ("items".equals(name)) {
+                    readItems(tokener, booksList);
+                } else {
+                    tokener.nextValue();
+                }
+                next = tokener.nextClean();
+                if (next == ',') {
+                    next = tokener.nextClean();
+                } else if (next != '}') {
+                    throw tokener.syntaxError("Expected ',' or '}'");
+                }
+            }
+        } catch (JSONException e) {
 
-                // Extract the value for the key called title
-                String title = volumeInfo.getString("title");
+            // If an error is thrown when executing any of the above statements in the "try" block,
+            // catch the exception here, so the app doesn't crash. Print a log message
+            // with the message from the exception.
+            Log.e(LOG_TAG, "Problem parsing the book JSON results", e);
+            booksList.setIncomplete(e.getMessage());
+        }
+        return booksList;
+    }
 
-                // Extract the JSONArray associated with the key called "authors"
-                JSONArray authorsArray = volumeInfo.getJSONArray("authors");
-                // Extract the value at the position 0
-                String author = authorsArray.getString(0);
+    /**
+     * Read the "items" array, each volume on its own so a volume with missing or
+     * unexpected fields does not stop the others from being read
+     */
+    private static void readItems(JSONTokener tokener, ParsedBooks booksList) throws JSONException {
+        if (tokener.nextClean() != '[') {
+            throw tokener.syntaxError("Expected the items array");
+        }
+        char next = tokener.nextClean();
+        while (next != ']') {
+            tokener.back();
+
+            // Get a single book within the list of books
+            Object item = tokener.nextValue();
+            if (item instanceof JSONObject) {
+                addVolume((JSONObject) item, booksList);
+            } else {
+                booksList.skipItem("not a volume object");
+            }
+            next = tokener.nextClean();
+            if (next == ',') {
+                next = tokener.nextClean();
+            } else if (next != ']') {
+                throw tokener.syntaxError("Expected ',' or ']'");
+            }
+        }
+    }
 
-                // Extract the value for the key called infoLink
-                String webLink = volumeInfo.getString("infoLink");
+    /**
+     * Add the {@link Book} of the given volume object, see {@link ParsedBooks#addVolume}
+     */
+    private static void addVolume(JSONObject currentBookObject, ParsedBooks booksList) {
 
-                /** Create a new {@link Book } object with the title, author and web link url from
-                 * the JSON response.*/
-                Book newBook = new Book(title, author, webLink);
+        // Extract the volume id, used to tell the books apart
+        String volumeId = optStringOrNull(currentBookObject, "id");
 
-                /** Add the new {@link Book} to the list of books */
-                booksList.add(newBook);
+        // For a given book, extract the JSONObject associated with the
+        // key called "volumeInfo", which represents a list of all properties
+        // for that book.
+        JSONObject volumeInfo = currentBookObject.optJSONObject("volumeInfo");
+        if (volumeInfo == null) {
+            volumeInfo = new JSONObject();
+        }
 
+        // Extract the value for the key called title
+        String title = optStringOrNull(volumeInfo, "title");
+
+        // Extract all the authors, the one at the position 0 is the main author
+        List<String> authors = null;
+        Object authorsValue = volumeInfo.opt("authors");
+        if (authorsValue instanceof JSONArray) {
+            JSONArray authorsArray = (JSONArray) authorsValue;
+            authors = new ArrayList<>(authorsArray.length());
+            for (int j = 0; j < authorsArray.length(); j++) {
+                Object author = authorsArray.opt(j);
+                if (author instanceof String) {
+                    authors.add((String) author);
+                }
             }
+        } else if (authorsValue instanceof String) {
+            authors = Collections.singletonList((String) authorsValue);
+        }
 
-        } catch (JSONException e) {
+        // Extract the value for the key called infoLink
+        String webLink = optStringOrNull(volumeInfo, "infoLink");
 
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("BookUtils", "Problem parsing the earthquake JSON results", e);
+        // Extract the small cover thumbnail, if the book has one
+        JSONObject imageLinks = volumeInfo.optJSONObject("imageLinks");
+        String thumbnail = imageLinks != null ? optStringOrNull(imageLinks, "smallThumbnail") : null;
+
+        // Extract the secondary fields, which many books do not have
+        String publishedDate = optStringOrNull(volumeInfo, "publishedDate");
+        int pageCount = volumeInfo.optInt("pageCount");
+        float averageRating = (float) volumeInfo.optDouble("averageRating", 0);
+        int ratingsCount = volumeInfo.optInt("ratingsCount");
+
+        /** Add a new {@link Book } object with the authors, title and web link url from
+         * the JSON response, unless the volume cannot be shown.*/
+        booksList.addVolume(volumeId, title, authors, webLink, thumbnail,
+                publishedDate, pageCount, averageRating, ratingsCount);
+    }
+
+    /**
+     * Return the given field of the object as a String, or null if it is missing, a JSON
+     * null or not a primitive
+     */
+    private static String optStringOrNull(JSONObject object, String name) {
+        Object value = object.opt(name);
+        if (value instanceof String || value instanceof Number) {
+            return value.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Return a list of {@link Book} objects read with a {@link JsonReader} from the given
+     * stream. Only the fields of a {@link Book} are read from each volume, all other
+     * subtrees (saleInfo, accessInfo...) are skipped without being materialized.
+     * <p>
+     * When the stream fails or the JSON is corrupt, e.g. because the connection dropped in
+     * the middle of the body, the books read so far are returned, see {@link ParsedBooks}.
+     */
+    static ParsedBooks extractFromStream(InputStream inputStream) {
+
+        // Create an empty ArrayList that we can start adding books to
+        ParsedBooks booksList = new ParsedBooks();
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                // The books are in the array with the key called "items", skip everything else
+                if ("items".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            readVolume(reader, booksList);
+                        } else {
+                            reader.skipValue();
+                            booksList.skipItem("not a volume object");
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+
+            // The stream failed, or the JsonReader threw MalformedJsonException or
+            // IllegalStateException because the JSON is not in the expected shape.
+            // Keep the books read so far, like the DOM parser does.
+            Log.e(LOG_TAG, "Problem parsing the book JSON results", e);
+            booksList.setIncomplete(String.valueOf(e.getMessage()));
         }
 
         // Return the list of books
         return booksList;
     }
 
+    /**
+     * Read a single volume object from the "items" array, and add its {@link Book} unless
+     * the volume cannot be shown, see {@link ParsedBooks#addVolume}
+     */
+    private static void readVolume(JsonReader reader, ParsedBooks booksList) throws IOException {
+        String volumeId = null;
+        String title = null;
+        List<String> authors = null;
+        String webLink = null;
+        String thumbnail = null;
+        String publishedDate = null;
+        int pageCount = 0;
+        float averageRating = 0;
+        int ratingsCount = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String volumeName = reader.nextName();
+            if ("id".equals(volumeName)) {
+                volumeId = nextStringOrNull(reader);
+            } else if ("volumeInfo".equals(volumeName) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("title".equals(name)) {
+                        title = nextStringOrNull(reader);
+                    } else if ("authors".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        authors = new ArrayList<>(1);
+                        while (reader.hasNext()) {
+                            String author = nextStringOrNull(reader);
+                            if (author != null) {
+                                authors.add(author);
+                            }
+                        }
+                        reader.endArray();
+                    } else if ("authors".equals(name) && reader.peek() == JsonToken.STRING) {
+                        authors = Collections.singletonList(reader.nextString());
+                    } else if ("publishedDate".equals(name)) {
+                        publishedDate = nextStringOrNull(reader);
+                    } else if ("pageCount".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                        // Truncated like JSONObject.optInt() does, e.g. for 12.5
+                        pageCount = (int) reader.nextDouble();
+                    } else if ("averageRating".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                        averageRating = (float) reader.nextDouble();
+                    } else if ("ratingsCount".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                        ratingsCount = (int) reader.nextDouble();
+                    } else if ("infoLink".equals(name)) {
+                        webLink = nextStringOrNull(reader);
+                    } else if ("imageLinks".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        // Only the small thumbnail is shown in the list
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if ("smallThumbnail".equals(reader.nextName())) {
+                                thumbnail = nextStringOrNull(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        booksList.addVolume(volumeId, title, authors, webLink, thumbnail,
+                publishedDate, pageCount, averageRating, ratingsCount);
+    }
+
+    /**
+     * Read the next value as a String, or return null if the value is a JSON null
+     * or not a primitive.
+     */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
 
 }
@@ -1,51 +1,72 @@
 package com.example.android.booksapiapp;
 
-import android.app.LoaderManager;
 import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SearchView;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.SubMenu;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 
 
-public class BooksActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<Book>> {
+public class BooksActivity extends AppCompatActivity implements BookStream.Observer {
 
     /**
      * Tag for log messages
      */
     public static final String LOG_TAG = BooksActivity.class.getName();
 
-    /*
-     * Constant value for the Book loader ID. We can choose any integer.
-     * This really only comes into play if you're using multiple loaders.
+    /**
+     * URL of the volumes of the Google Books API, or of a stand-in server in a build made
+     * for testing. The search parameters are added by the {@link BookQueryBuilder}, and the
+     * paging parameters by the {@link BookSearch}.
+     */
+    private static final String BOOKS_API_URL = BuildConfig.BOOKS_API_BASE_URL;
+
+    /**
+     * Number of rows left below the visible ones when the next page starts loading
+     */
+    private static final int PREFETCH_DISTANCE = 5;
+
+    /**
+     * Time the user has to stop typing before the typed query is searched for
+     */
+    private static final long SEARCH_DEBOUNCE_MILLIS = 400;
+
+    /**
+     * Shortest query that is searched for while typing
      */
-    private static final int BOOK_LOADER_ID = 1;
+    private static final int MIN_QUERY_LENGTH = 2;
 
     /**
-     * URL for books data from Google Books API
+     * Query used when the user did not search for anything yet
      */
-    private static final String BOOK_REQUEST_URL = "https://www.googleapis.com/books/v1/volumes?maxResults=40&projection=full&q=:";
+    private static final String DEFAULT_QUERY = "google";
 
     public String searchQuery = "";
 
     /* Variable for the {@link SearchView} */
     public SearchView searchView;
 
-    /* Variable for the ListView */
-    private ListView bookListView;
+    /* Variable for the RecyclerView */
+    private RecyclerView bookRecyclerView;
 
     /**
      * Variable for the {@link BookAdapter} object that holds
@@ -58,39 +79,83 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
      */
     private ProgressBar progressBar;
 
-    /* Variable for the user's query */
+    /* Variable for the user's query, without leading, trailing and repeated spaces */
     private String userQuery;
 
+    /* The user's query with its spaces, used to search the stored books */
+    private String userQueryText;
+
     /* TextViews that are displayed when the list is empty */
     private TextView emptyStateTextView;
 
+    /* Handler used to debounce the search-as-you-type */
+    private final Handler searchHandler = new Handler();
+
+    /* The query typed last, searched for once the user stops typing */
+    private String pendingQuery;
+
+    /* Runs the search for the query typed last */
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (pendingQuery != null) {
+                startSearch(pendingQuery);
+            }
+        }
+    };
+
+    /* The search started last, kept across configuration changes */
+    private BookSearch bookSearch;
+
+    /* The query of the search started last */
+    private String requestedQuery;
+
+    /* The query of the search that delivered the books shown, and those books */
+    private String loadedQuery;
+    private List<Book> loadedBooks;
+
+    /* Sorts and filters the loaded books without another network request */
+    private final BookQueryEngine queryEngine = new BookQueryEngine();
+
+    /* The sort order chosen in the menu, one of the BookQueryEngine.SORT_ constants */
+    private int sortOrder = BookQueryEngine.SORT_RELEVANCE;
+
+    /* Whether only the books with a web link are shown */
+    private boolean linksOnly;
+
+    /* The text that refines the loaded books while the user types, or null */
+    private String refineText;
+
+    /* Whether the first books were shown and reported as the end of the startup */
+    private boolean firstBooksShown;
+
+    /* Uptime at which the first row was drawn, or -1 before, read by the startup benchmark */
+    private volatile long firstRowDrawnUptimeMillis = -1;
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_books);
 
+        // Debug builds trace the fetch, parse and render stages from the start
+        if (savedInstanceState == null && BuildConfig.DEBUG) {
+            PipelineTracer.setEnabled(true, PipelineTracer.isSystraceSupported());
+        }
+
         /* Find the reference to the {@link SearchView} in the layout */
         searchView = (SearchView) findViewById(R.id.search);
 
-        /* Find the reference to the {@link ListView} in the layout  */
-        bookListView = (ListView) findViewById(R.id.list);
-
-        // Create a new adapter that takes an empty list of books as input
-        bookAdapter = new BookAdapter(this, new ArrayList<Book>());
+        /* Find the reference to the {@link RecyclerView} in the layout  */
+        bookRecyclerView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        bookRecyclerView.setLayoutManager(layoutManager);
 
-        /* Set the adapter on the {@link ListView}
-         * so the list can be populated in the user interface */
-        bookListView.setAdapter(bookAdapter);
-
-        /* Set an item click listener on the {@link ListView}, which sends an intent to a web
+        /* Create a new adapter with a click listener, which sends an intent to a web
          * browser to open a website with more information about the selected book */
-        bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        bookAdapter = new BookAdapter(this, new BookAdapter.OnBookClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                // Find the current book that was clicked on
-                Book clickedBook = bookAdapter.getItem(position);
-
+            public void onBookClick(Book clickedBook) {
                 // Convert the String URL into URI object ( to pass into the Intent constructor)
                 Uri bookUri = Uri.parse(clickedBook.getBookLink());
 
@@ -105,33 +170,49 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
             }
         });
 
+        /* Set the adapter on the {@link RecyclerView}
+         * so the list can be populated in the user interface */
+        bookRecyclerView.setAdapter(bookAdapter);
+
+        /* Set a scroll listener on the {@link RecyclerView}, which loads the next page of books
+         * before the user reaches the end of the list */
+        bookRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = bookAdapter.getItemCount();
+                if (totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - 1 - PREFETCH_DISTANCE) {
+                    bookSearch.loadNextPage();
+                }
+            }
+        });
+
         // Empty state text view for no item found
         emptyStateTextView = (TextView) findViewById(R.id.empty_view);
-        bookListView.setEmptyView(emptyStateTextView);
 
         // Find the reference to the progress bar in a layout
         progressBar = (ProgressBar) findViewById(R.id.loading_indicator);
 
-        // If there is a network connection, fetch data
-        if (isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders
-            LoaderManager loaderManager = getLoaderManager();
-            /*
-             * Initialize the loader. Pass in the int Id constant defined above and pass in
-             * null for the bundle. Pass in this activity for the LoaderCallbacks parameter ( which
-             * is valid because this activity implements the LoaderCallbacks interface).
-             */
-            loaderManager.initLoader(BOOK_LOADER_ID, null, this);
+        /* After a configuration change, show the books of the search kept by the previous
+         * activity again, without fetching them again */
+        bookSearch = (BookSearch) getLastCustomNonConfigurationInstance();
+        if (bookSearch != null) {
+            userQueryText = bookSearch.getQuery();
+            userQuery = BookQueryBuilder.normalizeQuery(userQueryText);
+            requestedQuery = userQuery;
+            bookSearch.getStream().subscribe(this);
         } else {
-            /*
-             *  Otherwise, display error
-             *  First, hide loading indicator so error message will be visible
-             */
-            progressBar.setVisibility(View.GONE);
+            /* On a cold start, show the books of the last search on the first frame and warm up
+             * the first fetch in the background. The search then refreshes the books. */
+            if (savedInstanceState == null) {
+                restoreStartupSnapshot();
+            }
 
-            // Update empty state with no connection error message
-            emptyStateTextView.setText(R.string.no_internet_connection);
+            /* Start the search. Without a network connection it shows the books stored in
+             * earlier sessions. */
+            search();
         }
+        StartupPipeline.warmUpInBackground(this, requestUrl(DEFAULT_QUERY, BookQueryBuilder.VIEW_LIST));
 
         /*
          * Set an OnQueryTextListener to the button so if there is a network
@@ -140,38 +221,263 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
-                // If there is a network connection
-                if (isConnected()) {
-                    bookListView.setVisibility(View.INVISIBLE);
+                // The search starts now, so drop the pending search-as-you-type
+                searchHandler.removeCallbacks(searchRunnable);
+
+                /* Only show the progress for a new search: the query may already have been
+                 * searched while the user paused typing, and its books are shown or loading.
+                 * Without a network connection the search is answered with the books stored
+                 * in earlier sessions. */
+                String submittedQuery = searchView.getQuery().toString();
+                if (!isCurrentQuery(submittedQuery)) {
+                    bookRecyclerView.setVisibility(View.INVISIBLE);
                     emptyStateTextView.setVisibility(View.GONE);
                     progressBar.setVisibility(View.VISIBLE);
-
-                    userQuery = searchView.getQuery().toString();
-                    userQuery = userQuery.replace(" ", "");
-                    Log.v(LOG_TAG, userQuery);
-
-                    // Restart the Loader and execute the new search
-                    getLoaderManager().restartLoader(BOOK_LOADER_ID, null, BooksActivity.this);
-                    searchView.clearFocus();
-                }
-                // If there is NO network connection
-                else {
-                    bookListView.setVisibility(View.INVISIBLE);
-                    progressBar.setVisibility(View.GONE);
-                    // Set the text of the Empty View
-                    emptyStateTextView.setVisibility(View.VISIBLE);
-                    emptyStateTextView.setText(R.string.no_internet_connection);
+                    startSearch(submittedQuery);
                 }
+                searchView.clearFocus();
                 return false;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                return false;
+                /* Show the already fetched books that match the refined query right away,
+                 * and search for it once the user stops typing */
+                showRefinedResults(newText);
+                searchHandler.removeCallbacks(searchRunnable);
+                if (newText.trim().length() >= MIN_QUERY_LENGTH) {
+                    pendingQuery = newText;
+                    searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MILLIS);
+                }
+                return true;
             }
         });
     }
 
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        // Keep the search and its books for the activity recreated after the configuration change
+        return bookSearch;
+    }
+
+    @Override
+    protected void onDestroy() {
+        searchHandler.removeCallbacks(searchRunnable);
+        bookSearch.getStream().unsubscribe(this);
+        // Nobody will show the books anymore, stop loading them
+        if (isFinishing()) {
+            bookSearch.cancel();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Show the books saved by the last session, before the search starts, and give them to
+     * the search as the last known result of their query so it only has to refresh them.
+     */
+    private void restoreStartupSnapshot() {
+        BookCodec.BookList snapshot = StartupPipeline.restoreSnapshot(this);
+        if (snapshot == null || snapshot.getKey() == null) {
+            return;
+        }
+        String query = snapshot.getKey();
+        userQuery = BookQueryBuilder.normalizeQuery(query);
+        userQueryText = query;
+        if (!DEFAULT_QUERY.equals(query)) {
+            // Called before the listener is set, so this does not start a search
+            searchView.setQuery(query, false);
+        }
+        BookSearch.putLastResult(this, requestUrl(query, viewForSortOrder()), snapshot);
+
+        progressBar.setVisibility(View.GONE);
+        bookAdapter.swapBooks(snapshot);
+        updateEmptyState();
+    }
+
+    /**
+     * Start a search of the given query. The search of the previous query is cancelled,
+     * which aborts its network request.
+     */
+    private void startSearch(String query) {
+        // This query is already shown or loading
+        if (isCurrentQuery(query)) {
+            return;
+        }
+        userQuery = BookQueryBuilder.normalizeQuery(query);
+        userQueryText = query.trim();
+        Log.v(LOG_TAG, userQuery);
+
+        // Execute the new search
+        search();
+    }
+
+    /**
+     * Return true if the given query is the one whose books are shown or loading
+     */
+    private boolean isCurrentQuery(String query) {
+        return BookQueryBuilder.normalizeQuery(query).equals(userQuery);
+    }
+
+    /**
+     * If the given text refines the query of the books shown, e.g. "andro" after
+     * "and", show only the books whose title or authors match all of its words.
+     */
+    private void showRefinedResults(String text) {
+        if (loadedBooks == null || loadedQuery == null) {
+            return;
+        }
+        String refinedQuery = BookQueryBuilder.normalizeQuery(text);
+        if (refinedQuery.length() <= loadedQuery.length() || !refinedQuery.startsWith(loadedQuery)) {
+            // The text was shortened back or cleared, so show all the loaded books again
+            if (refineText != null) {
+                refineText = null;
+                showBooks(true);
+            }
+            return;
+        }
+        refineText = text;
+        showBooks(true);
+    }
+
+    /**
+     * Show the loaded books in the chosen sort order, keeping only those that pass
+     * the chosen filters. The books are not fetched again.
+     *
+     * @param reordered is true when the sort order or the filters changed, so the whole
+     *                  list is replaced instead of compared with the books shown
+     */
+    private void showBooks(boolean reordered) {
+        BookQueryEngine.Filter filter = linksOnly ? BookQueryEngine.withLink() : null;
+        if (refineText != null && !refineText.trim().isEmpty()) {
+            filter = BookQueryEngine.both(filter, queryEngine.matchingWords(refineText));
+        }
+        List<Book> books = sortOrder == BookQueryEngine.SORT_RELEVANCE && filter == null
+                ? loadedBooks : queryEngine.query(sortOrder, filter);
+        if (reordered) {
+            bookAdapter.replaceBooks(books);
+        } else {
+            bookAdapter.swapBooks(books);
+        }
+        updateEmptyState();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_books, menu);
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Check the items of the current sort order and filter
+        menu.findItem(R.id.action_links_only).setChecked(linksOnly);
+        int sortItemId;
+        switch (sortOrder) {
+            case BookQueryEngine.SORT_TITLE:
+                sortItemId = R.id.action_sort_title;
+                break;
+            case BookQueryEngine.SORT_AUTHOR:
+                sortItemId = R.id.action_sort_author;
+                break;
+            case BookQueryEngine.SORT_NEWEST:
+                sortItemId = R.id.action_sort_newest;
+                break;
+            case BookQueryEngine.SORT_RATING:
+                sortItemId = R.id.action_sort_rating;
+                break;
+            default:
+                sortItemId = R.id.action_sort_relevance;
+                break;
+        }
+        menu.findItem(sortItemId).setChecked(true);
+
+        // The search shown can be saved, and the saved searches opened
+        MenuItem saveItem = menu.findItem(R.id.action_save_search);
+        saveItem.setVisible(userQueryText != null && !userQueryText.isEmpty());
+        saveItem.setChecked(SavedSearches.contains(this, userQueryText));
+        List<String> savedSearches = SavedSearches.getAll(this);
+        MenuItem savedSearchesItem = menu.findItem(R.id.action_saved_searches);
+        savedSearchesItem.setVisible(!savedSearches.isEmpty());
+        SubMenu savedSearchesMenu = savedSearchesItem.getSubMenu();
+        savedSearchesMenu.clear();
+        for (String savedSearch : savedSearches) {
+            savedSearchesMenu.add(R.id.group_saved_searches, Menu.NONE, Menu.NONE, savedSearch);
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        // Open a saved search, its books synced in the background are shown right away
+        if (item.getGroupId() == R.id.group_saved_searches) {
+            searchView.setQuery(item.getTitle(), true);
+            return true;
+        }
+        switch (item.getItemId()) {
+            case R.id.action_sort_relevance:
+                sortOrder = BookQueryEngine.SORT_RELEVANCE;
+                break;
+            case R.id.action_sort_title:
+                sortOrder = BookQueryEngine.SORT_TITLE;
+                break;
+            case R.id.action_sort_author:
+                sortOrder = BookQueryEngine.SORT_AUTHOR;
+                break;
+            case R.id.action_sort_newest:
+                sortOrder = BookQueryEngine.SORT_NEWEST;
+                break;
+            case R.id.action_sort_rating:
+                sortOrder = BookQueryEngine.SORT_RATING;
+                // The ratings are only in the full projection, fetch the books again with them
+                if (bookSearch.getView() != BookQueryBuilder.VIEW_RATINGS) {
+                    progressBar.setVisibility(View.VISIBLE);
+                    search();
+                    invalidateOptionsMenu();
+                    return true;
+                }
+                break;
+            case R.id.action_links_only:
+                linksOnly = !linksOnly;
+                break;
+            case R.id.action_save_search:
+                // Refresh the books of the saved searches in the background
+                if (SavedSearches.contains(this, userQueryText)) {
+                    SavedSearches.remove(this, userQueryText);
+                } else {
+                    SavedSearches.add(this, userQueryText);
+                }
+                BookSync.schedule(this);
+                invalidateOptionsMenu();
+                return true;
+            case R.id.action_metrics:
+                startActivity(new Intent(this, MetricsActivity.class));
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        invalidateOptionsMenu();
+        if (loadedBooks != null) {
+            showBooks(true);
+        }
+        return true;
+    }
+
+    /**
+     * Return the request URL of the given search text in the given view, without paging
+     * parameters
+     *
+     * @param view is a view of {@link BookQueryBuilder}
+     */
+    static String requestUrl(String query, int view) {
+        return new BookQueryBuilder(BOOKS_API_URL).setQuery(query).setView(view).build();
+    }
+
+    // Returns the view of {@link BookQueryBuilder} the chosen sort order needs
+    private int viewForSortOrder() {
+        return sortOrder == BookQueryEngine.SORT_RATING ? BookQueryBuilder.VIEW_RATINGS : BookQueryBuilder.VIEW_LIST;
+    }
+
     // Helper method to check network connection
     public boolean isConnected() {
         ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -179,41 +485,134 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
         return (networkInfo != null && networkInfo.isConnected());
     }
 
+    /**
+     * Replace the search shown with a new search of the user's query, or of the default
+     * query if the user did not search for anything yet
+     */
+    private void search() {
+        String localQuery;
+        if (userQuery != null && !userQuery.isEmpty()) {
+            requestedQuery = userQuery;
+            localQuery = userQueryText;
+        } else {
+            requestedQuery = DEFAULT_QUERY;
+            localQuery = DEFAULT_QUERY;
+        }
+        int view = viewForSortOrder();
+        String requestUrl = requestUrl(localQuery, view);
+
+        // The books of a saved search, synced in the background, are shown before the refresh
+        BookCodec.BookList savedResults = SavedSearches.readResults(this, localQuery);
+        if (savedResults != null) {
+            BookSearch.putLastResult(this, requestUrl, savedResults);
+        }
+
+        // The previous search is not shown anymore, stop loading it
+        if (bookSearch != null) {
+            bookSearch.cancel();
+        }
+        bookSearch = new BookSearch(this, localQuery, view, requestUrl);
+        bookSearch.getStream().subscribe(this);
+        bookSearch.start();
+    }
+
     @Override
-    public Loader<List<Book>> onCreateLoader(int id, Bundle args) {
+    public void onBooks(List<Book> books, List<Book> batch) {
+        showLoadedBooks(books);
+    }
 
-        String requestUrl = "";
+    @Override
+    public void onLoading(boolean loading) {
+        // Hide loading indicator because the data has been loaded
+        if (!loading) {
+            progressBar.setVisibility(View.GONE);
+        }
+    }
 
-        if (userQuery != null && userQuery != "") {
-            requestUrl = BOOK_REQUEST_URL + userQuery;
-        } else {
-            String defaultQuery = "google";
-            requestUrl = BOOK_REQUEST_URL + defaultQuery;
+    @Override
+    public void onError(IOException error) {
+        Log.e(LOG_TAG, "Problem loading the books.", error);
+
+        // Nothing was found for the search, e.g. nothing is stored for it offline
+        if (bookSearch.getStream().getBooks().isEmpty()) {
+            showLoadedBooks(bookSearch.getStream().getBooks());
         }
-        return new BooksLoader(this, requestUrl);
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Book>> loader, List<Book> booksData) {
+    public void onComplete() {
+        // The search found no books at all
+        if (bookSearch.getStream().getBooks().isEmpty()) {
+            showLoadedBooks(bookSearch.getStream().getBooks());
+        }
+    }
+
+    /**
+     * Show the books delivered by the search started last
+     */
+    private void showLoadedBooks(List<Book> booksData) {
 
         // Hide loading indicator because the data has been loaded
         progressBar.setVisibility(View.GONE);
 
-        // If the list is empty
-        emptyStateTextView.setText(R.string.no_item_found);
-        // Clear the adapter of previous books data
-        bookAdapter.clear();
+        // If the list is empty, because nothing was found or nothing is stored for the search offline
+        emptyStateTextView.setText(isConnected() ? R.string.no_item_found : R.string.no_internet_connection);
 
-        /* If there is a valid list of {@link Book}s , then add them to the
-         * adapter's data set. This will trigger the {@link  ListView} to update. */
-        if (booksData != null && !booksData.isEmpty()) {
-            bookAdapter.addAll(booksData);
+        // Remember the result so refinements of the query can be shown while typing
+        boolean newQuery = !requestedQuery.equals(loadedQuery);
+        if (newQuery) {
+            refineText = null;
         }
+        loadedQuery = requestedQuery;
+        loadedBooks = booksData;
+
+        /* Only the keys of the books appended since the last page are computed */
+        queryEngine.setBooks(booksData);
+
+        /* Replace the previous books data with the new list of {@link Book}s, sorted and
+         * filtered as chosen. For a new page of the same query only the books that changed
+         * are rebound in the {@link RecyclerView}. */
+        showBooks(newQuery);
     }
 
-    @Override
-    public void onLoaderReset(Loader<List<Book>> loader) {
-        // Loader reset, so we can clear out our existing data.
-        bookAdapter.clear();
+    /**
+     * Show the empty state text view instead of the list when there are no books
+     */
+    private void updateEmptyState() {
+        boolean empty = bookAdapter.getItemCount() == 0;
+        bookRecyclerView.setVisibility(empty ? View.INVISIBLE : View.VISIBLE);
+        emptyStateTextView.setVisibility(empty ? View.VISIBLE : View.GONE);
+
+        if (!empty && !firstBooksShown) {
+            firstBooksShown = true;
+            reportFirstRowDrawn();
+        }
+    }
+
+    /**
+     * Wait for the frame that draws the first rows of the list, then tell the system the
+     * startup is over, it logs the time it took as "Fully drawn"
+     */
+    private void reportFirstRowDrawn() {
+        bookRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // The rows are not laid out yet, this frame does not show them
+                if (bookRecyclerView.getChildCount() == 0) {
+                    return true;
+                }
+                bookRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                firstRowDrawnUptimeMillis = SystemClock.uptimeMillis();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    reportFullyDrawn();
+                }
+                return true;
+            }
+        });
+    }
+
+    // Getter method that returns the uptime at which the first row was drawn, or -1 before
+    long getFirstRowDrawnUptimeMillis() {
+        return firstRowDrawnUptimeMillis;
     }
 }
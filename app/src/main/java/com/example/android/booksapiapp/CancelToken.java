@@ -0,0 +1,95 @@
+package com.example.android.booksapiapp;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lets another thread cancel a fetch, e.g. when a newer query supersedes it.
+ * <p>
+ * Cancelling disconnects every connection the fetch currently has open, which makes a
+ * read blocked on the network fail right away instead of downloading an abandoned result.
+ */
+public final class CancelToken {
+
+    private volatile boolean cancelled;
+
+    // Connections currently open for the fetch, guarded by this
+    private final Set<HttpURLConnection> connections = new HashSet<>();
+
+    // Listeners run when the token is cancelled, guarded by this
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    /**
+     * Cancel the fetch and abort its open connections. Can be called from any thread.
+     */
+    public void cancel() {
+        HttpURLConnection[] open;
+        Runnable[] toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            open = connections.toArray(new HttpURLConnection[connections.size()]);
+            connections.clear();
+            toRun = listeners.toArray(new Runnable[listeners.size()]);
+            listeners.clear();
+        }
+        for (HttpURLConnection connection : open) {
+            connection.disconnect();
+        }
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+    }
+
+    // Returns true once the fetch was cancelled
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Register a connection opened for the fetch. A connection registered after the
+     * token was cancelled is disconnected right away.
+     */
+    void register(HttpURLConnection connection) {
+        synchronized (this) {
+            if (!cancelled) {
+                connections.add(connection);
+                return;
+            }
+        }
+        connection.disconnect();
+    }
+
+    /**
+     * Forget a connection that is done
+     */
+    synchronized void unregister(HttpURLConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Run the given listener when the token is cancelled, on the thread that cancels it.
+     * A listener added after the token was cancelled runs right away.
+     */
+    void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Forget a listener that is no longer needed
+     */
+    synchronized void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.booksapiapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Helper methods shared by the disk tiers of the caches, which keep one file per entry in
+ * a directory and touch a file each time it is read.
+ */
+public final class DiskCaches {
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name DiskCaches.
+     */
+    private DiskCaches() {
+    }
+
+    /**
+     * Write the bytes to a temporary file next to the given one and rename it, so a crash
+     * or a full disk never leaves a truncated file under the name of an entry
+     */
+    public static void writeAtomically(File file, byte[] bytes) throws IOException {
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            out.write(bytes);
+            // The bytes must be on the disk before the rename, or a crash can leave an empty file
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tempFile + " to " + file);
+            }
+        } finally {
+            BookUtils.closeQuietly(out);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Delete the least recently used files of the directory until it holds at most the
+     * given number of bytes and of files
+     *
+     * @param maxBytes is the byte budget, or Long.MAX_VALUE for none
+     * @param maxFiles is the number of files kept, or Integer.MAX_VALUE for any number
+     * @return the number of files deleted
+     */
+    public static int trim(File dir, long maxBytes, int maxFiles) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        int count = files.length;
+        if (total <= maxBytes && count <= maxFiles) {
+            return 0;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long a = first.lastModified();
+                long b = second.lastModified();
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+        int deleted = 0;
+        for (int i = 0; i < files.length && (total > maxBytes || count > maxFiles); i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+                count--;
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,453 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the book cover thumbnails shown in the list rows.
+ * <p>
+ * Thumbnails are downloaded and decoded off the main thread, downsampled to the size of
+ * the row, and kept in a size-bounded in-memory LRU in front of a disk cache of the
+ * downloaded files. Binding a recycled row to another book cancels the request of the
+ * previous book, and bitmaps that are neither cached nor shown anymore are reused to
+ * decode the next thumbnails instead of allocating new ones.
+ * <p>
+ * The in-memory cache is sized and trimmed by the {@link MemoryBudget}. Trimmed thumbnails
+ * are decoded again from the disk cache.
+ */
+public class ImageLoader implements MemoryBudget.Tier {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ImageLoader.class.getSimpleName();
+
+    // Name of the directory inside the app cache directory that holds the thumbnails
+    private static final String CACHE_DIR_NAME = "thumbnails";
+
+    // Byte budget of the disk cache
+    private static final long DISK_CACHE_BYTES = 10 * 1024 * 1024;
+
+    // Number of threads downloading and decoding thumbnails
+    private static final int THREAD_COUNT = 3;
+
+    // Number of bitmaps kept aside for reuse
+    private static final int REUSE_POOL_SIZE = 8;
+
+    private static ImageLoader sInstance;
+
+    private final File cacheDir;
+
+    // Package-private so the tests can fill and trim it
+    final LruCache<String, Bitmap> memoryCache;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Client of the thumbnail downloads, kept apart so they do not count in the book API metrics
+    private final BookHttpClient httpClient = new BookHttpClient();
+
+    // Number of views showing each bitmap, guarded by itself
+    private final Map<Bitmap, Integer> displayCounts = new IdentityHashMap<>();
+
+    // Bitmaps evicted from the memory cache that are still shown, guarded by displayCounts
+    private final Map<Bitmap, Boolean> evictedShown = new IdentityHashMap<>();
+
+    // Bitmaps that nothing uses anymore, ready to be decoded into, guarded by displayCounts
+    private final List<Bitmap> reusePool = new ArrayList<>();
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs an {@link ImageLoader} with
+     *
+     * @param cacheDir    is the directory of the disk cache
+     * @param memoryBytes is the byte budget of the in-memory cache
+     */
+    ImageLoader(File cacheDir, int memoryBytes) {
+        this.cacheDir = cacheDir;
+        memoryCache = new LruCache<String, Bitmap>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                onRemovedFromMemory(oldValue);
+            }
+        };
+    }
+
+    /**
+     * Return the loader shared by the whole app
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            MemoryBudget budget = MemoryBudget.getInstance(appContext);
+            sInstance = new ImageLoader(new File(appContext.getCacheDir(), CACHE_DIR_NAME), budget.getImagesBytes());
+            budget.register("images", sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Show the thumbnail at the given URL in the view. Called on the main thread, each
+     * time a row is bound. The request for the book previously bound to the view is
+     * cancelled.
+     *
+     * @param url          is the URL of the thumbnail, or null to clear the view
+     * @param imageView    is the view that shows the thumbnail
+     * @param targetWidth  is the width of the view, in pixels
+     * @param targetHeight is the height of the view, in pixels
+     */
+    public void load(String url, ImageView imageView, int targetWidth, int targetHeight) {
+        Request previous = (Request) imageView.getTag(R.id.thumbnail_request);
+        if (previous != null) {
+            // The view already shows or loads this thumbnail, a failed load is tried again
+            if (url != null && url.equals(previous.url) && !previous.failed) {
+                return;
+            }
+            previous.cancel();
+            release(previous.shown);
+        }
+
+        if (url == null) {
+            imageView.setTag(R.id.thumbnail_request, null);
+            imageView.setImageDrawable(null);
+            return;
+        }
+
+        Request request = new Request(url, imageView, targetWidth, targetHeight);
+        imageView.setTag(R.id.thumbnail_request, request);
+
+        // Retain the cached bitmap before another thread can evict and reuse it
+        Bitmap cached;
+        synchronized (displayCounts) {
+            cached = memoryCache.get(url);
+            if (cached != null) {
+                retain(cached);
+            }
+        }
+        if (cached != null) {
+            request.show(cached);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        request.future = executor.submit(request);
+    }
+
+    // Getter method that returns the bytes of the cached bitmaps and of those kept for reuse
+    @Override
+    public long getResidentBytes() {
+        long bytes = memoryCache.size();
+        synchronized (displayCounts) {
+            for (Bitmap bitmap : reusePool) {
+                bytes += bitmap.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    // Getter method that returns the byte budget of the in-memory cache
+    @Override
+    public long getMaxBytes() {
+        return memoryCache.maxSize();
+    }
+
+    // Getter method that returns the number of bitmaps kept aside for reuse
+    int getReusableCount() {
+        synchronized (displayCounts) {
+            return reusePool.size();
+        }
+    }
+
+    @Override
+    public void trimToBytes(long bytes) {
+        MemoryBudget.trim(memoryCache, bytes);
+        // Under memory pressure the next thumbnails are decoded into new bitmaps
+        synchronized (displayCounts) {
+            reusePool.clear();
+        }
+    }
+
+    /**
+     * Return the bytes of the thumbnail, from the disk cache or else from the network
+     */
+    private byte[] fetch(String url) throws IOException {
+        File file = new File(cacheDir, ResponseCache.fileNameFor(url));
+        if (file.exists()) {
+            file.setLastModified(System.currentTimeMillis());
+            return readFully(new FileInputStream(file));
+        }
+
+        BookHttpClient.Response response = httpClient.get(new URL(url), null);
+        byte[] bytes;
+        try {
+            if (response.getResponseCode() != 200) {
+                throw new IOException("Error response code: " + response.getResponseCode());
+            }
+            bytes = readFully(response.getBody());
+        } finally {
+            response.close();
+        }
+        writeToDisk(file, bytes);
+        return bytes;
+    }
+
+    /**
+     * Decode the thumbnail downsampled to the target size, into a reused bitmap if one fits
+     */
+    private Bitmap decode(byte[] bytes, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+
+        Bitmap reusable = takeReusable(options);
+        if (reusable != null) {
+            options.inBitmap = reusable;
+            try {
+                return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            } catch (IllegalArgumentException e) {
+                // The bitmap could not be reused after all, decode into a new one
+                options.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    /**
+     * Return the largest power of two that keeps the decoded image at least as big as
+     * the target size
+     */
+    private static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Take a bitmap from the reuse pool that the decoder can draw the image into
+     */
+    Bitmap takeReusable(BitmapFactory.Options options) {
+        int width = options.outWidth / options.inSampleSize;
+        int height = options.outHeight / options.inSampleSize;
+        synchronized (displayCounts) {
+            Iterator<Bitmap> iterator = reusePool.iterator();
+            while (iterator.hasNext()) {
+                Bitmap candidate = iterator.next();
+                boolean fits;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    fits = candidate.getAllocationByteCount() >= width * height * 4;
+                } else {
+                    // Before KitKat only a bitmap of the exact same size can be reused
+                    fits = options.inSampleSize == 1
+                            && candidate.getWidth() == width && candidate.getHeight() == height;
+                }
+                if (fits && candidate.isMutable()) {
+                    iterator.remove();
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Count one more view showing the bitmap
+     */
+    void retain(Bitmap bitmap) {
+        synchronized (displayCounts) {
+            Integer count = displayCounts.get(bitmap);
+            displayCounts.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Count one view less showing the bitmap, and make it reusable if it left the memory
+     * cache and no view shows it anymore
+     */
+    void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (displayCounts) {
+            Integer count = displayCounts.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                displayCounts.put(bitmap, count - 1);
+                return;
+            }
+            displayCounts.remove(bitmap);
+            if (evictedShown.remove(bitmap) != null) {
+                addToReusePool(bitmap);
+            }
+        }
+    }
+
+    private void onRemovedFromMemory(Bitmap bitmap) {
+        synchronized (displayCounts) {
+            if (displayCounts.containsKey(bitmap)) {
+                evictedShown.put(bitmap, Boolean.TRUE);
+            } else {
+                addToReusePool(bitmap);
+            }
+        }
+    }
+
+    // Must be called with displayCounts held
+    private void addToReusePool(Bitmap bitmap) {
+        if (bitmap.isMutable() && reusePool.size() < REUSE_POOL_SIZE) {
+            reusePool.add(bitmap);
+        }
+    }
+
+    /**
+     * Store the downloaded thumbnail in the disk cache. The file only gets its name once it
+     * is complete, as {@link #fetch(String)} trusts any file that exists.
+     */
+    private void writeToDisk(File file, byte[] bytes) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            return;
+        }
+        try {
+            DiskCaches.writeAtomically(file, bytes);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the thumbnail to the disk cache.", e);
+        }
+        trimDisk();
+    }
+
+    /**
+     * Delete the least recently used thumbnails until the disk cache fits its byte budget
+     */
+    private synchronized void trimDisk() {
+        DiskCaches.trim(cacheDir, DISK_CACHE_BYTES, Integer.MAX_VALUE);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            BookUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * The thumbnail requested for a view, loaded on a background thread
+     */
+    private final class Request implements Runnable {
+
+        private final String url;
+        private final ImageView imageView;
+        private final int targetWidth;
+        private final int targetHeight;
+
+        private volatile boolean cancelled;
+
+        // Set when the thumbnail could not be loaded, so that binding the view again retries it
+        private volatile boolean failed;
+        private Future<?> future;
+
+        // The bitmap this request put in the view, released when the view is rebound
+        private Bitmap shown;
+
+        Request(String url, ImageView imageView, int targetWidth, int targetHeight) {
+            this.url = url;
+            this.imageView = imageView;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        // Called on the main thread with a bitmap already retained for this view
+        void show(Bitmap bitmap) {
+            shown = bitmap;
+            imageView.setImageBitmap(bitmap);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                byte[] bytes = fetch(url);
+                if (cancelled) {
+                    return;
+                }
+                final Bitmap bitmap = decode(bytes, targetWidth, targetHeight);
+                if (bitmap == null) {
+                    failed = true;
+                    return;
+                }
+                // Retain the bitmap for this view until it is shown or thrown away
+                retain(bitmap);
+                memoryCache.put(url, bitmap);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Only show the bitmap if the view was not rebound in the meantime
+                        if (!cancelled && imageView.getTag(R.id.thumbnail_request) == Request.this) {
+                            show(bitmap);
+                        } else {
+                            release(bitmap);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                failed = true;
+                if (!cancelled) {
+                    Log.e(LOG_TAG, "Problem loading the thumbnail " + url, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.android.booksapiapp;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sizes the in-memory caches of the app and shrinks them when the system runs low on memory.
+ * <p>
+ * Each cache gets a part of the memory class of the device, the heap size the app should
+ * stay under, and half of it on low RAM devices. The caches register themselves as a
+ * {@link Tier}, and are trimmed according to the level given to
+ * {@link #onTrimMemory(int)}: a little while the app runs and memory gets low, more when
+ * the app goes to the background, and completely when the process is about to be killed.
+ * <p>
+ * Every tier writes its entries through to disk, so a trimmed entry is read back from the
+ * disk instead of being fetched again. The cache sizes then grow back to their budget as
+ * they are used.
+ */
+public final class MemoryBudget implements ComponentCallbacks2 {
+
+    // Tag for log messages
+    private static final String LOG_TAG = MemoryBudget.class.getSimpleName();
+
+    // Part of the memory class used by the decoded thumbnails
+    private static final int IMAGES_FRACTION = 8;
+
+    // Part of the memory class used by the response bodies
+    private static final int RESPONSES_FRACTION = 32;
+
+    // Part of the memory class used by the last results of the searches
+    private static final int RESULTS_FRACTION = 64;
+
+    // Low RAM devices, e.g. with 1GB, give the caches this much less
+    private static final int LOW_RAM_DIVISOR = 2;
+
+    /**
+     * An in-memory cache whose size is managed by the {@link MemoryBudget}
+     */
+    public interface Tier {
+
+        // Getter method that returns the bytes the cache holds in memory
+        long getResidentBytes();
+
+        // Getter method that returns the bytes the cache may hold in memory
+        long getMaxBytes();
+
+        /**
+         * Drop the least recently used entries from memory until the cache holds at most
+         * the given bytes. Called on the main thread.
+         */
+        void trimToBytes(long bytes);
+    }
+
+    private static MemoryBudget sInstance;
+
+    // Memory class of the device, in bytes
+    private final long memoryClassBytes;
+
+    private final boolean lowRam;
+
+    // The tiers by name, in the order they registered, guarded by this
+    private final Map<String, Tier> tiers = new LinkedHashMap<>();
+
+    // Last trim level received, and the number of trims, to check them in the field
+    private volatile int lastTrimLevel;
+    private volatile int trimCount;
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Create a new {@link MemoryBudget} object
+     *
+     * @param memoryClass is the memory class of the device, in megabytes
+     * @param lowRam      is true on a low RAM device
+     */
+    MemoryBudget(int memoryClass, boolean lowRam) {
+        memoryClassBytes = memoryClass * 1024L * 1024L;
+        this.lowRam = lowRam;
+    }
+
+    /**
+     * Return the budget shared by the whole app, which is told about the memory pressure
+     * of the application
+     */
+    public static synchronized MemoryBudget getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            boolean lowRam = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice();
+            sInstance = new MemoryBudget(activityManager.getMemoryClass(), lowRam);
+            appContext.registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    // Getter method that returns the bytes the decoded thumbnails may use
+    public int getImagesBytes() {
+        return budget(IMAGES_FRACTION);
+    }
+
+    // Getter method that returns the bytes the response bodies may use
+    public int getResponsesBytes() {
+        return budget(RESPONSES_FRACTION);
+    }
+
+    // Getter method that returns the bytes the last results of the searches may use
+    public int getResultsBytes() {
+        return budget(RESULTS_FRACTION);
+    }
+
+    private int budget(int fraction) {
+        long bytes = memoryClassBytes / fraction;
+        if (lowRam) {
+            bytes /= LOW_RAM_DIVISOR;
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Let the budget trim the given cache, under the given name in the report
+     */
+    public synchronized void register(String name, Tier tier) {
+        tiers.put(name, tier);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        lastTrimLevel = level;
+        trimCount++;
+        float kept = keptFraction(level);
+        if (kept >= 1f) {
+            return;
+        }
+        trim(kept);
+        Log.i(LOG_TAG, "Trimmed to " + Math.round(kept * 100) + "% for level " + level + ": " + this);
+    }
+
+    @Override
+    public void onLowMemory() {
+        // Only sent by old devices, when the whole system is low on memory
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // The budgets do not depend on the configuration
+    }
+
+    /**
+     * Return the part of its budget each tier keeps at the given trim level. The process
+     * is killed first among the cached ones when it holds more memory, so the background
+     * levels trim harder than the running ones.
+     */
+    static float keptFraction(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            // The process is in the middle or at the end of the list to kill
+            return 0f;
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            return 0.25f;
+        }
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            return 0.5f;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1f;
+    }
+
+    /**
+     * Trim every tier to the given part of its budget
+     */
+    synchronized void trim(float kept) {
+        for (Tier tier : tiers.values()) {
+            tier.trimToBytes((long) (tier.getMaxBytes() * kept));
+        }
+    }
+
+    // Getter method that returns the bytes all the tiers hold in memory
+    public synchronized long getResidentBytes() {
+        long bytes = 0;
+        for (Tier tier : tiers.values()) {
+            bytes += tier.getResidentBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Drop the least recently used entries of the cache until its size is at most the given
+     * one, like LruCache.trimToSize() which older versions do not have
+     */
+    static <K, V> void trim(LruCache<K, V> cache, long size) {
+        // The snapshot lists the least recently used entries first
+        for (K key : cache.snapshot().keySet()) {
+            if (cache.size() <= size) {
+                break;
+            }
+            cache.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "MemoryBudget[memoryClass=%dMB%s, trims=%d, lastTrimLevel=%d]",
+                memoryClassBytes / (1024 * 1024), lowRam ? ", lowRam" : "", trimCount, lastTrimLevel));
+        for (Map.Entry<String, Tier> entry : tiers.entrySet()) {
+            report.append(String.format(Locale.US, "\n  %-10s %8.1f KB of %8.1f KB", entry.getKey(),
+                    entry.getValue().getResidentBytes() / 1024.0, entry.getValue().getMaxBytes() / 1024.0));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.android.booksapiapp;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.TextView;
+
+/**
+ * Debug screen that shows the metrics of the {@link PipelineTracer} and the memory used by
+ * the caches, and lets them be reset or shared, e.g. attached to a report that search is slow.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    /* TextView that shows the metrics table */
+    private TextView metricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        metricsTextView = (TextView) findViewById(R.id.metrics_text);
+
+        // Turn the tracing of the stages on and off
+        CheckBox tracingCheckBox = (CheckBox) findViewById(R.id.tracing_enabled);
+        tracingCheckBox.setChecked(PipelineTracer.isEnabled());
+        tracingCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                PipelineTracer.setEnabled(isChecked, PipelineTracer.isSystraceSupported());
+                showMetrics();
+            }
+        });
+
+        findViewById(R.id.metrics_reset).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                PipelineTracer.reset();
+                showMetrics();
+            }
+        });
+
+        // Export the metrics as text to any app that accepts it, e.g. mail or a bug tracker
+        findViewById(R.id.metrics_share).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                shareIntent.setType("text/plain");
+                shareIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.metrics_title));
+                shareIntent.putExtra(Intent.EXTRA_TEXT, dump());
+                startActivity(Intent.createChooser(shareIntent, getString(R.string.metrics_share)));
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        metricsTextView.setText(dump());
+    }
+
+    // Return the metrics of the stages followed by the totals of the HTTP client, the fetches and
+    // the rate limit, and the memory held by each cache
+    private String dump() {
+        return PipelineTracer.dump() + '\n' + BookHttpClient.getDefault() + '\n' + BookUtils.getNetworkFetches() + '\n'
+                + RequestPolicy.getDefault().getScheduler() + '\n' + MemoryBudget.getInstance(this) + '\n';
+    }
+}
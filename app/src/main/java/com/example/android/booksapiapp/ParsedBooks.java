@@ -0,0 +1,179 @@
+package com.example.android.booksapiapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The books parsed from a response, with what went wrong while parsing it.
+ * <p>
+ * Every volume of the response is checked on its own: a volume without a title, or
+ * without both an id and an info link, is skipped, and missing optional fields get a
+ * default value. Each skipped volume and each default is recorded as a {@link Diagnostic}.
+ * <p>
+ * When the body is cut off or corrupt, the books parsed before the problem are kept and
+ * the result is marked as incomplete. {@link #getItemCount()} then tells how many volumes
+ * of the response were read, so the next page can start right after them.
+ */
+public class ParsedBooks extends ArrayList<Book> {
+
+    // ArrayList is serializable, so the version of this class is fixed
+    private static final long serialVersionUID = 1L;
+
+    // Link of the page of a volume, used when the volume has no info link
+    private static final String VOLUME_LINK = "https://books.google.com/books?id=";
+
+    // Number of volumes read from the response, including the skipped ones
+    private int itemCount;
+
+    // Whether the whole response was read
+    private boolean complete = true;
+
+    // The problems found while parsing, null while there are none
+    private List<Diagnostic> diagnostics;
+
+    /**
+     * Check the fields read from the volume at the given index of the response and add its
+     * {@link Book}, unless the volume cannot be shown
+     *
+     * @param authors is the list of authors, or null if the volume has none
+     * @return true if the book was added, false if the volume was skipped
+     */
+    boolean addVolume(String volumeId, String title, List<String> authors, String webLink, String thumbnail,
+                      String publishedDate, int pageCount, float averageRating, int ratingsCount) {
+        int index = itemCount++;
+        if (title == null || title.trim().isEmpty()) {
+            addDiagnostic(index, volumeId, true, "no title");
+            return false;
+        }
+        if (webLink == null || webLink.isEmpty()) {
+            if (volumeId == null) {
+                addDiagnostic(index, null, true, "no id and no info link");
+                return false;
+            }
+            // The page of the volume shows the same information as its info link
+            webLink = VOLUME_LINK + volumeId;
+            addDiagnostic(index, volumeId, false, "no info link");
+        }
+        if (authors == null || authors.isEmpty()) {
+            authors = Collections.emptyList();
+            addDiagnostic(index, volumeId, false, "no authors");
+        }
+        add(new Book(volumeId, authors, title, webLink, thumbnail, publishedDate, pageCount, averageRating, ratingsCount));
+        return true;
+    }
+
+    /**
+     * Skip the volume at the given index of the response, which is not a volume object
+     */
+    void skipItem(String reason) {
+        addDiagnostic(itemCount++, null, true, reason);
+    }
+
+    /**
+     * Mark the result as incomplete, because the rest of the response could not be read
+     */
+    void setIncomplete(String reason) {
+        complete = false;
+        addDiagnostic(itemCount, null, true, "rest of the response not read: " + reason);
+    }
+
+    // Returns true if the whole response was read
+    public boolean isComplete() {
+        return complete;
+    }
+
+    // Getter method that returns the number of volumes read, including the skipped ones
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    // Getter method that returns the problems found while parsing, in the order of the volumes
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics == null ? Collections.<Diagnostic>emptyList() : Collections.unmodifiableList(diagnostics);
+    }
+
+    // Getter method that returns the number of volumes that were skipped
+    public int getSkippedCount() {
+        int skipped = 0;
+        for (Diagnostic diagnostic : getDiagnostics()) {
+            if (diagnostic.isSkipped() && diagnostic.getIndex() < itemCount) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Return whether the given books are the whole response, which is the case of any list
+     * that is not a {@link ParsedBooks}
+     */
+    public static boolean isComplete(List<Book> books) {
+        return !(books instanceof ParsedBooks) || ((ParsedBooks) books).isComplete();
+    }
+
+    /**
+     * Return the number of volumes read from the response the given books were parsed from,
+     * which is the number of books for any list that is not a {@link ParsedBooks}
+     */
+    public static int itemCountOf(List<Book> books) {
+        if (books instanceof ParsedBooks) {
+            return ((ParsedBooks) books).getItemCount();
+        }
+        return books == null ? 0 : books.size();
+    }
+
+    private void addDiagnostic(int index, String volumeId, boolean skipped, String message) {
+        if (diagnostics == null) {
+            diagnostics = new ArrayList<>();
+        }
+        diagnostics.add(new Diagnostic(index, volumeId, skipped, message));
+    }
+
+    /**
+     * A problem found in a volume of the response
+     */
+    public static final class Diagnostic {
+
+        private final int index;
+
+        private final String volumeId;
+
+        private final boolean skipped;
+
+        private final String message;
+
+        Diagnostic(int index, String volumeId, boolean skipped, String message) {
+            this.index = index;
+            this.volumeId = volumeId;
+            this.skipped = skipped;
+            this.message = message;
+        }
+
+        // Getter method that returns the index of the volume in the response
+        public int getIndex() {
+            return index;
+        }
+
+        // Getter method that returns the id of the volume, or null if unknown
+        public String getVolumeId() {
+            return volumeId;
+        }
+
+        // Returns true if the volume was skipped, false if a default value was used
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        // Getter method that returns what was wrong with the volume
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "item " + index + (volumeId != null ? " (" + volumeId + ")" : "") + ": " + message
+                    + (skipped ? ", skipped" : ", default used");
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.android.booksapiapp;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times the stages of the fetch-parse-render pipeline, so a slow search can be traced to
+ * the connection, the body read, the parse or the rebinding of the list.
+ * <p>
+ * Each stage keeps a count, a total and maximum time, a histogram of its times, the items
+ * and bytes it handled and an estimate of the memory it allocated. While enabled, each
+ * stage is also a systrace section, so it shows up in a systrace or Perfetto capture.
+ * <p>
+ * A stage is timed with
+ * <pre>
+ * long start = PipelineTracer.begin(PipelineTracer.STAGE_PARSE);
+ * try {
+ *     ...
+ * } finally {
+ *     PipelineTracer.end(PipelineTracer.STAGE_PARSE, start);
+ * }
+ * </pre>
+ * When the tracer is disabled, begin() and end() only read a volatile field. The value
+ * returned by begin() also tells end() whether a systrace section was opened, so the
+ * sections stay balanced when tracing is turned on or off during a stage.
+ */
+public final class PipelineTracer {
+
+    // A whole page load of a {@link BookSearch}, containing the stages below
+    public static final int STAGE_LOAD = 0;
+
+    // From opening the connection to the response headers: DNS, TCP, TLS and server time.
+    // Its bytes are the body bytes received, before they are decompressed.
+    public static final int STAGE_CONNECT = 1;
+
+    // Reading the whole response body into a String, only done by the DOM parser
+    public static final int STAGE_READ = 2;
+
+    // Parsing the books, the streaming parser also reads the body while parsing
+    public static final int STAGE_PARSE = 3;
+
+    // Comparing the new books with the books shown, in {@link BookAdapter#swapBooks}
+    public static final int STAGE_DIFF = 4;
+
+    // Binding a row of the list
+    public static final int STAGE_BIND = 5;
+
+    private static final String[] STAGE_NAMES = {"load", "connect", "read", "parse", "diff", "bind"};
+
+    private static final int STAGE_COUNT = STAGE_NAMES.length;
+
+    // Histogram bucket i counts the times from 2^i to 2^(i+1) microseconds, the last one all longer times
+    private static final int BUCKET_COUNT = 24;
+
+    private static volatile boolean sEnabled;
+
+    // Whether the stages are also systrace sections, only on API 18 and later
+    private static volatile boolean sSystrace;
+
+    // The lowest bit of the value returned by begin() is set when it opened a systrace section
+    private static final long SECTION_OPENED = 1L;
+
+    private static final Stage[] sStages = new Stage[STAGE_COUNT];
+
+    static {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            sStages[i] = new Stage(STAGE_NAMES[i]);
+        }
+    }
+
+    // Heap used when each stage began on the current thread, for the allocation estimate
+    private static final ThreadLocal<long[]> sHeapAtBegin = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[STAGE_COUNT];
+        }
+    };
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name PipelineTracer.
+     */
+    private PipelineTracer() {
+    }
+
+    // Returns true if the stages are currently timed
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Start or stop timing the stages. The metrics collected so far are kept.
+     *
+     * @param systrace is true to also mark the stages as systrace sections, see
+     *                 {@link #isSystraceSupported()}
+     */
+    public static void setEnabled(boolean enabled, boolean systrace) {
+        sSystrace = enabled && systrace;
+        sEnabled = enabled;
+    }
+
+    // Returns true if the device can show the stages in a systrace, from API 18
+    public static boolean isSystraceSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * Mark the beginning of a stage on the current thread
+     *
+     * @return the value to give to {@link #end}, 0 if the tracer is disabled
+     */
+    public static long begin(int stage) {
+        if (!sEnabled) {
+            return 0;
+        }
+        boolean section = sSystrace;
+        if (section) {
+            Trace.beginSection(STAGE_NAMES[stage]);
+        }
+        sHeapAtBegin.get()[stage] = usedHeap();
+        // The start time loses its lowest bit, which is far below the precision of the timer
+        long start = System.nanoTime() & ~SECTION_OPENED;
+        return section ? start | SECTION_OPENED : start;
+    }
+
+    // Returns true if the stage begun with the given value opened a systrace section
+    static boolean openedSection(long start) {
+        return (start & SECTION_OPENED) != 0;
+    }
+
+    /**
+     * Mark the end of a stage begun on the current thread
+     *
+     * @param start is the value returned by {@link #begin}
+     */
+    public static void end(int stage, long start) {
+        end(stage, start, 0, 0);
+    }
+
+    /**
+     * Mark the end of a stage begun on the current thread, with what it handled
+     *
+     * @param start is the value returned by {@link #begin}
+     * @param items is the number of books the stage handled
+     * @param bytes is the number of bytes the stage transferred
+     */
+    public static void end(int stage, long start, int items, long bytes) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - (start & ~SECTION_OPENED);
+        long allocated = usedHeap() - sHeapAtBegin.get()[stage];
+        // Close the section only if begin() opened one, whatever the setting is now
+        if (openedSection(start)) {
+            Trace.endSection();
+        }
+        // The heap shrinks when the garbage collector ran during the stage
+        sStages[stage].record(nanos, items, bytes, Math.max(0, allocated));
+    }
+
+    /**
+     * Add items or bytes handled outside of a timed stage, e.g. once a response body is read
+     */
+    public static void count(int stage, int items, long bytes) {
+        if (!sEnabled) {
+            return;
+        }
+        sStages[stage].items.addAndGet(items);
+        sStages[stage].bytes.addAndGet(bytes);
+    }
+
+    /**
+     * Forget the metrics collected so far
+     */
+    public static void reset() {
+        for (Stage stage : sStages) {
+            stage.reset();
+        }
+    }
+
+    /**
+     * Return the metrics of all the stages as a table, e.g. to show or share them
+     */
+    public static String dump() {
+        StringBuilder dump = new StringBuilder();
+        dump.append("Pipeline metrics, tracing ").append(sEnabled ? "enabled" : "disabled").append('\n');
+        dump.append(String.format(Locale.US, "%-8s %6s %8s %8s %8s %8s %8s %7s %10s %9s%n",
+                "stage", "count", "avg ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "items", "bytes", "alloc KB"));
+        for (Stage stage : sStages) {
+            stage.dump(dump);
+        }
+        return dump.toString();
+    }
+
+    // Getter method that returns the number of times a stage was timed
+    public static long getCount(int stage) {
+        return sStages[stage].count.get();
+    }
+
+    // Getter method that returns the total time spent in a stage, in nanoseconds
+    public static long getTotalNanos(int stage) {
+        return sStages[stage].totalNanos.get();
+    }
+
+    // Getter method that returns the number of items a stage handled
+    public static long getItems(int stage) {
+        return sStages[stage].items.get();
+    }
+
+    // Getter method that returns the number of bytes a stage transferred
+    public static long getBytes(int stage) {
+        return sStages[stage].bytes.get();
+    }
+
+    /**
+     * Return the time below which the given fraction of the times of a stage are, rounded
+     * up to its histogram bucket
+     *
+     * @param fraction is e.g. 0.9 for the 90th percentile
+     * @return the time in nanoseconds, or 0 if the stage was never timed
+     */
+    public static long getPercentileNanos(int stage, double fraction) {
+        return sStages[stage].percentileNanos(fraction);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The metrics of a stage, updated from any thread
+     */
+    private static final class Stage {
+
+        final String name;
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong items = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong allocatedBytes = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, int itemCount, long byteCount, long allocated) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            items.addAndGet(itemCount);
+            bytes.addAndGet(byteCount);
+            allocatedBytes.addAndGet(allocated);
+            long micros = Math.max(1, nanos / 1000);
+            int bucket = Math.min(BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+        }
+
+        void reset() {
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+            items.set(0);
+            bytes.set(0);
+            allocatedBytes.set(0);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        long percentileNanos(double fraction) {
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    // The upper bound of the bucket, but never more than the slowest time
+                    return Math.min((1L << (i + 1)) * 1000, maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        void dump(StringBuilder dump) {
+            long n = count.get();
+            dump.append(String.format(Locale.US, "%-8s %6d %8.2f %8.2f %8.2f %8.2f %8.2f %7d %10d %9d%n",
+                    name, n, n == 0 ? 0 : totalNanos.get() / 1e6 / n,
+                    percentileNanos(0.5) / 1e6, percentileNanos(0.9) / 1e6, percentileNanos(0.99) / 1e6,
+                    maxNanos.get() / 1e6, items.get(), bytes.get(), allocatedBytes.get() / 1024));
+        }
+    }
+}
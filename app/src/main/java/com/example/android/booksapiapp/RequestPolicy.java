@@ -0,0 +1,623 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how the GET requests of the app are made and retried.
+ * <p>
+ * The timeouts adapt to the latency recently observed on the current network type,
+ * failed requests are retried a bounded number of times with jittered exponential
+ * backoff, slow requests are hedged with a second identical request, and a circuit
+ * breaker stops hitting the server after repeated failures. Every attempt is reported
+ * to an optional {@link AttemptListener} so the policy can be tuned.
+ * <p>
+ * Every attempt first waits for a permit of the {@link RequestScheduler}, which keeps the
+ * requests under the quota of the API. A retry after 429 Too Many Requests or 503 Service
+ * Unavailable waits for the time of the Retry-After header instead of the backoff.
+ */
+public class RequestPolicy {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = RequestPolicy.class.getSimpleName();
+
+    // Network type used before the policy can read the active network, or without one
+    public static final String NETWORK_TYPE_UNKNOWN = "UNKNOWN";
+
+    // Bounds of the adaptive timeouts
+    private static final int MIN_TIMEOUT_MILLIS = 1500;
+    private static final int MAX_TIMEOUT_MILLIS = 20000;
+
+    // Timeout used on a network type without latency samples yet
+    private static final int INITIAL_TIMEOUT_MILLIS = 5000;
+
+    // Number of attempts made for a request, including the first one
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Backoff before the first retry, doubled for each following retry
+    private static final long BASE_BACKOFF_MILLIS = 250;
+    private static final long MAX_BACKOFF_MILLIS = 4000;
+
+    // Shortest delay after which a slow request is hedged
+    private static final long MIN_HEDGE_DELAY_MILLIS = 300;
+
+    // Number of consecutive failures that opens the circuit
+    private static final int FAILURE_THRESHOLD = 5;
+
+    // Time the circuit stays open before a trial request is let through
+    private static final long OPEN_CIRCUIT_MILLIS = 30000;
+
+    // What allowRequest() returns: a request while the circuit is open, or closed
+    private static final long REQUEST_REJECTED = -1;
+    private static final long REQUEST_ALLOWED = 0;
+
+    private static final RequestPolicy sDefault = new RequestPolicy(OPEN_CIRCUIT_MILLIS);
+
+    // Threads running the attempts, so a hedge can run next to the first attempt
+    private final ExecutorService attemptExecutor = Executors.newCachedThreadPool();
+
+    // Latency estimate of each network type
+    private final Map<String, LatencyEstimator> estimators = new HashMap<>();
+
+    private final Random random = new Random();
+
+    // Rate limit of the attempts, shared by every request
+    private final RequestScheduler scheduler = new RequestScheduler(
+            RequestScheduler.DEFAULT_PERMITS_PER_SECOND, RequestScheduler.DEFAULT_BURST);
+
+    // Tells the type of the active network when a request starts, null until watchNetwork()
+    private volatile ConnectivityManager connectivityManager;
+
+    private volatile boolean hedgingEnabled = true;
+
+    private volatile AttemptListener attemptListener;
+
+    // Time the circuit stays open before a trial request is let through
+    private final long openCircuitMillis;
+
+    // State of the circuit breaker, guarded by this
+    private int consecutiveFailures;
+    private long circuitOpenedAt;
+    private boolean trialInFlight;
+
+    // Number of the trial requests let through so far, the last one is the one in flight
+    private long trialCount;
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link RequestPolicy} with
+     *
+     * @param openCircuitMillis is the time the circuit stays open before a trial request
+     */
+    RequestPolicy(long openCircuitMillis) {
+        this.openCircuitMillis = openCircuitMillis;
+    }
+
+    /**
+     * Return the policy shared by the whole app
+     */
+    public static RequestPolicy getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Let the policy read the type of the active network, e.g. "WIFI" or "MOBILE/UMTS", each
+     * time a request starts. Latency is tracked separately for each network type. Can be
+     * called often, e.g. by every search and sync, only the first call is kept.
+     */
+    public void watchNetwork(Context context) {
+        if (connectivityManager == null) {
+            connectivityManager = (ConnectivityManager) context.getApplicationContext()
+                    .getSystemService(Context.CONNECTIVITY_SERVICE);
+        }
+    }
+
+    // Returns the type of the active network, or NETWORK_TYPE_UNKNOWN
+    private String currentNetworkType() {
+        ConnectivityManager manager = connectivityManager;
+        NetworkInfo networkInfo = manager == null ? null : manager.getActiveNetworkInfo();
+        if (networkInfo == null || networkInfo.getTypeName() == null) {
+            return NETWORK_TYPE_UNKNOWN;
+        }
+        return networkInfo.getTypeName() + "/" + networkInfo.getSubtypeName();
+    }
+
+    // Setter method that turns hedged requests on or off
+    public void setHedgingEnabled(boolean enabled) {
+        hedgingEnabled = enabled;
+    }
+
+    // Getter method that returns the rate limit of the attempts
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Setter method for the listener told about every attempt
+    public void setAttemptListener(AttemptListener listener) {
+        attemptListener = listener;
+    }
+
+    /**
+     * Make a GET request to the given URL following the policy.
+     *
+     * @param client is the client that makes each attempt
+     * @param url    is the URL to request
+     * @param cached is the cached response for the URL, or null
+     * @return the response of the first successful attempt, which must be closed by the caller
+     * @throws IOException if the circuit is open or every attempt failed
+     */
+    public BookHttpClient.Response execute(BookHttpClient client, URL url, ResponseCache.Entry cached)
+            throws IOException {
+        return execute(client, url, cached, null);
+    }
+
+    /**
+     * Make a GET request to the given URL following the policy, until it succeeds,
+     * fails or is cancelled.
+     *
+     * @param client      is the client that makes each attempt
+     * @param url         is the URL to request
+     * @param cached      is the cached response for the URL, or null
+     * @param cancelToken is the token used to cancel the request, or null
+     * @return the response of the first successful attempt, which must be closed by the caller
+     * @throws IOException if the circuit is open or every attempt failed, or an
+     *                     {@link InterruptedIOException} if the request was cancelled
+     */
+    public BookHttpClient.Response execute(BookHttpClient client, URL url, ResponseCache.Entry cached,
+                                           CancelToken cancelToken) throws IOException {
+        return execute(client, url, cached, cancelToken, RequestScheduler.PRIORITY_FOREGROUND);
+    }
+
+    /**
+     * Make a GET request to the given URL following the policy, until it succeeds,
+     * fails or is cancelled, with its attempts queued at the given priority.
+     *
+     * @param client      is the client that makes each attempt
+     * @param url         is the URL to request
+     * @param cached      is the cached response for the URL, or null
+     * @param cancelToken is the token used to cancel the request, or null
+     * @param priority    is one of the PRIORITY constants of {@link RequestScheduler}
+     * @return the response of the first successful attempt, which must be closed by the caller
+     * @throws IOException if the circuit is open, every attempt failed or the request
+     *                     waited too long for a permit, or an {@link InterruptedIOException}
+     *                     if the request was cancelled
+     */
+    public BookHttpClient.Response execute(BookHttpClient client, URL url, ResponseCache.Entry cached,
+                                           CancelToken cancelToken, int priority) throws IOException {
+        long trial = allowRequest();
+        if (trial == REQUEST_REJECTED) {
+            throw new IOException("Circuit open, not requesting " + url);
+        }
+        try {
+            return executeAttempts(client, url, cached, cancelToken, priority);
+        } finally {
+            // A trial that was cancelled or gave up without an answer of the server must
+            // not keep the circuit open, the next request is the trial instead
+            if (trial != REQUEST_ALLOWED) {
+                abandonTrial(trial);
+            }
+        }
+    }
+
+    /**
+     * Make the attempts of a request let through by the circuit breaker
+     */
+    private BookHttpClient.Response executeAttempts(BookHttpClient client, URL url, ResponseCache.Entry cached,
+                                                    CancelToken cancelToken, int priority) throws IOException {
+        // The timeouts of every attempt follow the network the request starts on
+        String networkType = currentNetworkType();
+        IOException lastError = null;
+        boolean pausedByServer = false;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            // After a Retry-After header the scheduler already holds the attempt long enough
+            if (attempt > 1 && !pausedByServer) {
+                sleep(backoffMillis(attempt - 1));
+            }
+            if (cancelToken != null && cancelToken.isCancelled()) {
+                throw new InterruptedIOException("Request to " + url + " was cancelled");
+            }
+            scheduler.acquire(priority, cancelToken);
+            try {
+                BookHttpClient.Response response = hedgedAttempt(client, url, cached, attempt, cancelToken, networkType);
+                int responseCode = response.getResponseCode();
+                pausedByServer = throttle(response);
+                if (isRetryable(responseCode) && attempt < MAX_ATTEMPTS) {
+                    response.close();
+                    // Too many requests says we are over the quota, not that the server is failing
+                    if (responseCode != 429) {
+                        recordFailure();
+                    }
+                    continue;
+                }
+                if (responseCode >= 500) {
+                    recordFailure();
+                } else {
+                    recordSuccess();
+                }
+                return response;
+            } catch (IOException e) {
+                pausedByServer = false;
+
+                // A cancelled request fails because its connection was disconnected,
+                // which says nothing about the server
+                if (cancelToken != null && cancelToken.isCancelled()) {
+                    throw new InterruptedIOException("Request to " + url + " was cancelled");
+                }
+
+                // An interrupted request is not retried, but a timed out one is
+                if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+                    throw e;
+                }
+                Log.e(LOG_TAG, "Attempt " + attempt + " for " + url + " failed.", e);
+                recordFailure();
+                lastError = e;
+            }
+        }
+        throw lastError != null ? lastError : new IOException("No successful attempt for " + url);
+    }
+
+    /**
+     * Return the read timeout currently used on the given network type
+     */
+    public int getReadTimeoutMillis(String type) {
+        return estimatorFor(type).timeoutMillis();
+    }
+
+    /**
+     * Tell the scheduler how the server answered, so it slows down when the server asks
+     *
+     * @return true if the server asked to wait before the next request
+     */
+    private boolean throttle(BookHttpClient.Response response) {
+        int responseCode = response.getResponseCode();
+        if (responseCode == 429) {
+            long retryAfter = RequestScheduler.parseRetryAfter(response.getRetryAfter(), System.currentTimeMillis());
+            scheduler.onThrottled(retryAfter);
+            return true;
+        }
+        if (responseCode == 503) {
+            long retryAfter = RequestScheduler.parseRetryAfter(response.getRetryAfter(), System.currentTimeMillis());
+            if (retryAfter >= 0) {
+                scheduler.pauseFor(retryAfter);
+                return true;
+            }
+            return false;
+        }
+        if (responseCode < 500) {
+            scheduler.onAccepted();
+        }
+        return false;
+    }
+
+    // Returns true if the server should be asked again after this response code
+    private static boolean isRetryable(int responseCode) {
+        return responseCode == 429 || responseCode >= 500;
+    }
+
+    /**
+     * Make one attempt, and a second identical one if the first is slower than usual.
+     * The response that arrives first is returned and the other one is closed.
+     */
+    private BookHttpClient.Response hedgedAttempt(final BookHttpClient client, final URL url,
+                                                  final ResponseCache.Entry cached, final int attempt,
+                                                  final CancelToken cancelToken, String networkType)
+            throws IOException {
+        final LatencyEstimator estimator = estimatorFor(networkType);
+        final int timeout = estimator.timeoutMillis();
+
+        CompletionService<BookHttpClient.Response> completion = new ExecutorCompletionService<>(attemptExecutor);
+        Future<BookHttpClient.Response> first = completion.submit(
+                new AttemptCall(client, url, cached, attempt, false, timeout, estimator, cancelToken));
+        Future<BookHttpClient.Response> hedge = null;
+        try {
+            Future<BookHttpClient.Response> done = completion.poll(estimator.hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            // A hedge is only sent when it does not hold back another request
+            if (done == null && hedgingEnabled && scheduler.tryAcquire()) {
+                hedge = completion.submit(new AttemptCall(client, url, cached, attempt, true, timeout, estimator, cancelToken));
+            }
+            if (done == null) {
+                done = completion.take();
+            }
+            try {
+                BookHttpClient.Response response = done.get();
+                abortWhenDone(done == first ? hedge : first);
+                return response;
+            } catch (ExecutionException e) {
+                // The faster attempt failed, wait for the other one if there is one
+                Future<BookHttpClient.Response> other = done == first ? hedge : first;
+                if (other == null) {
+                    throw asIOException(e);
+                }
+                try {
+                    return other.get();
+                } catch (ExecutionException otherError) {
+                    throw asIOException(otherError);
+                }
+            }
+        } catch (InterruptedException e) {
+            first.cancel(true);
+            abortWhenDone(first);
+            abortWhenDone(hedge);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request to " + url + " was interrupted");
+        }
+    }
+
+    /**
+     * Abort the response of the given attempt once it is done, on a background thread.
+     * Its body is not downloaded, which would cost the traffic the hedge saved.
+     */
+    private void abortWhenDone(final Future<BookHttpClient.Response> future) {
+        if (future == null) {
+            return;
+        }
+        attemptExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.get().abort();
+                } catch (Exception e) {
+                    // The losing attempt failed or was cancelled, nothing to abort
+                }
+            }
+        });
+    }
+
+    private static IOException asIOException(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Return the backoff before the given retry: half of an exponentially growing bound
+     * plus a random time up to the other half ("equal jitter"), so retrying clients don't
+     * hit the server together but still always wait a little.
+     */
+    private long backoffMillis(int retry) {
+        long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (retry - 1));
+        synchronized (random) {
+            return bound / 2 + (long) (random.nextDouble() * bound / 2);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    private LatencyEstimator estimatorFor(String type) {
+        synchronized (estimators) {
+            LatencyEstimator estimator = estimators.get(type);
+            if (estimator == null) {
+                estimator = new LatencyEstimator();
+                estimators.put(type, estimator);
+            }
+            return estimator;
+        }
+    }
+
+    /**
+     * Return REQUEST_REJECTED while the circuit is open. Once it has been open long enough a
+     * single trial request is let through, and its outcome closes or reopens the circuit.
+     *
+     * @return REQUEST_ALLOWED while the circuit is closed, or the number of the trial request
+     */
+    private synchronized long allowRequest() {
+        if (consecutiveFailures < FAILURE_THRESHOLD) {
+            return REQUEST_ALLOWED;
+        }
+        if (System.currentTimeMillis() - circuitOpenedAt < openCircuitMillis || trialInFlight) {
+            return REQUEST_REJECTED;
+        }
+        trialInFlight = true;
+        return ++trialCount;
+    }
+
+    // Let the next request be the trial if the given one ended without recording an outcome
+    private synchronized void abandonTrial(long trial) {
+        if (trialInFlight && trial == trialCount) {
+            trialInFlight = false;
+        }
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            circuitOpenedAt = System.currentTimeMillis();
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Makes a single attempt and reports its outcome
+     */
+    private final class AttemptCall implements Callable<BookHttpClient.Response> {
+
+        private final BookHttpClient client;
+        private final URL url;
+        private final ResponseCache.Entry cached;
+        private final int attempt;
+        private final boolean hedged;
+        private final int timeoutMillis;
+        private final LatencyEstimator estimator;
+        private final CancelToken cancelToken;
+
+        AttemptCall(BookHttpClient client, URL url, ResponseCache.Entry cached, int attempt,
+                    boolean hedged, int timeoutMillis, LatencyEstimator estimator, CancelToken cancelToken) {
+            this.client = client;
+            this.url = url;
+            this.cached = cached;
+            this.attempt = attempt;
+            this.hedged = hedged;
+            this.timeoutMillis = timeoutMillis;
+            this.estimator = estimator;
+            this.cancelToken = cancelToken;
+        }
+
+        @Override
+        public BookHttpClient.Response call() throws IOException {
+            long start = System.currentTimeMillis();
+            try {
+                BookHttpClient.Response response = client.get(url, cached, timeoutMillis, timeoutMillis, cancelToken);
+                long latency = System.currentTimeMillis() - start;
+                estimator.addSample(latency);
+                report(new AttemptOutcome(url, attempt, hedged, timeoutMillis, latency,
+                        response.getResponseCode(), null));
+                return response;
+            } catch (IOException e) {
+                report(new AttemptOutcome(url, attempt, hedged, timeoutMillis,
+                        System.currentTimeMillis() - start, -1, e));
+                throw e;
+            }
+        }
+
+        private void report(AttemptOutcome outcome) {
+            AttemptListener listener = attemptListener;
+            if (listener != null) {
+                listener.onAttempt(outcome);
+            }
+        }
+    }
+
+    /**
+     * Smoothed latency and latency deviation of a network type, estimated like the
+     * TCP retransmission timeout.
+     */
+    private static final class LatencyEstimator {
+
+        private double smoothedMillis = -1;
+        private double deviationMillis;
+
+        synchronized void addSample(long latencyMillis) {
+            if (smoothedMillis < 0) {
+                smoothedMillis = latencyMillis;
+                deviationMillis = latencyMillis / 2.0;
+            } else {
+                deviationMillis = 0.75 * deviationMillis + 0.25 * Math.abs(smoothedMillis - latencyMillis);
+                smoothedMillis = 0.875 * smoothedMillis + 0.125 * latencyMillis;
+            }
+        }
+
+        synchronized int timeoutMillis() {
+            if (smoothedMillis < 0) {
+                return INITIAL_TIMEOUT_MILLIS;
+            }
+            long timeout = Math.round(smoothedMillis + 4 * deviationMillis);
+            return (int) Math.max(MIN_TIMEOUT_MILLIS, Math.min(MAX_TIMEOUT_MILLIS, timeout));
+        }
+
+        synchronized long hedgeDelayMillis() {
+            if (smoothedMillis < 0) {
+                return INITIAL_TIMEOUT_MILLIS / 2;
+            }
+            return Math.max(MIN_HEDGE_DELAY_MILLIS, Math.round(smoothedMillis + 2 * deviationMillis));
+        }
+    }
+
+    /**
+     * Called for every attempt made by the policy
+     */
+    public interface AttemptListener {
+        void onAttempt(AttemptOutcome outcome);
+    }
+
+    /**
+     * The outcome of a single attempt
+     */
+    public static final class AttemptOutcome {
+
+        private final URL url;
+        private final int attempt;
+        private final boolean hedged;
+        private final int timeoutMillis;
+        private final long latencyMillis;
+        private final int responseCode;
+        private final IOException error;
+
+        AttemptOutcome(URL url, int attempt, boolean hedged, int timeoutMillis, long latencyMillis,
+                       int responseCode, IOException error) {
+            this.url = url;
+            this.attempt = attempt;
+            this.hedged = hedged;
+            this.timeoutMillis = timeoutMillis;
+            this.latencyMillis = latencyMillis;
+            this.responseCode = responseCode;
+            this.error = error;
+        }
+
+        // Getter method that returns the requested URL
+        public URL getUrl() {
+            return url;
+        }
+
+        // Getter method that returns the number of the attempt, starting at 1
+        public int getAttempt() {
+            return attempt;
+        }
+
+        // Returns true if this attempt was the hedge of a slow attempt
+        public boolean isHedged() {
+            return hedged;
+        }
+
+        // Getter method that returns the timeout used by the attempt
+        public int getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        // Getter method that returns the time until the response headers or the failure
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        // Getter method that returns the HTTP response code, or -1 if the attempt failed
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        // Getter method that returns the error of a failed attempt, or null
+        public IOException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Attempt " + attempt + (hedged ? " (hedge)" : "") + " " + url + ": code=" + responseCode
+                    + ", latency=" + latencyMillis + "ms, timeout=" + timeoutMillis + "ms"
+                    + (error != null ? ", error=" + error : "");
+        }
+    }
+}
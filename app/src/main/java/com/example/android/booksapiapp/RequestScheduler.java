@@ -0,0 +1,361 @@
+package com.example.android.booksapiapp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/**
+ * Keeps the requests sent to the Books API under its quota.
+ * <p>
+ * Every attempt takes a permit from a token bucket, refilled at a given rate up to a given
+ * burst. The requests waiting for a permit are queued by priority, so the search the user
+ * is looking at goes before the prefetch of the next pages, which goes before the
+ * background refresh of the cache. A request that waited longer than its priority allows
+ * is dropped instead of being sent late, when its result is no longer wanted.
+ * <p>
+ * When the server answers 429 Too Many Requests, no permit is given until the time of its
+ * Retry-After header, and the rate is halved. Each accepted request then brings the rate
+ * back a little towards its ceiling, so the requests stay just under the quota.
+ */
+public class RequestScheduler {
+
+    // Priorities of the requests, the lowest number first
+    public static final int PRIORITY_FOREGROUND = 0;
+    public static final int PRIORITY_PREFETCH = 1;
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    // Default rate and burst, under the per-user quota of the Books API
+    public static final double DEFAULT_PERMITS_PER_SECOND = 5;
+    public static final int DEFAULT_BURST = 10;
+
+    // Longest time a request of each priority waits for a permit before it is dropped
+    private static final long[] DEFAULT_MAX_WAIT_MILLIS = {15000, 5000, 60000};
+
+    // Pause after a 429 response without a usable Retry-After header
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+
+    // Longest pause accepted from a Retry-After header
+    private static final long MAX_RETRY_AFTER_MILLIS = 5 * 60 * 1000;
+
+    // The rate is never lowered under this part of its ceiling
+    private static final int MIN_RATE_DIVISOR = 8;
+
+    // Number of accepted requests that bring a halved rate back to its ceiling
+    private static final int RECOVERY_RESPONSES = 20;
+
+    // Longest wait between two checks of a cancelled request
+    private static final long MAX_WAIT_SLICE_MILLIS = 250;
+
+    // Formats of an HTTP date, the preferred one first
+    private static final String[] HTTP_DATE_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz",
+            "EEEE, dd-MMM-yy HH:mm:ss zzz",
+            "EEE MMM d HH:mm:ss yyyy"
+    };
+
+    // Requests waiting for a permit, by priority and then in arrival order, guarded by this
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+
+    private final long[] maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS.clone();
+
+    // State of the token bucket, guarded by this
+    private double ceilingPerSecond;
+    private double permitsPerSecond;
+    private int burst;
+    private double tokens;
+    private long refilledAtNanos = System.nanoTime();
+
+    // No permit is given before this time, set by a Retry-After header, guarded by this
+    private long pausedUntilNanos = refilledAtNanos;
+
+    private long nextSequence;
+
+    // Metrics to check the scheduler in the field, guarded by this
+    private long grantedCount;
+    private long droppedCount;
+    private long throttledCount;
+    private long totalWaitMillis;
+    private long maxWaitMillisSeen;
+    private int maxQueueLength;
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link RequestScheduler} with
+     *
+     * @param permitsPerSecond is the highest rate of the requests
+     * @param burst            is the number of requests that may be sent at once after a quiet time
+     */
+    public RequestScheduler(double permitsPerSecond, int burst) {
+        setRate(permitsPerSecond, burst);
+        tokens = burst;
+    }
+
+    /**
+     * Set the highest rate of the requests and the number of requests that may be sent at
+     * once, e.g. from the quota of the API key in use
+     */
+    public synchronized void setRate(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Invalid rate " + permitsPerSecond + "/s, burst " + burst);
+        }
+        refill(System.nanoTime());
+        ceilingPerSecond = permitsPerSecond;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        tokens = Math.min(tokens, burst);
+        notifyAll();
+    }
+
+    /**
+     * Set the longest time a request of the given priority waits for a permit
+     */
+    synchronized void setMaxWaitMillis(int priority, long millis) {
+        maxWaitMillis[priority] = millis;
+        notifyAll();
+    }
+
+    /**
+     * Wait for a permit to send one request. The requests of a higher priority get their
+     * permit first, and requests of the same priority get it in the order they asked.
+     *
+     * @param priority    is one of the PRIORITY constants
+     * @param cancelToken is the token used to cancel the request, or null
+     * @throws IOException if the request waited too long and was dropped, or an
+     *                     {@link InterruptedIOException} if it was cancelled
+     */
+    public void acquire(int priority, CancelToken cancelToken) throws IOException {
+        Runnable wakeUp = null;
+        if (cancelToken != null) {
+            wakeUp = new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (RequestScheduler.this) {
+                        RequestScheduler.this.notifyAll();
+                    }
+                }
+            };
+            cancelToken.addListener(wakeUp);
+        }
+        try {
+            awaitPermit(priority, cancelToken);
+        } finally {
+            if (wakeUp != null) {
+                cancelToken.removeListener(wakeUp);
+            }
+        }
+    }
+
+    private synchronized void awaitPermit(int priority, CancelToken cancelToken) throws IOException {
+        long start = System.nanoTime();
+        Waiter waiter = new Waiter(priority, nextSequence++);
+        queue.add(waiter);
+        maxQueueLength = Math.max(maxQueueLength, queue.size());
+        try {
+            while (true) {
+                if (cancelToken != null && cancelToken.isCancelled()) {
+                    throw new InterruptedIOException("Cancelled while waiting for a permit");
+                }
+                long now = System.nanoTime();
+                long deadline = start + maxWaitMillis[priority] * 1000000L;
+                long waitNanos = deadline - now;
+                if (queue.peek() == waiter) {
+                    long permitNanos = nanosUntilPermit(now);
+                    if (permitNanos <= 0) {
+                        tokens -= 1;
+                        grantedCount++;
+                        long waited = (now - start) / 1000000L;
+                        totalWaitMillis += waited;
+                        maxWaitMillisSeen = Math.max(maxWaitMillisSeen, waited);
+                        return;
+                    }
+                    // Drop the request now if it cannot get a permit in time, e.g. during a long pause
+                    if (permitNanos > waitNanos) {
+                        waitNanos = 0;
+                    } else {
+                        waitNanos = permitNanos;
+                    }
+                }
+                if (waitNanos <= 0) {
+                    droppedCount++;
+                    throw new IOException("Dropped a request that waited " + (now - start) / 1000000L
+                            + "ms for a permit");
+                }
+                wait(Math.max(1, Math.min(MAX_WAIT_SLICE_MILLIS, waitNanos / 1000000L)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a permit");
+        } finally {
+            // The next request in the queue may now take its permit
+            queue.remove(waiter);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Take a permit if one is available right away and no request is waiting, e.g. for a
+     * hedged request that is only worth sending when it costs nothing
+     *
+     * @return true if a permit was taken
+     */
+    public synchronized boolean tryAcquire() {
+        if (!queue.isEmpty() || nanosUntilPermit(System.nanoTime()) > 0) {
+            return false;
+        }
+        tokens -= 1;
+        grantedCount++;
+        return true;
+    }
+
+    /**
+     * Tell the scheduler the server answered 429 Too Many Requests: no permit is given
+     * until the given time has passed, and the rate is halved
+     *
+     * @param retryAfterMillis is the time given by the Retry-After header, or -1 if there was none
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        throttledCount++;
+        pauseFor(retryAfterMillis >= 0 ? retryAfterMillis : DEFAULT_RETRY_AFTER_MILLIS);
+        refill(System.nanoTime());
+        permitsPerSecond = Math.max(ceilingPerSecond / MIN_RATE_DIVISOR, permitsPerSecond / 2);
+        tokens = Math.min(tokens, 0);
+    }
+
+    /**
+     * Tell the scheduler the server accepted a request, which brings the rate back
+     * towards its ceiling
+     */
+    public synchronized void onAccepted() {
+        if (permitsPerSecond < ceilingPerSecond) {
+            refill(System.nanoTime());
+            permitsPerSecond = Math.min(ceilingPerSecond, permitsPerSecond + ceilingPerSecond / RECOVERY_RESPONSES);
+        }
+    }
+
+    /**
+     * Give no permit until the given time has passed, e.g. after a 503 Service Unavailable
+     * with a Retry-After header
+     */
+    public synchronized void pauseFor(long millis) {
+        long until = System.nanoTime() + Math.min(millis, MAX_RETRY_AFTER_MILLIS) * 1000000L;
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Return the time given by a Retry-After header, either a number of seconds or an
+     * HTTP date
+     *
+     * @param value     is the value of the header, or null
+     * @param nowMillis is the current time, to which an HTTP date is compared
+     * @return the time to wait in milliseconds, or -1 if the value is missing or invalid
+     */
+    public static long parseRetryAfter(String value, long nowMillis) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : Math.min(seconds * 1000, MAX_RETRY_AFTER_MILLIS);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date
+        }
+        for (String pattern : HTTP_DATE_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date date = format.parse(value);
+                return Math.max(0, Math.min(date.getTime() - nowMillis, MAX_RETRY_AFTER_MILLIS));
+            } catch (ParseException e) {
+                // Try the next format
+            }
+        }
+        return -1;
+    }
+
+    // Getter method that returns the current rate, lowered after a 429 response
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    // Getter method that returns the number of permits given
+    public synchronized long getGrantedCount() {
+        return grantedCount;
+    }
+
+    // Getter method that returns the number of requests dropped after waiting too long
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    // Getter method that returns the number of 429 responses
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    // Getter method that returns the average time a request waited for its permit
+    public synchronized long getAverageWaitMillis() {
+        return grantedCount == 0 ? 0 : totalWaitMillis / grantedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "RequestScheduler[rate=%.1f/%.1f per s, burst=%d, granted=%d, dropped=%d,"
+                        + " throttled=%d, avgWaitMillis=%d, maxWaitMillis=%d, maxQueue=%d]",
+                permitsPerSecond, ceilingPerSecond, burst, grantedCount, droppedCount, throttledCount,
+                getAverageWaitMillis(), maxWaitMillisSeen, maxQueueLength);
+    }
+
+    /**
+     * Return the time until a permit can be given, 0 or less if one can be given now
+     */
+    private long nanosUntilPermit(long now) {
+        refill(now);
+        long pauseNanos = pausedUntilNanos - now;
+        long tokenNanos = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerSecond * 1e9);
+        return Math.max(pauseNanos, tokenNanos);
+    }
+
+    /**
+     * Add the tokens earned since the last refill, up to the burst
+     */
+    private void refill(long now) {
+        long elapsed = now - refilledAtNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed / 1e9 * permitsPerSecond);
+            refilledAtNanos = now;
+        }
+    }
+
+    /**
+     * A request waiting for its permit
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+
+        private final int priority;
+
+        private final long sequence;
+
+        Waiter(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
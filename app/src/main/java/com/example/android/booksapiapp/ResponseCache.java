@@ -0,0 +1,410 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache for Google Books responses, keyed by the normalized request URL.
+ * <p>
+ * Response bodies are kept in an in-memory LRU in front of a disk store under the
+ * app cache directory. Both tiers have a byte budget, and entries older than the
+ * TTL are still served but reported as stale so the caller can revalidate them.
+ * <p>
+ * The shared cache sizes its in-memory tier with the {@link MemoryBudget}, which trims it
+ * under memory pressure. Every entry is also on disk, so nothing trimmed is lost.
+ */
+public class ResponseCache implements MemoryBudget.Tier {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ResponseCache.class.getSimpleName();
+
+    // Name of the directory inside the app cache directory that holds the responses
+    private static final String CACHE_DIR_NAME = "book_responses";
+
+    // Version of the on-disk entry format, entries with another version are ignored
+    private static final int DISK_FORMAT_VERSION = 2;
+
+    // Default time after which a cached response is considered stale
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    // Default byte budget of the disk tier
+    public static final long DEFAULT_DISK_BYTES = 10 * 1024 * 1024;
+
+    private static ResponseCache sInstance;
+
+    // Directory that holds one file per cached response
+    private final File cacheDir;
+
+    // Byte budget of the disk tier
+    private final long diskBytes;
+
+    // In-memory tier, sized by the length of the response bodies
+    private final LruCache<String, Entry> memoryCache;
+
+    // Time after which a cached response is considered stale
+    private volatile long ttlMillis;
+
+    // Counters used to check the hit ratio in the field
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link ResponseCache} with
+     *
+     * @param cacheDir    is the directory of the disk tier
+     * @param ttlMillis   is the time after which an entry is stale
+     * @param memoryBytes is the byte budget of the in-memory tier
+     * @param diskBytes   is the byte budget of the disk tier
+     */
+    public ResponseCache(File cacheDir, long ttlMillis, int memoryBytes, long diskBytes) {
+        this.cacheDir = cacheDir;
+        this.ttlMillis = ttlMillis;
+        this.diskBytes = diskBytes;
+        memoryCache = new LruCache<String, Entry>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return entry.body.length;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+                if (evicted) {
+                    evictionCount.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    /**
+     * Return the cache shared by the whole app, created with the default TTL and disk budget,
+     * and the memory budget of the device
+     *
+     * @param context is any context, only the application context is kept
+     */
+    public static synchronized ResponseCache getInstance(Context context) {
+        if (sInstance == null) {
+            File dir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME);
+            MemoryBudget budget = MemoryBudget.getInstance(context);
+            sInstance = new ResponseCache(dir, DEFAULT_TTL_MILLIS, budget.getResponsesBytes(), DEFAULT_DISK_BYTES);
+            budget.register("responses", sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Normalize a request URL so equivalent requests share a cache entry: the scheme and
+     * host are lower-cased and the query parameters are sorted.
+     */
+    public static String normalizeUrl(String url) {
+        try {
+            URI uri = new URI(url.trim());
+            String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.US);
+            String host = uri.getHost() == null ? null : uri.getHost().toLowerCase(Locale.US);
+            String query = uri.getRawQuery();
+            if (query != null) {
+                String[] params = query.split("&");
+                Arrays.sort(params);
+                StringBuilder sorted = new StringBuilder();
+                for (String param : params) {
+                    if (param.isEmpty()) {
+                        continue;
+                    }
+                    if (sorted.length() > 0) {
+                        sorted.append('&');
+                    }
+                    sorted.append(param);
+                }
+                query = sorted.toString();
+            }
+            StringBuilder normalized = new StringBuilder();
+            if (scheme != null) {
+                normalized.append(scheme).append("://");
+            }
+            if (host != null) {
+                normalized.append(host);
+            }
+            if (uri.getPort() != -1) {
+                normalized.append(':').append(uri.getPort());
+            }
+            if (uri.getRawPath() != null) {
+                normalized.append(uri.getRawPath());
+            }
+            if (query != null && !query.isEmpty()) {
+                normalized.append('?').append(query);
+            }
+            return normalized.toString();
+        } catch (URISyntaxException e) {
+            // Not a valid URI, use it as it is
+            return url.trim();
+        }
+    }
+
+    /**
+     * Return the cached response for the given URL, looking in memory first and then on
+     * disk. Entries found on disk are promoted to the in-memory tier.
+     * This may touch the disk, so it must not be called on the main thread.
+     *
+     * @return the entry or null if the URL is not cached
+     */
+    public Entry get(String url) {
+        Entry entry = peek(url);
+        if (entry == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Like {@link #get(String)}, but without counting the lookup as a hit or a miss.
+     * Used to find the validators of a response that is about to be revalidated.
+     */
+    public Entry peek(String url) {
+        String key = normalizeUrl(url);
+        Entry entry = memoryCache.get(key);
+        if (entry == null) {
+            entry = readFromDisk(key);
+            if (entry != null) {
+                memoryCache.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Store the response body for the given URL in both tiers
+     */
+    public void put(String url, byte[] body) {
+        put(url, body, null, null);
+    }
+
+    /**
+     * Store the response body for the given URL in both tiers, together with the
+     * validators used to revalidate it later.
+     *
+     * @param etag         is the ETag header of the response, or null
+     * @param lastModified is the Last-Modified header of the response, or null
+     */
+    public void put(String url, byte[] body, String etag, String lastModified) {
+        String key = normalizeUrl(url);
+        Entry entry = new Entry(body, System.currentTimeMillis(), etag, lastModified);
+        memoryCache.put(key, entry);
+        writeToDisk(key, entry);
+    }
+
+    /**
+     * Record that the server answered 304 Not Modified for the cached entry: the entry
+     * is fresh again, and the request counts as a cache hit.
+     */
+    public void markNotModified(String url, Entry entry) {
+        put(url, entry.body, entry.etag, entry.lastModified);
+        hitCount.incrementAndGet();
+    }
+
+    /**
+     * Return true if the entry is older than the TTL and should be revalidated
+     */
+    public boolean isStale(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt > ttlMillis;
+    }
+
+    // Setter method for the time after which an entry is stale
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Getter method that returns the number of lookups served from the cache
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    // Getter method that returns the number of lookups not found in the cache
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    // Getter method that returns the number of entries evicted from either tier
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    // Getter method that returns the bytes of the response bodies held in memory
+    @Override
+    public long getResidentBytes() {
+        return memoryCache.size();
+    }
+
+    // Getter method that returns the byte budget of the in-memory tier
+    @Override
+    public long getMaxBytes() {
+        return memoryCache.maxSize();
+    }
+
+    @Override
+    public void trimToBytes(long bytes) {
+        // The entries are all on disk, only their copies in memory are dropped
+        MemoryBudget.trim(memoryCache, bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache[hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * Return the file that holds the entry with the given key
+     */
+    private File fileFor(String key) {
+        return new File(cacheDir, fileNameFor(key));
+    }
+
+    /**
+     * Return a file name that is safe to use on disk for the given cache key
+     */
+    static String fileNameFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(Charset.forName("UTF-8")));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format(Locale.US, "%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1, fall back to the hash code anyway
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private synchronized Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            // Ignore entries written with another format, or colliding with another key
+            if (in.readInt() != DISK_FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            long fetchedAt = in.readLong();
+            String etag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+
+            // Touch the file so the disk tier evicts the least recently used entries
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(body, fetchedAt, etag, lastModified);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cached response.", e);
+            return null;
+        } finally {
+            BookUtils.closeQuietly(in);
+        }
+    }
+
+    private synchronized void writeToDisk(String key, Entry entry) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create the cache directory " + cacheDir);
+            return;
+        }
+        File file = fileFor(key);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(DISK_FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeLong(entry.fetchedAt);
+            out.writeUTF(entry.etag == null ? "" : entry.etag);
+            out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the cached response.", e);
+            file.delete();
+        } finally {
+            BookUtils.closeQuietly(out);
+        }
+        trimDisk();
+    }
+
+    // Helper method that turns the empty strings written for missing headers back to null
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Delete the least recently used files until the disk tier fits its byte budget
+     */
+    private void trimDisk() {
+        evictionCount.addAndGet(DiskCaches.trim(cacheDir, diskBytes, Integer.MAX_VALUE));
+    }
+
+    /**
+     * A cached response body, the time it was fetched and its validators
+     */
+    public static final class Entry {
+
+        private final byte[] body;
+
+        private final long fetchedAt;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        Entry(byte[] body, long fetchedAt, String etag, String lastModified) {
+            this.body = body;
+            this.fetchedAt = fetchedAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        // Getter method that returns the raw response body
+        public byte[] getBody() {
+            return body;
+        }
+
+        // Getter method that returns the time the response was fetched
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+
+        // Getter method that returns the ETag of the response, or null
+        public String getEtag() {
+            return etag;
+        }
+
+        // Getter method that returns the Last-Modified date of the response, or null
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+}
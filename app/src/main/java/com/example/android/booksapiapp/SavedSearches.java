@@ -0,0 +1,128 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The searches the user saved, and the last books found for each of them.
+ * <p>
+ * The search texts are kept in the shared preferences. The books of each search are kept
+ * in a {@link BookCodec} file, written by the background sync and memory-mapped when the
+ * search is opened, so they can be shown before anything is fetched.
+ */
+public final class SavedSearches {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = SavedSearches.class.getSimpleName();
+
+    // Name of the preferences file and of the key of the search texts
+    private static final String PREFS_NAME = "saved_searches";
+    private static final String KEY_QUERIES = "queries";
+
+    // Directory of the result files, in the files directory of the app
+    private static final String RESULTS_DIR_NAME = "saved_searches";
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name SavedSearches.
+     */
+    private SavedSearches() {
+    }
+
+    /**
+     * Return the saved search texts, in alphabetical order
+     */
+    public static List<String> getAll(Context context) {
+        List<String> queries = new ArrayList<>(prefs(context).getStringSet(KEY_QUERIES, Collections.<String>emptySet()));
+        Collections.sort(queries, String.CASE_INSENSITIVE_ORDER);
+        return queries;
+    }
+
+    // Returns true if the given search text is saved
+    public static boolean contains(Context context, String query) {
+        return query != null && prefs(context).getStringSet(KEY_QUERIES, Collections.<String>emptySet())
+                .contains(normalize(query));
+    }
+
+    /**
+     * Save the given search text, so its books are refreshed in the background
+     */
+    public static synchronized void add(Context context, String query) {
+        // The returned set must not be changed, so change a copy
+        Set<String> queries = new HashSet<>(prefs(context).getStringSet(KEY_QUERIES, Collections.<String>emptySet()));
+        if (queries.add(normalize(query))) {
+            prefs(context).edit().putStringSet(KEY_QUERIES, queries).apply();
+        }
+    }
+
+    /**
+     * Forget the given search text and its books
+     */
+    public static synchronized void remove(Context context, String query) {
+        Set<String> queries = new HashSet<>(prefs(context).getStringSet(KEY_QUERIES, Collections.<String>emptySet()));
+        if (queries.remove(normalize(query))) {
+            prefs(context).edit().putStringSet(KEY_QUERIES, queries).apply();
+        }
+        resultsFile(context, query).delete();
+    }
+
+    /**
+     * Return the books last found for the given search, memory-mapped so it is fast enough
+     * for the main thread
+     *
+     * @return the books, or null if the search was not synced yet
+     */
+    public static BookCodec.BookList readResults(Context context, String query) {
+        File file = resultsFile(context, query);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return BookCodec.map(file);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Discarding the saved results of " + query, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Replace the books found for the given search. Called on a background thread.
+     */
+    public static void writeResults(Context context, String query, List<Book> books) throws IOException {
+        File file = resultsFile(context, query);
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        // Write a new file and rename it, so results being read are never changed. Each
+        // write has its own temporary file, so the search and the sync can save at once.
+        DiskCaches.writeAtomically(file, BookCodec.encode(normalize(query), books));
+    }
+
+    // The same search typed with other spaces is the same saved search. The case is kept,
+    // because it is part of the request URL the search and the sync must share.
+    private static String normalize(String query) {
+        return BookQueryBuilder.normalizeQuery(query);
+    }
+
+    private static File resultsFile(Context context, String query) {
+        File dir = new File(context.getFilesDir(), RESULTS_DIR_NAME);
+        return new File(dir, ResponseCache.fileNameFor(normalize(query)));
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.android.booksapiapp;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a call only once for callers that ask for the same key at the same time, e.g. two
+ * searches fetching the same query URL while the activity is recreated.
+ * <p>
+ * The first caller of a key starts the call on an executor, then waits for it like the
+ * callers that ask for the key before it is done, and they all get the same result, or the
+ * same exception. A call that is done is forgotten, so the next caller runs it again.
+ * <p>
+ * The call gets its own {@link CancelToken}, which is only cancelled once every caller
+ * waiting for it has cancelled its token. A caller that cancels stops waiting right away,
+ * and a caller that comes after every caller cancelled starts a new call.
+ *
+ * @param <V> is the type of the result of the calls
+ */
+public final class SingleFlight<V> {
+
+    /**
+     * The work shared by the callers of a key
+     */
+    public interface Call<V> {
+
+        /**
+         * @param cancelToken is cancelled when no caller waits for the result anymore
+         */
+        V call(CancelToken cancelToken) throws IOException;
+    }
+
+    // Calls currently running, by key, guarded by itself
+    private final Map<String, Flight<V>> flights = new HashMap<>();
+
+    // Runs the calls, so no caller is stuck in a call it stopped waiting for
+    private final Executor executor;
+
+    // Metrics of the calls
+    private final AtomicLong callerCount = new AtomicLong();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link SingleFlight} that runs the calls on threads of its own
+     */
+    public SingleFlight() {
+        this(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Constructs a {@link SingleFlight} with
+     *
+     * @param executor is the executor that runs the calls
+     */
+    public SingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Run the call for the given key, or wait for the one already running
+     *
+     * @param key         is the key of the call, e.g. a normalized URL
+     * @param cancelToken is the token of this caller, or null
+     * @param call        is the call, only run if none is running for the key
+     * @return the result of the call, or null if the token of this caller was cancelled
+     * before the call was done
+     * @throws IOException if the call failed
+     */
+    public V execute(String key, CancelToken cancelToken, Call<V> call) throws IOException {
+        callerCount.incrementAndGet();
+        Flight<V> flight;
+        boolean leader;
+        synchronized (flights) {
+            flight = flights.get(key);
+            // A call every caller gave up on is being cancelled, so it is replaced by a new one
+            leader = flight == null || !flight.join();
+            if (leader) {
+                flight = new Flight<>();
+                flights.put(key, flight);
+                flight.join();
+            }
+        }
+
+        // Stop waiting, and give the call up when nobody waits for it anymore
+        final Flight<V> joined = flight;
+        Runnable onCancel = new Runnable() {
+            @Override
+            public void run() {
+                joined.leave();
+            }
+        };
+        if (cancelToken != null) {
+            cancelToken.addListener(onCancel);
+        }
+
+        try {
+            if (leader) {
+                executionCount.incrementAndGet();
+                start(key, flight, call);
+            } else {
+                coalescedCount.incrementAndGet();
+            }
+            return flight.await(cancelToken);
+        } finally {
+            if (cancelToken != null) {
+                cancelToken.removeListener(onCancel);
+            }
+        }
+    }
+
+    private void start(final String key, final Flight<V> flight, final Call<V> call) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SingleFlight.this.run(key, flight, call);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            forget(key, flight);
+            flight.finish(null, new IOException("Cannot start the call", e));
+        }
+    }
+
+    private void run(String key, Flight<V> flight, Call<V> call) {
+        V value = null;
+        Throwable error = null;
+        try {
+            value = call.call(flight.cancelToken);
+        } catch (IOException | RuntimeException | Error e) {
+            error = e;
+        } finally {
+            // Forget the call before the callers get its result, so later callers run it again
+            forget(key, flight);
+        }
+        flight.finish(value, error);
+    }
+
+    private void forget(String key, Flight<V> flight) {
+        synchronized (flights) {
+            if (flights.get(key) == flight) {
+                flights.remove(key);
+            }
+        }
+    }
+
+    // Getter method that returns the number of calls to execute()
+    public long getCallerCount() {
+        return callerCount.get();
+    }
+
+    // Getter method that returns the number of calls actually run
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    // Getter method that returns the number of callers that shared a call already running
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight[callers=" + getCallerCount() + ", executions=" + getExecutionCount()
+                + ", coalesced=" + getCoalescedCount() + "]";
+    }
+
+    /**
+     * A running call and the callers waiting for it
+     */
+    private static final class Flight<V> {
+
+        final CancelToken cancelToken = new CancelToken();
+
+        // All guarded by this
+        private int waiting;
+        private boolean abandoned;
+        private boolean done;
+        private V value;
+        private Throwable error;
+
+        // Return false if every caller already cancelled, so the call cannot be joined anymore
+        synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            waiting++;
+            return true;
+        }
+
+        // A caller cancelled, wake it up and cancel the call if it was the last one
+        void leave() {
+            boolean last;
+            synchronized (this) {
+                waiting--;
+                last = waiting == 0 && !done;
+                abandoned = last;
+                notifyAll();
+            }
+            if (last) {
+                cancelToken.cancel();
+            }
+        }
+
+        synchronized void finish(V value, Throwable error) {
+            this.value = value;
+            this.error = error;
+            done = true;
+            notifyAll();
+        }
+
+        V await(CancelToken callerToken) throws IOException {
+            synchronized (this) {
+                boolean interrupted = false;
+                while (!done && (callerToken == null || !callerToken.isCancelled())) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (!done || callerToken != null && callerToken.isCancelled()) {
+                    return null;
+                }
+            }
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            return value;
+        }
+    }
+}
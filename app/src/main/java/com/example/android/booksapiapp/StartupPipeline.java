@@ -0,0 +1,151 @@
+package com.example.android.booksapiapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Helps the app show books on its first frame after a cold start.
+ * <p>
+ * The first page of the last search is saved as a {@link BookCodec} snapshot, which the
+ * activity maps and shows in onCreate, before the search even starts. Meanwhile the parts
+ * the first fetch needs (the book store, the response cache, the DNS lookup of the API
+ * host and the JSON parser classes) are warmed up on a background thread, and the search
+ * refreshes the snapshot from the network. The same thread schedules the background sync
+ * of the saved searches.
+ */
+public final class StartupPipeline {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = StartupPipeline.class.getSimpleName();
+
+    // Name of the snapshot file, in the files directory of the app
+    private static final String SNAPSHOT_FILE_NAME = "startup_snapshot.bin";
+
+    // A tiny API response parsed to load the classes of the parser
+    private static final String WARM_UP_JSON = "{\"items\":[{\"id\":\"warmup\",\"volumeInfo\":{"
+            + "\"title\":\"Warm up\",\"authors\":[\"Warm up\"],\"infoLink\":\"http://example.com\"}}]}";
+
+    // Whether the warm-up already ran in this process
+    private static boolean sWarmedUp;
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name StartupPipeline.
+     */
+    private StartupPipeline() {
+    }
+
+    /**
+     * Read the snapshot saved by {@link #saveSnapshot}. The file is small and memory-mapped,
+     * so this is fast enough for onCreate.
+     *
+     * @return the books, whose key is the search text they were found for, or null if
+     * there is no usable snapshot
+     */
+    public static BookCodec.BookList restoreSnapshot(Context context) {
+        File file = snapshotFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return BookCodec.map(file);
+        } catch (IOException e) {
+            // E.g. written by an older version of the app, the next fetch replaces it
+            Log.w(LOG_TAG, "Discarding the startup snapshot", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Save the first page of books found for the given search text, to be shown on the
+     * next cold start. Called on a background thread.
+     */
+    public static void saveSnapshot(Context context, String searchText, List<Book> books) {
+        if (searchText == null || books == null || books.isEmpty()) {
+            return;
+        }
+        try {
+            // Write a new file and rename it, so a snapshot being read is never changed.
+            // Each write has its own temporary file, so two searches can save at once.
+            DiskCaches.writeAtomically(snapshotFile(context), BookCodec.encode(searchText, books));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem saving the startup snapshot", e);
+        }
+    }
+
+    /**
+     * Delete the snapshot, e.g. before measuring a start without one
+     */
+    public static void deleteSnapshot(Context context) {
+        snapshotFile(context).delete();
+    }
+
+    /**
+     * Warm up what the first fetch of the given URL needs, on a background thread, so the
+     * search does not pay for it. Only the first call in a process does anything.
+     */
+    public static void warmUpInBackground(Context context, final String requestUrl) {
+        synchronized (StartupPipeline.class) {
+            if (sWarmedUp) {
+                return;
+            }
+            sWarmedUp = true;
+        }
+        final Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                warmUp(appContext, requestUrl);
+                Log.v(LOG_TAG, "Warm-up took " + (System.currentTimeMillis() - start) + " ms");
+            }
+        }, "StartupWarmUp");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private static void warmUp(Context context, String requestUrl) {
+        // The warm-up request may run before the first search
+        RequestPolicy.getDefault().watchNetwork(context);
+
+        // Open the database and read the index of the response cache
+        BookStore.getInstance(context).getReadableDatabase();
+        ResponseCache.getInstance(context);
+
+        // Make sure the saved searches are synced in the background, e.g. after an update
+        BookSync.schedule(context);
+
+        // Load the classes of the parser the fetches use
+        if (BookUtils.getParser() == BookUtils.PARSER_STREAMING) {
+            byte[] json = WARM_UP_JSON.getBytes(Charset.forName("UTF-8"));
+            BookUtils.extractFromStream(new ByteArrayInputStream(json));
+        } else {
+            BookUtils.extractFromJson(WARM_UP_JSON);
+        }
+
+        // Resolve the API host and load the classes of the HTTP stack, without a request
+        try {
+            URL url = new URL(requestUrl);
+            InetAddress.getByName(url.getHost());
+            url.openConnection();
+        } catch (IOException e) {
+            // E.g. no network yet, the fetch will report it
+            Log.w(LOG_TAG, "Problem warming up the HTTP client", e);
+        }
+    }
+
+    private static File snapshotFile(Context context) {
+        return new File(context.getFilesDir(), SNAPSHOT_FILE_NAME);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.android.booksapiapp;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link BookCodec}, and compares it with parsing the same books from JSON.
+ */
+public class BookCodecTest {
+
+    @Test
+    public void encodeDecode_roundTripsBooks() throws Exception {
+        List<Book> books = Arrays.asList(
+                new Book("id1", "J\u00fcrgen M\u00fcller", "Caf\u00e9 \"Programming\"", "http://example.com/1", "http://example.com/1.png"),
+                new Book(null, "Anna", "No id", "http://example.com/2", null),
+                new Book("id3", "", "", "http://example.com/3"),
+                new Book("id4", Arrays.asList("First", "Second", ""), "Many authors", "http://example.com/4",
+                        null, "2004-05", 320, 4.5f, 12));
+
+        BookCodec.BookList decoded = BookCodec.decode(BookCodec.encode("query", books));
+
+        assertEquals("query", decoded.getKey());
+        assertEquals(books, new ArrayList<>(decoded));
+        assertNull(decoded.get(1).getVolumeId());
+        assertNull(decoded.get(2).getThumbnailUrl());
+        assertEquals(Arrays.asList("First", "Second", ""), decoded.get(3).getBookAuthors());
+        assertEquals("2004-05", decoded.get(3).getPublishedDate());
+        assertEquals(320, decoded.get(3).getPageCount());
+        assertEquals(4.5f, decoded.get(3).getAverageRating(), 0);
+    }
+
+    @Test
+    public void encodeDecode_emptyListWithoutKey() throws Exception {
+        BookCodec.BookList decoded = BookCodec.decode(BookCodec.encode(null, new ArrayList<Book>()));
+
+        assertNull(decoded.getKey());
+        assertEquals(0, decoded.size());
+    }
+
+    @Test
+    public void encode_storesRepeatedAuthorsOnce() throws Exception {
+        List<Book> books = TestBooks.makeBooks(100, 3);
+
+        BookCodec.BookList decoded = BookCodec.decode(BookCodec.encode(null, books));
+
+        // 100 ids, titles and links, 3 authors and 100 thumbnails
+        assertEquals(403, decoded.getStringCount());
+        assertSame(decoded.get(0).getBookAuthor(), decoded.get(3).getBookAuthor());
+    }
+
+    @Test
+    public void decode_readsFieldsWithoutMaterializingBooks() throws Exception {
+        List<Book> books = TestBooks.makeBooks(10, 2);
+        BookCodec.BookList decoded = BookCodec.decode(BookCodec.encode(null, books));
+
+        assertEquals(books.get(7).getBookTitle(), decoded.getTitle(7));
+        assertEquals(books.get(7).getBookAuthor(), decoded.getAuthor(7));
+        assertSame(decoded.get(7), decoded.get(7));
+    }
+
+    @Test
+    public void decode_readsFromDirectBufferAndMappedFile() throws Exception {
+        List<Book> books = TestBooks.makeBooks(50, 5);
+        byte[] bytes = BookCodec.encode("key", books);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(books, new ArrayList<>(BookCodec.decode(direct)));
+
+        File file = File.createTempFile("books", ".bin");
+        try {
+            BookCodec.write(file, "key", books);
+            BookCodec.BookList mapped = BookCodec.map(file);
+            assertEquals("key", mapped.getKey());
+            assertEquals(books, new ArrayList<>(mapped));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void decode_rejectsOtherVersionsAndTruncatedBytes() throws Exception {
+        byte[] bytes = BookCodec.encode("key", TestBooks.makeBooks(5, 1));
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[7] = (byte) (BookCodec.FORMAT_VERSION + 1);
+        assertRejected(otherVersion);
+
+        assertRejected(Arrays.copyOf(bytes, bytes.length - 1));
+        assertRejected(Arrays.copyOf(bytes, 10));
+        assertRejected("{\"items\":[]}".getBytes(Charset.forName("UTF-8")));
+    }
+
+    @Test
+    public void decode_rejectsCorruptTables() throws Exception {
+        byte[] bytes = BookCodec.encode("key", TestBooks.makeBooks(5, 1));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int stringCount = buffer.getInt(16);
+        int recordsStart = 20 + (stringCount + 1) * 4;
+
+        // A string offset going backwards, then one past the end of the bytes
+        ByteBuffer backwards = ByteBuffer.wrap(bytes.clone());
+        backwards.putInt(20 + 4, -1);
+        assertRejected(backwards.array());
+        ByteBuffer pastTheEnd = ByteBuffer.wrap(bytes.clone());
+        pastTheEnd.putInt(20 + 4, bytes.length);
+        assertRejected(pastTheEnd.array());
+
+        // A book referring to a string that is not in the table
+        ByteBuffer badReference = ByteBuffer.wrap(bytes.clone());
+        badReference.putInt(recordsStart, stringCount);
+        assertRejected(badReference.array());
+
+        // A book count so large that the size of the records wraps around
+        ByteBuffer hugeCount = ByteBuffer.wrap(bytes.clone());
+        hugeCount.putInt(12, Integer.MAX_VALUE / 4);
+        assertRejected(hugeCount.array());
+    }
+
+    @Test
+    public void encode_isSmallerAndFasterToReadThanJson() throws Exception {
+        List<Book> books = TestBooks.makeBooks(1000, 50);
+        String json = toApiJson(books);
+        byte[] encoded = BookCodec.encode(null, books);
+
+        assertTrue("codec=" + encoded.length + " json=" + json.length(), encoded.length < json.length());
+        assertEquals(books, BookUtils.extractFromJson(json));
+
+        long codecNanos = Long.MAX_VALUE;
+        long jsonNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            List<Book> decoded = BookCodec.decode(encoded);
+            for (Book book : decoded) {
+                book.getBookTitle();
+            }
+            codecNanos = Math.min(codecNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            assertEquals(books.size(), BookUtils.extractFromJson(json).size());
+            jsonNanos = Math.min(jsonNanos, System.nanoTime() - start);
+        }
+        assertTrue("codec=" + codecNanos + "ns json=" + jsonNanos + "ns", codecNanos < jsonNanos);
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            BookCodec.decode(bytes);
+            fail("Decoded invalid bytes");
+        } catch (IOException expected) {
+            // The bytes are not a list encoded with the current version
+        }
+    }
+
+    // Return the books as a Google Books API response, as parsed by the JSON path
+    private static String toApiJson(List<Book> books) throws Exception {
+        JSONArray items = new JSONArray();
+        for (Book book : books) {
+            JSONObject volumeInfo = new JSONObject()
+                    .put("title", book.getBookTitle())
+                    .put("authors", new JSONArray().put(book.getBookAuthor()))
+                    .put("infoLink", book.getBookLink())
+                    .put("imageLinks", new JSONObject().put("smallThumbnail", book.getThumbnailUrl()));
+            items.put(new JSONObject().put("id", book.getVolumeId()).put("volumeInfo", volumeInfo));
+        }
+        return new JSONObject().put("items", items).toString();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.booksapiapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BookHttpClient} against a local stand-in for the Google Books API.
+ */
+public class BookHttpClientTest {
+
+    private static final String BODY = "{\"items\":[]}";
+
+    private static final String ETAG = "\"v1\"";
+
+    // Size of the body of /large, far more than a closed response drains
+    private static final int LARGE_BODY_SIZE = 1024 * 1024;
+
+    private HttpServer server;
+
+    private int requestCount;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount++;
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = BODY.getBytes(Charset.forName("UTF-8"));
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    body = gzip(body);
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.createContext("/large", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, LARGE_BODY_SIZE);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(new byte[LARGE_BODY_SIZE]);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void get_decompressesGzipBody() throws Exception {
+        BookHttpClient client = new BookHttpClient();
+        BookHttpClient.Response response = client.get(volumesUrl(), null);
+        try {
+            assertEquals(200, response.getResponseCode());
+            assertEquals(ETAG, response.getEtag());
+            assertEquals(BODY, read(response.getBody()));
+        } finally {
+            response.close();
+        }
+
+        // The compressed bytes are accounted for, not the decompressed ones
+        assertEquals(1, client.getRequestCount());
+        assertEquals(gzip(BODY.getBytes(Charset.forName("UTF-8"))).length, client.getBytesReceived());
+    }
+
+    @Test
+    public void get_withCachedEtag_isNotModified() throws Exception {
+        BookHttpClient client = new BookHttpClient();
+        ResponseCache.Entry cached = new ResponseCache.Entry(new byte[0], 0, ETAG, null);
+        BookHttpClient.Response response = client.get(volumesUrl(), cached);
+        response.close();
+
+        assertTrue(response.isNotModified());
+        assertEquals(1, client.getNotModifiedCount());
+        assertEquals(0, client.getBytesReceived());
+    }
+
+    @Test
+    public void get_withOutdatedEtag_downloadsBody() throws Exception {
+        BookHttpClient client = new BookHttpClient();
+        ResponseCache.Entry cached = new ResponseCache.Entry(new byte[0], 0, "\"v0\"", null);
+        BookHttpClient.Response response = client.get(volumesUrl(), cached);
+        try {
+            assertFalse(response.isNotModified());
+            assertEquals(BODY, read(response.getBody()));
+        } finally {
+            response.close();
+        }
+        assertEquals(1, requestCount);
+    }
+
+    @Test
+    public void close_withLargeBodyLeft_disconnectsInsteadOfDownloadingIt() throws Exception {
+        BookHttpClient client = new BookHttpClient();
+        BookHttpClient.Response response = client.get(
+                new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/large"), null);
+        assertEquals(200, response.getResponseCode());
+        response.close();
+
+        assertEquals(1, client.getRequestCount());
+        assertTrue(client.getBytesReceived() < LARGE_BODY_SIZE / 10);
+    }
+
+    private URL volumesUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/volumes?q=android");
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link BookQueryBuilder}
+ */
+public class BookQueryBuilderTest {
+
+    private static final String BASE_URL = "https://www.googleapis.com/books/v1/volumes";
+
+    @Test
+    public void listView_encodesQueryAndAsksForLiteFields() {
+        String url = new BookQueryBuilder(BASE_URL).setQuery("  android   c++ & caf\u00e9 ").build();
+
+        assertEquals(BASE_URL + "?q=android+c%2B%2B+%26+caf%C3%A9&projection=lite"
+                + "&fields=items%28id%2CvolumeInfo%28title%2Cauthors%2CpublishedDate%2CinfoLink%2CimageLinks%2FsmallThumbnail%29%29",
+                url);
+    }
+
+    @Test
+    public void ratingsView_usesFullProjectionWithRatingFields() {
+        String url = new BookQueryBuilder(BASE_URL).setQuery("android").setView(BookQueryBuilder.VIEW_RATINGS).build();
+
+        assertEquals(BookQueryBuilder.PROJECTION_FULL, BookQueryBuilder.projectionOf(BookQueryBuilder.VIEW_RATINGS));
+        assertEquals("items(id,volumeInfo(title,authors,publishedDate,infoLink,imageLinks/smallThumbnail,"
+                + "pageCount,averageRating,ratingsCount))", BookQueryBuilder.fieldsOf(BookQueryBuilder.VIEW_RATINGS));
+        assertEquals(BookUtils.pageUrl(url, 10, 20), url + "&startIndex=10&maxResults=20");
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BookQueryEngine}
+ */
+public class BookQueryEngineTest {
+
+    @Test
+    public void query_sortsByTitleAuthorDateAndRating() {
+        Book zebra = new Book("1", Arrays.asList("bob"), "Zebra", "http://example.com/1", null, "2001", 0, 3f, 1);
+        Book apple = new Book("2", Arrays.asList("Carol"), "apple", "http://example.com/2", null, "2010-02", 0, 0f, 0);
+        Book eclair = new Book("3", Arrays.asList("Alice"), "\u00c9clair", "http://example.com/3", null, null, 0, 4.5f, 2);
+        BookQueryEngine engine = new BookQueryEngine(Locale.US);
+        engine.setBooks(Arrays.asList(zebra, apple, eclair));
+
+        assertEquals(Arrays.asList(zebra, apple, eclair), engine.query(BookQueryEngine.SORT_RELEVANCE, null));
+        assertEquals(Arrays.asList(apple, eclair, zebra), engine.query(BookQueryEngine.SORT_TITLE, null));
+        assertEquals(Arrays.asList(eclair, zebra, apple), engine.query(BookQueryEngine.SORT_AUTHOR, null));
+        assertEquals(Arrays.asList(apple, zebra, eclair), engine.query(BookQueryEngine.SORT_NEWEST, null));
+        assertEquals(Arrays.asList(eclair, zebra, apple), engine.query(BookQueryEngine.SORT_RATING, null));
+    }
+
+    @Test
+    public void query_filtersWithoutCopyingBooks() {
+        Book android = new Book("1", Arrays.asList("Ann", "Reto Meier"), "Android Programming", "http://example.com/1",
+                null, null, 0, 0f, 0);
+        Book noLink = new Book("2", "Reto", "Android Basics", "");
+        Book java = new Book("3", "Joshua", "Effective Java", "http://example.com/3");
+        BookQueryEngine engine = new BookQueryEngine(Locale.US);
+        engine.setBooks(Arrays.asList(android, noLink, java));
+
+        List<Book> withLink = engine.query(BookQueryEngine.SORT_RELEVANCE, BookQueryEngine.withLink());
+        assertEquals(Arrays.asList(android, java), withLink);
+        assertTrue(withLink.get(0) == android);
+
+        assertEquals(Arrays.asList(android), engine.query(BookQueryEngine.SORT_RELEVANCE, engine.matchingWords("andr MEIER")));
+        assertEquals(Arrays.asList(noLink, android), engine.query(BookQueryEngine.SORT_TITLE, engine.matchingWords("andr")));
+        assertEquals(Arrays.asList(android), engine.query(BookQueryEngine.SORT_TITLE,
+                BookQueryEngine.both(BookQueryEngine.withLink(), engine.matchingWords("andr"))));
+    }
+
+    @Test
+    public void setBooks_appendedPagesMatchAFullSort() {
+        List<Book> books = TestBooks.makeScatteredBooks(500);
+        BookQueryEngine incremental = new BookQueryEngine(Locale.US);
+        for (int size = 40; size <= books.size(); size += 40) {
+            incremental.setBooks(books.subList(0, size));
+            // Use the sort orders, so their indexes are merged when the next page is appended
+            incremental.query(BookQueryEngine.SORT_TITLE, null);
+            incremental.query(BookQueryEngine.SORT_AUTHOR, null);
+            incremental.query(BookQueryEngine.SORT_RATING, null);
+        }
+        incremental.setBooks(books);
+        BookQueryEngine full = new BookQueryEngine(Locale.US);
+        full.setBooks(books);
+
+        for (int order = BookQueryEngine.SORT_RELEVANCE; order <= BookQueryEngine.SORT_RATING; order++) {
+            assertEquals(full.query(order, null), incremental.query(order, null));
+        }
+
+        // A different search replaces the books
+        List<Book> other = TestBooks.makeScatteredBooks(3);
+        incremental.setBooks(other);
+        assertEquals(3, incremental.size());
+    }
+
+    @Test
+    public void query_resortsThousandsOfBooksWithinAFrame() {
+        List<Book> books = TestBooks.makeScatteredBooks(5000);
+        BookQueryEngine engine = new BookQueryEngine(Locale.US);
+        engine.setBooks(books);
+
+        // The best of many runs, so the sort is measured once it is compiled like on a device
+        long bestNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 30; run++) {
+            // Drop the sort indexes, so every run sorts again from the precomputed keys
+            engine.setBooks(new ArrayList<Book>());
+            engine.setBooks(books);
+            long start = System.nanoTime();
+            engine.query(BookQueryEngine.SORT_TITLE, null);
+            engine.query(BookQueryEngine.SORT_AUTHOR, null);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+        assertTrue("sorting took " + bestNanos / 1000 + " us", bestNanos < 16000000L);
+    }
+}
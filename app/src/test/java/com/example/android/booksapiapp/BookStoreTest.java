@@ -0,0 +1,32 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the full-text query built by {@link BookStore} from the text typed by the user
+ */
+public class BookStoreTest {
+
+    @Test
+    public void matchQuery_matchesWordsStartingWithEachWord() {
+        assertEquals("andr* prog*", BookStore.matchQuery("andr prog"));
+        assertEquals("java*", BookStore.matchQuery("  JAVA  "));
+    }
+
+    @Test
+    public void matchQuery_dropsFullTextOperators() {
+        // Quotes, stars and minus signs would otherwise be read as part of the query syntax
+        assertEquals("c* sharp*", BookStore.matchQuery("\"c\" -sharp*"));
+        assertEquals("caf\u00e9* 2*", BookStore.matchQuery("Caf\u00c9 (2)"));
+    }
+
+    @Test
+    public void matchQuery_returnsNullWithoutWords() {
+        assertNull(BookStore.matchQuery(null));
+        assertNull(BookStore.matchQuery(""));
+        assertNull(BookStore.matchQuery(" - * "));
+    }
+}
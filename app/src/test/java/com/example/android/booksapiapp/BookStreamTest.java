@@ -0,0 +1,234 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BookStream} with the sources of {@link BookSources}
+ */
+public class BookStreamTest {
+
+    @Test
+    public void request_onlyFetchesThePagesAskedFor() {
+        FakeFetcher fetcher = new FakeFetcher(100);
+        QueueExecutor worker = new QueueExecutor();
+        QueueExecutor callbacks = new QueueExecutor();
+        BookStream stream = new BookStream(BookSources.pages(fetcher, 10, 20), null, worker, callbacks);
+        RecordingObserver observer = new RecordingObserver();
+        stream.subscribe(observer);
+
+        stream.request(10);
+        worker.runAll();
+        callbacks.runAll();
+        assertEquals(Arrays.asList(0), fetcher.startIndexes);
+        assertEquals(10, observer.books.size());
+        assertTrue(stream.isIdle());
+
+        // The books fetched while the observer is busy come in a single call
+        stream.request(40);
+        worker.runAll();
+        callbacks.runAll();
+        assertEquals(Arrays.asList(0, 10, 30), fetcher.startIndexes);
+        assertEquals(50, observer.books.size());
+        assertEquals(2, observer.booksCalls);
+        assertEquals(40, observer.lastBatch.size());
+        assertFalse(observer.loading);
+    }
+
+    @Test
+    public void preview_isShownFirstThenKeptAfterTheFetchedBooks() {
+        FakeFetcher fetcher = new FakeFetcher(3);
+        List<Book> stored = Arrays.asList(book(2), book(7));
+        QueueExecutor worker = new QueueExecutor();
+        // Calls the observer right away, so every delivery is seen
+        Executor callbacks = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        BookStream stream = new BookStream(BookSources.pages(fetcher, 10, 20),
+                BookSources.orElse(BookSources.of(null), BookSources.of(stored)), worker, callbacks);
+        RecordingObserver observer = new RecordingObserver();
+        stream.subscribe(observer);
+
+        stream.request(10);
+        worker.runAll();
+        assertEquals(Arrays.asList(stored, Arrays.asList(book(0), book(1), book(2), book(7))), observer.history);
+        assertTrue(stream.isComplete());
+        assertTrue(observer.complete);
+    }
+
+    @Test
+    public void failedPage_isRetriedByTheNextRequest() {
+        FakeFetcher fetcher = new FakeFetcher(100);
+        fetcher.failures = 1;
+        QueueExecutor worker = new QueueExecutor();
+        QueueExecutor callbacks = new QueueExecutor();
+        BookStream stream = new BookStream(BookSources.pages(fetcher, 10, 20), null, worker, callbacks);
+        RecordingObserver observer = new RecordingObserver();
+        stream.subscribe(observer);
+
+        stream.request(10);
+        worker.runAll();
+        callbacks.runAll();
+        assertTrue(observer.error != null);
+        assertTrue(observer.books.isEmpty());
+        assertTrue(stream.isIdle());
+
+        stream.request(20);
+        worker.runAll();
+        callbacks.runAll();
+        assertEquals(Arrays.asList(0, 0, 10), fetcher.startIndexes);
+        assertEquals(30, observer.books.size());
+    }
+
+    @Test
+    public void overlappingPages_giveEachVolumeOnce() {
+        FakeFetcher fetcher = new FakeFetcher(100);
+        // Like the API when volumes were added between two pages
+        fetcher.overlap = 5;
+        QueueExecutor worker = new QueueExecutor();
+        QueueExecutor callbacks = new QueueExecutor();
+        BookStream stream = new BookStream(BookSources.pages(fetcher, 10, 20), null, worker, callbacks);
+        RecordingObserver observer = new RecordingObserver();
+        stream.subscribe(observer);
+
+        stream.request(10);
+        stream.request(20);
+        worker.runAll();
+        callbacks.runAll();
+        assertEquals(25, observer.books.size());
+        Set<String> volumeIds = new HashSet<>();
+        for (Book book : observer.books) {
+            volumeIds.add(book.getVolumeId());
+        }
+        assertEquals(25, volumeIds.size());
+        assertTrue(stream.isIdle());
+    }
+
+    @Test
+    public void newObserver_getsTheBooksWithoutFetchingAgain() {
+        FakeFetcher fetcher = new FakeFetcher(100);
+        QueueExecutor worker = new QueueExecutor();
+        QueueExecutor callbacks = new QueueExecutor();
+        BookStream stream = new BookStream(BookSources.pages(fetcher, 10, 20), null, worker, callbacks);
+        RecordingObserver first = new RecordingObserver();
+        stream.subscribe(first);
+        stream.request(10);
+        worker.runAll();
+        callbacks.runAll();
+
+        // Like an activity recreated after a configuration change
+        stream.unsubscribe(first);
+        RecordingObserver second = new RecordingObserver();
+        stream.subscribe(second);
+        worker.runAll();
+        callbacks.runAll();
+        assertEquals(first.books, second.books);
+        assertEquals(1, fetcher.startIndexes.size());
+
+        // A cancelled stream does not call its observers anymore
+        stream.cancel();
+        stream.request(20);
+        worker.runAll();
+        callbacks.runAll();
+        assertEquals(10, second.books.size());
+        assertEquals(1, fetcher.startIndexes.size());
+    }
+
+    private static Book book(int index) {
+        return new Book("volume" + index, "Author " + index, "Title " + index, "http://example.com/" + index);
+    }
+
+    // Returns the books of the given number of results, after failing the given number of times
+    private static class FakeFetcher implements BookSources.PageFetcher {
+        private final int totalItems;
+        private final List<Integer> startIndexes = new ArrayList<>();
+        private int failures;
+        private int overlap;
+
+        FakeFetcher(int totalItems) {
+            this.totalItems = totalItems;
+        }
+
+        @Override
+        public List<Book> fetchPage(int startIndex, int maxResults, CancelToken cancelToken) throws IOException {
+            startIndexes.add(startIndex);
+            if (failures > 0) {
+                failures--;
+                throw new IOException("Connection reset");
+            }
+            List<Book> page = new ArrayList<>();
+            int first = startIndex == 0 ? 0 : startIndex - overlap;
+            for (int i = first; i < Math.min(totalItems, first + maxResults); i++) {
+                page.add(book(i));
+            }
+            return page;
+        }
+    }
+
+    // Runs the tasks when the test says so, like a thread that is busy until then
+    private static class QueueExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runNext() {
+            tasks.remove(0).run();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+
+    private static class RecordingObserver implements BookStream.Observer {
+        private List<Book> books = new ArrayList<>();
+        private final List<List<Book>> history = new ArrayList<>();
+        private List<Book> lastBatch;
+        private int booksCalls;
+        private boolean loading;
+        private IOException error;
+        private boolean complete;
+
+        @Override
+        public void onBooks(List<Book> books, List<Book> batch) {
+            this.books = books;
+            history.add(books);
+            lastBatch = batch;
+            booksCalls++;
+        }
+
+        @Override
+        public void onLoading(boolean loading) {
+            this.loading = loading;
+        }
+
+        @Override
+        public void onError(IOException error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link DiskCaches}
+ */
+public class DiskCachesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAtomically_replacesTheFileAndLeavesNoTemporaryFile() throws Exception {
+        File dir = folder.newFolder();
+        File file = new File(dir, "entry");
+        DiskCaches.writeAtomically(file, new byte[]{1, 2, 3});
+        DiskCaches.writeAtomically(file, new byte[]{4, 5});
+
+        assertArrayEquals(new byte[]{4, 5}, Files.readAllBytes(file.toPath()));
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void trim_deletesTheLeastRecentlyUsedFilesFirst() throws Exception {
+        File dir = folder.newFolder();
+        File[] files = new File[4];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dir, "entry" + i);
+            DiskCaches.writeAtomically(files[i], new byte[100]);
+            files[i].setLastModified(1000000L * (i + 1));
+        }
+        // Reading the oldest file touches it
+        files[0].setLastModified(1000000L * 10);
+
+        assertEquals(0, DiskCaches.trim(dir, 400, Integer.MAX_VALUE));
+        assertEquals(2, DiskCaches.trim(dir, 250, Integer.MAX_VALUE));
+        assertFalse(files[1].exists());
+        assertFalse(files[2].exists());
+
+        assertEquals(1, DiskCaches.trim(dir, Long.MAX_VALUE, 1));
+        assertTrue(files[0].exists());
+        assertFalse(files[3].exists());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.booksapiapp;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link MemoryBudget}, and the estimate it trims the {@link BookListCache} by. The
+ * cache itself keeps its lists in an android.util.LruCache, so it is tested on a device by
+ * BookListCacheInstrumentedTest.
+ */
+public class MemoryBudgetTest {
+
+    @Test
+    public void budgets_followTheMemoryClass() {
+        MemoryBudget budget = new MemoryBudget(64, false);
+        MemoryBudget lowRamBudget = new MemoryBudget(64, true);
+
+        assertEquals(8 * 1024 * 1024, budget.getImagesBytes());
+        assertEquals(2 * 1024 * 1024, budget.getResponsesBytes());
+        assertEquals(4 * 1024 * 1024, lowRamBudget.getImagesBytes());
+        assertTrue(MemoryBudget.keptFraction(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) < 1f);
+        assertTrue(MemoryBudget.keptFraction(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+                < MemoryBudget.keptFraction(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(0f, MemoryBudget.keptFraction(ComponentCallbacks2.TRIM_MEMORY_COMPLETE), 0f);
+    }
+
+    @Test
+    public void trimLevels_shrinkEveryTierToItsPartOfTheBudget() {
+        MemoryBudget budget = new MemoryBudget(64, false);
+        FakeTier images = new FakeTier(1000);
+        FakeTier results = new FakeTier(400);
+        budget.register("images", images);
+        budget.register("results", results);
+        assertEquals(1400, budget.getResidentBytes());
+
+        // A running level below the first trim keeps everything
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE - 1);
+        assertEquals(1400, budget.getResidentBytes());
+
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(500, images.residentBytes);
+        assertEquals(200, results.residentBytes);
+
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, budget.getResidentBytes());
+    }
+
+    @Test
+    public void decodedList_isEstimatedFromItsEncodedSize() throws Exception {
+        List<Book> books = TestBooks.makeBooks(200, 10);
+        BookCodec.BookList decoded = BookCodec.decode(BookCodec.encode(null, books));
+
+        // Close to the estimate of the same books walked one by one, but a little smaller as
+        // the authors are shared
+        int walked = BookListCache.estimateBytes(books);
+        int encoded = BookListCache.estimateBytes(decoded);
+        assertTrue("walked=" + walked + " encoded=" + encoded, encoded < walked && encoded > walked / 2);
+    }
+
+    /**
+     * A tier that is full at the start and only counts its bytes
+     */
+    private static final class FakeTier implements MemoryBudget.Tier {
+
+        private final long maxBytes;
+
+        long residentBytes;
+
+        FakeTier(long maxBytes) {
+            this.maxBytes = maxBytes;
+            residentBytes = maxBytes;
+        }
+
+        @Override
+        public long getResidentBytes() {
+            return residentBytes;
+        }
+
+        @Override
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        @Override
+        public void trimToBytes(long bytes) {
+            residentBytes = Math.min(residentBytes, bytes);
+        }
+    }
+}
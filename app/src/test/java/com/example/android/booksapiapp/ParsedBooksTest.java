@@ -0,0 +1,58 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link ParsedBooks} returned by the DOM parser of {@link BookUtils}. The streaming
+ * parser uses android.util.JsonReader, so it is tested on a device by ParsedBooksStreamingTest.
+ */
+public class ParsedBooksTest {
+
+    // A valid volume, one without authors and info link, one without title and one that is not an object
+    private static final String RESPONSE = "{\"kind\":\"books#volumes\",\"items\":["
+            + "{\"id\":\"a\",\"volumeInfo\":{\"title\":\"Android\",\"authors\":[\"Ann\"],\"infoLink\":\"http://a\"}},"
+            + "{\"id\":\"b\",\"volumeInfo\":{\"title\":\"Basics\",\"pageCount\":12.5}},"
+            + "{\"id\":\"c\",\"volumeInfo\":{\"authors\":[\"Carl\"],\"infoLink\":\"http://c\"}},"
+            + "42,"
+            + "{\"id\":\"d\",\"volumeInfo\":{\"title\":\"Design\",\"authors\":\"Dora\",\"infoLink\":\"http://d\"}}"
+            + "],\"totalItems\":5}";
+
+    @Test
+    public void invalidVolumes_areSkippedOrCompletedWithDefaults() throws Exception {
+        assertResilient(BookUtils.extractFromJson(RESPONSE));
+    }
+
+    @Test
+    public void cutOffResponse_keepsTheVolumesReadBefore() throws Exception {
+        String cutOff = RESPONSE.substring(0, RESPONSE.indexOf("{\"id\":\"c\"") + 20);
+
+        ParsedBooks books = BookUtils.extractFromJson(cutOff);
+
+        assertFalse(books.isComplete());
+        assertEquals(2, books.size());
+        assertEquals(2, books.getItemCount());
+    }
+
+    private static void assertResilient(ParsedBooks books) {
+        assertTrue(books.isComplete());
+        assertEquals(5, books.getItemCount());
+        assertEquals(3, books.size());
+        assertEquals(2, books.getSkippedCount());
+
+        Book basics = books.get(1);
+        assertEquals("Basics", basics.getBookTitle());
+        assertEquals("https://books.google.com/books?id=b", basics.getBookLink());
+        assertTrue(basics.getBookAuthors().isEmpty());
+        assertEquals(12, basics.getPageCount());
+
+        List<String> designAuthors = books.get(2).getBookAuthors();
+        assertEquals(1, designAuthors.size());
+        assertEquals("Dora", designAuthors.get(0));
+    }
+}
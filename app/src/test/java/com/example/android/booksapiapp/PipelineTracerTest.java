@@ -0,0 +1,82 @@
+package com.example.android.booksapiapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link PipelineTracer}
+ */
+public class PipelineTracerTest {
+
+    @Before
+    public void resetTracer() {
+        PipelineTracer.setEnabled(false, false);
+        PipelineTracer.reset();
+    }
+
+    @After
+    public void disableTracer() {
+        PipelineTracer.setEnabled(false, false);
+        PipelineTracer.reset();
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        long start = PipelineTracer.begin(PipelineTracer.STAGE_PARSE);
+        PipelineTracer.end(PipelineTracer.STAGE_PARSE, start, 10, 100);
+        PipelineTracer.count(PipelineTracer.STAGE_CONNECT, 0, 100);
+
+        assertEquals(0, start);
+        assertEquals(0, PipelineTracer.getCount(PipelineTracer.STAGE_PARSE));
+        assertEquals(0, PipelineTracer.getBytes(PipelineTracer.STAGE_CONNECT));
+    }
+
+    @Test
+    public void enabled_recordsTimesItemsAndBytes() throws Exception {
+        PipelineTracer.setEnabled(true, false);
+        for (int i = 0; i < 3; i++) {
+            long start = PipelineTracer.begin(PipelineTracer.STAGE_PARSE);
+            Thread.sleep(2);
+            PipelineTracer.end(PipelineTracer.STAGE_PARSE, start, 10, 0);
+        }
+        PipelineTracer.count(PipelineTracer.STAGE_CONNECT, 0, 1234);
+
+        assertEquals(3, PipelineTracer.getCount(PipelineTracer.STAGE_PARSE));
+        assertEquals(30, PipelineTracer.getItems(PipelineTracer.STAGE_PARSE));
+        assertEquals(1234, PipelineTracer.getBytes(PipelineTracer.STAGE_CONNECT));
+        assertTrue(PipelineTracer.getTotalNanos(PipelineTracer.STAGE_PARSE) >= 6000000L);
+
+        // The percentiles are bucket bounds, between the fastest and the slowest time
+        long p50 = PipelineTracer.getPercentileNanos(PipelineTracer.STAGE_PARSE, 0.5);
+        assertTrue("p50=" + p50, p50 >= 2000000L);
+        assertTrue(p50 <= PipelineTracer.getPercentileNanos(PipelineTracer.STAGE_PARSE, 0.99));
+        assertEquals(0, PipelineTracer.getPercentileNanos(PipelineTracer.STAGE_BIND, 0.5));
+
+        String dump = PipelineTracer.dump();
+        assertTrue(dump, dump.contains("parse"));
+        assertTrue(dump, dump.contains("1234"));
+    }
+
+    @Test
+    public void sectionsAreClosedAsTheyWereOpened() {
+        // Turning systrace off during a stage must still close the section it opened
+        PipelineTracer.setEnabled(true, true);
+        long withSection = PipelineTracer.begin(PipelineTracer.STAGE_PARSE);
+        PipelineTracer.setEnabled(true, false);
+        assertTrue(PipelineTracer.openedSection(withSection));
+        PipelineTracer.end(PipelineTracer.STAGE_PARSE, withSection);
+
+        // Turning it on during a stage must not close a section that was never opened
+        long withoutSection = PipelineTracer.begin(PipelineTracer.STAGE_PARSE);
+        PipelineTracer.setEnabled(true, true);
+        assertFalse(PipelineTracer.openedSection(withoutSection));
+        PipelineTracer.end(PipelineTracer.STAGE_PARSE, withoutSection);
+
+        assertEquals(2, PipelineTracer.getCount(PipelineTracer.STAGE_PARSE));
+    }
+}
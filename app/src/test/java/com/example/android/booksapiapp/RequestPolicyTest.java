@@ -0,0 +1,93 @@
+package com.example.android.booksapiapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the circuit breaker of {@link RequestPolicy} against a local HTTP server
+ */
+public class RequestPolicyTest {
+
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fail", new StatusHandler(500));
+        server.createContext("/ok", new StatusHandler(200));
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void cancelledTrial_letsTheNextRequestThrough() throws Exception {
+        // Let a trial through as soon as the circuit is open
+        RequestPolicy policy = new RequestPolicy(0);
+        policy.setHedgingEnabled(false);
+        BookHttpClient client = new BookHttpClient();
+
+        // Two requests of three failed attempts each open the circuit
+        for (int i = 0; i < 2; i++) {
+            BookHttpClient.Response response = policy.execute(client, url("/fail"), null);
+            assertEquals(500, response.getResponseCode());
+            response.close();
+        }
+
+        // The trial is cancelled before any attempt, so it records no outcome
+        CancelToken cancelToken = new CancelToken();
+        cancelToken.cancel();
+        try {
+            policy.execute(client, url("/ok"), null, cancelToken);
+            fail("A cancelled request should not be made");
+        } catch (InterruptedIOException expected) {
+            // The trial was abandoned
+        }
+
+        // The next request is the trial instead, and its success closes the circuit
+        BookHttpClient.Response response = policy.execute(client, url("/ok"), null);
+        assertEquals(200, response.getResponseCode());
+        response.close();
+        response = policy.execute(client, url("/ok"), null);
+        assertEquals(200, response.getResponseCode());
+        response.close();
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    /**
+     * Answers every request with the given status and an empty body
+     */
+    private static final class StatusHandler implements HttpHandler {
+
+        private final int status;
+
+        StatusHandler(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        }
+    }
+}
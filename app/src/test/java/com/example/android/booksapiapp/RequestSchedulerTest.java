@@ -0,0 +1,105 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link RequestScheduler}
+ */
+public class RequestSchedulerTest {
+
+    @Test
+    public void retryAfter_isParsedAsSecondsOrDate() {
+        long now = 1445412480000L; // Wed, 21 Oct 2015 07:28:00 GMT
+
+        assertEquals(120000, RequestScheduler.parseRetryAfter("120", now));
+        assertEquals(30000, RequestScheduler.parseRetryAfter("Wed, 21 Oct 2015 07:28:30 GMT", now));
+        assertEquals(0, RequestScheduler.parseRetryAfter("Wed, 21 Oct 2015 07:27:00 GMT", now));
+        assertEquals(-1, RequestScheduler.parseRetryAfter(null, now));
+        assertEquals(-1, RequestScheduler.parseRetryAfter("soon", now));
+    }
+
+    @Test
+    public void burst_isGivenAtOnceThenTheRate() throws IOException {
+        RequestScheduler scheduler = new RequestScheduler(20, 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(scheduler.tryAcquire());
+        }
+        assertFalse(scheduler.tryAcquire());
+
+        long start = System.nanoTime();
+        scheduler.acquire(RequestScheduler.PRIORITY_FOREGROUND, null);
+        long waitedMillis = (System.nanoTime() - start) / 1000000L;
+        assertTrue("waited " + waitedMillis + "ms", waitedMillis >= 30);
+    }
+
+    @Test
+    public void foregroundRequests_goBeforeQueuedBackgroundRequests() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(50, 1);
+        scheduler.pauseFor(200);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Thread> threads = new ArrayList<>();
+        int[] priorities = {RequestScheduler.PRIORITY_BACKGROUND, RequestScheduler.PRIORITY_PREFETCH,
+                RequestScheduler.PRIORITY_FOREGROUND};
+        for (final int priority : priorities) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        scheduler.acquire(priority, null);
+                        order.add(priority);
+                    } catch (IOException e) {
+                        order.add(-1);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+            // Queue them in this order, well before the pause is over
+            Thread.sleep(30);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(3, order.size());
+        assertEquals(RequestScheduler.PRIORITY_FOREGROUND, (int) order.get(0));
+        assertEquals(RequestScheduler.PRIORITY_PREFETCH, (int) order.get(1));
+        assertEquals(RequestScheduler.PRIORITY_BACKGROUND, (int) order.get(2));
+    }
+
+    @Test
+    public void staleAndCancelledRequests_areDropped() throws IOException {
+        RequestScheduler scheduler = new RequestScheduler(10, 1);
+        scheduler.setMaxWaitMillis(RequestScheduler.PRIORITY_BACKGROUND, 100);
+        scheduler.onThrottled(1000);
+        try {
+            scheduler.acquire(RequestScheduler.PRIORITY_BACKGROUND, null);
+            fail("A request that cannot get a permit in time should be dropped");
+        } catch (InterruptedIOException e) {
+            fail("The request was not cancelled");
+        } catch (IOException e) {
+            assertEquals(1, scheduler.getDroppedCount());
+        }
+        assertEquals(5, scheduler.getPermitsPerSecond(), 0);
+
+        CancelToken cancelToken = new CancelToken();
+        cancelToken.cancel();
+        try {
+            scheduler.acquire(RequestScheduler.PRIORITY_FOREGROUND, cancelToken);
+            fail("A cancelled request should not get a permit");
+        } catch (InterruptedIOException e) {
+            assertEquals(0, scheduler.getGrantedCount());
+        }
+    }
+}
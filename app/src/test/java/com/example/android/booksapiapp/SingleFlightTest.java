@@ -0,0 +1,218 @@
+package com.example.android.booksapiapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link SingleFlight}
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    public void execute_concurrentCallersShareOneCall() throws Exception {
+        final SingleFlight<Object> flight = new SingleFlight<>();
+        final Object result = new Object();
+        final BlockingCall call = new BlockingCall(result, null);
+
+        List<Future<Object>> futures = startCallers(flight, "key", call, CALLERS);
+        call.release();
+
+        for (Future<Object> future : futures) {
+            assertSame(result, future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, call.runCount.get());
+        assertEquals(1, flight.getExecutionCount());
+        assertEquals(CALLERS - 1, flight.getCoalescedCount());
+
+        // The call is done, so the next caller runs it again
+        assertSame(result, flight.execute("key", null, call));
+        assertEquals(2, call.runCount.get());
+    }
+
+    @Test
+    public void execute_everyCallerGetsTheError() throws Exception {
+        SingleFlight<Object> flight = new SingleFlight<>();
+        BlockingCall call = new BlockingCall(null, new IOException("offline"));
+
+        List<Future<Object>> futures = startCallers(flight, "key", call, CALLERS);
+        call.release();
+
+        for (Future<Object> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("The error was not thrown");
+            } catch (ExecutionException e) {
+                assertEquals("offline", e.getCause().getMessage());
+            }
+        }
+        assertEquals(1, call.runCount.get());
+    }
+
+    @Test
+    public void execute_otherKeysAreNotShared() throws Exception {
+        SingleFlight<Object> flight = new SingleFlight<>();
+        BlockingCall call = new BlockingCall(new Object(), null);
+
+        List<Future<Object>> futures = startCallers(flight, "first", call, 1);
+        futures.addAll(startCallers(flight, "second", call, 1));
+        call.release();
+
+        for (Future<Object> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(2, call.runCount.get());
+        assertEquals(0, flight.getCoalescedCount());
+    }
+
+    @Test
+    public void execute_callIsOnlyCancelledWhenEveryCallerCancelled() throws Exception {
+        final SingleFlight<Object> flight = new SingleFlight<>();
+        final Object result = new Object();
+        final BlockingCall call = new BlockingCall(result, null);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final CancelToken leaderToken = new CancelToken();
+            final CancelToken followerToken = new CancelToken();
+            Future<Object> leader = executor.submit(execute(flight, call, leaderToken));
+            assertTrue(call.started.await(10, TimeUnit.SECONDS));
+            Future<Object> follower = executor.submit(execute(flight, call, followerToken));
+            waitForCoalesced(flight, 1);
+
+            // The leader stops waiting right away, but the follower still waits so the call goes on
+            leaderToken.cancel();
+            assertNull(leader.get(10, TimeUnit.SECONDS));
+            assertFalse(call.sharedToken.isCancelled());
+
+            // Nobody waits anymore, so the call is cancelled and the follower stops waiting
+            followerToken.cancel();
+            assertTrue(call.sharedToken.isCancelled());
+            assertNull(follower.get(10, TimeUnit.SECONDS));
+
+            call.release();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void execute_callerAfterEveryCallerCancelledStartsANewCall() throws Exception {
+        SingleFlight<Object> flight = new SingleFlight<>();
+        BlockingCall cancelledCall = new BlockingCall(new Object(), null);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            CancelToken token = new CancelToken();
+            Future<Object> caller = executor.submit(execute(flight, cancelledCall, token));
+            assertTrue(cancelledCall.started.await(10, TimeUnit.SECONDS));
+            token.cancel();
+            assertNull(caller.get(10, TimeUnit.SECONDS));
+            assertTrue(cancelledCall.sharedToken.isCancelled());
+
+            // The cancelled call is still running, but the new caller does not wait for it
+            Object result = new Object();
+            BlockingCall newCall = new BlockingCall(result, null);
+            newCall.release();
+            assertSame(result, flight.execute("key", null, newCall));
+            assertEquals(2, flight.getExecutionCount());
+            assertEquals(0, flight.getCoalescedCount());
+
+            cancelledCall.release();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Future<Object>> startCallers(SingleFlight<Object> flight, String key, BlockingCall call,
+                                                     int count) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        List<Future<Object>> futures = new ArrayList<>();
+        futures.add(executor.submit(execute(flight, key, call, null)));
+        assertTrue(call.started.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < count; i++) {
+            futures.add(executor.submit(execute(flight, key, call, null)));
+        }
+        waitForCoalesced(flight, count - 1);
+        executor.shutdown();
+        return futures;
+    }
+
+    private static Callable<Object> execute(SingleFlight<Object> flight, BlockingCall call, CancelToken cancelToken) {
+        return execute(flight, "key", call, cancelToken);
+    }
+
+    private static Callable<Object> execute(final SingleFlight<Object> flight, final String key,
+                                            final BlockingCall call, final CancelToken cancelToken) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return flight.execute(key, cancelToken, call);
+            }
+        };
+    }
+
+    // Wait until the given number of callers joined a running call
+    private static void waitForCoalesced(SingleFlight<Object> flight, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (flight.getCoalescedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, flight.getCoalescedCount());
+    }
+
+    /**
+     * A call that blocks until it is released, then returns its result or throws its error
+     */
+    private static final class BlockingCall implements SingleFlight.Call<Object> {
+
+        final AtomicInteger runCount = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final Object result;
+        private final IOException error;
+        volatile CancelToken sharedToken;
+
+        BlockingCall(Object result, IOException error) {
+            this.result = result;
+            this.error = error;
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        @Override
+        public Object call(CancelToken cancelToken) throws IOException {
+            sharedToken = cancelToken;
+            runCount.incrementAndGet();
+            started.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.android.booksapiapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Made-up books shared by the unit tests
+ */
+final class TestBooks {
+
+    /**
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name TestBooks.
+     */
+    private TestBooks() {
+    }
+
+    /**
+     * Return the given number of books, each with its own id, author, title and link and
+     * without a thumbnail
+     */
+    static List<Book> makeBooks(int count) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(new Book("volume" + i, "Author " + i, "Title " + i, "https://example.com/" + i));
+        }
+        return books;
+    }
+
+    /**
+     * Return the given number of books with a thumbnail each, written by the given number
+     * of authors in turn, so the same author strings repeat
+     */
+    static List<Book> makeBooks(int count, int authorCount) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(new Book("volume" + i, "Author " + i % authorCount, "Title " + i,
+                    "https://example.com/" + i, "https://example.com/" + i + ".png"));
+        }
+        return books;
+    }
+
+    /**
+     * Return the given number of books whose titles, authors and ratings are scattered, so
+     * that they are not already sorted by any of them
+     */
+    static List<Book> makeScatteredBooks(int count) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int scattered = (i * 7919) % count;
+            books.add(new Book("volume" + i, Arrays.asList("Author " + scattered % 97), "Title " + scattered,
+                    "https://example.com/" + i, null, null, 0, scattered % 11 / 2f, i % 11));
+        }
+        return books;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.android.booksapiapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of creating a {@link Book}. With the gc profiler, gc.alloc.rate.norm is
+ * the number of bytes allocated per book.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BookAllocationBenchmark {
+
+    private static final int BOOKS = 1000;
+
+    private String[] ids;
+    private String[] authors;
+    private String[] titles;
+    private String[] links;
+    private String[] thumbnails;
+
+    @Setup
+    public void setUp() {
+        ids = new String[BOOKS];
+        authors = new String[BOOKS];
+        titles = new String[BOOKS];
+        links = new String[BOOKS];
+        thumbnails = new String[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            ids[i] = "volume" + i;
+            authors[i] = "Author " + i;
+            titles[i] = "Title " + i;
+            links[i] = "http://books.google.com/books?id=volume" + i;
+            thumbnails[i] = "http://books.google.com/books/content?id=volume" + i;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOKS)
+    public void createBook(Blackhole blackhole) {
+        for (int i = 0; i < BOOKS; i++) {
+            blackhole.consume(new Book(ids[i], authors[i], titles[i], links[i], thumbnails[i]));
+        }
+    }
+}
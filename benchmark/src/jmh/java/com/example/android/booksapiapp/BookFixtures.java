@@ -0,0 +1,180 @@
+package com.example.android.booksapiapp;
+
+import org.json.JSONException;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Builds Google Books API responses used by the benchmarks. The responses have the same
+ * fields as the ones returned by the API for the lite and the full projection, and are
+ * always the same for the same arguments, so the results of different runs can be compared.
+ */
+final class BookFixtures {
+
+    static final String PROJECTION_LITE = "lite";
+    static final String PROJECTION_FULL = "full";
+
+    private static final String[] WORDS = {"android", "java", "programming", "guide", "complete",
+            "reference", "patterns", "design", "systems", "networks", "data", "kotlin", "mobile",
+            "d\u00e9veloppement", "applications", "performance", "architecture", "testing", "\"advanced\"", "caf\u00e9"};
+
+    private static final String[] NAMES = {"Mark", "Anna", "J\u00fcrgen", "Li", "Olga", "Pierre", "Sam",
+            "Maria", "Ken", "Zo\u00eb"};
+
+    private BookFixtures() {
+    }
+
+    /**
+     * Return a response with the given number of volumes in the given projection, as UTF-8 bytes
+     */
+    static byte[] response(int items, String projection) {
+        return responseJson(items, projection).getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Return a response with the given number of volumes in the given projection, with only
+     * the fields of the given mask, as UTF-8 bytes
+     *
+     * @param fields is a fields= mask, or null for all the fields
+     */
+    static byte[] response(int items, String projection, String fields) throws JSONException {
+        String json = responseJson(items, projection);
+        if (fields != null) {
+            json = FieldMask.parse(fields).apply(json);
+        }
+        return json.getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Return a response with the given number of volumes in the given projection
+     */
+    static String responseJson(int items, String projection) {
+        boolean full = PROJECTION_FULL.equals(projection);
+        Random random = new Random(items * 31 + (full ? 1 : 0));
+        StringBuilder json = new StringBuilder(items * (full ? 3000 : 1200));
+        json.append("{\n \"kind\": \"books#volumes\",\n \"totalItems\": ").append(items * 25).append(",\n \"items\": [\n");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                json.append(",\n");
+            }
+            appendVolume(json, i, full, random);
+        }
+        json.append("\n ]\n}\n");
+        return json.toString();
+    }
+
+    private static void appendVolume(StringBuilder json, int index, boolean full, Random random) {
+        String id = volumeId(index, random);
+        json.append("  {\n   \"kind\": \"books#volume\",\n   \"id\": ").append(quote(id));
+        json.append(",\n   \"etag\": ").append(quote(Long.toHexString(random.nextLong())));
+        json.append(",\n   \"selfLink\": ").append(quote("https://www.googleapis.com/books/v1/volumes/" + id));
+        json.append(",\n   \"volumeInfo\": {\n    \"title\": ").append(quote(words(random, 2 + random.nextInt(5))));
+        if (full) {
+            json.append(",\n    \"subtitle\": ").append(quote(words(random, 3 + random.nextInt(6))));
+        }
+        json.append(",\n    \"authors\": [");
+        int authors = 1 + random.nextInt(3);
+        for (int i = 0; i < authors; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append(quote(NAMES[random.nextInt(NAMES.length)] + " " + capitalize(WORDS[random.nextInt(WORDS.length)])));
+        }
+        json.append("]");
+        json.append(",\n    \"publisher\": ").append(quote(capitalize(words(random, 2)) + " Press"));
+        json.append(",\n    \"publishedDate\": ").append(quote(String.valueOf(1990 + random.nextInt(28))));
+        json.append(",\n    \"description\": ").append(quote(words(random, full ? 120 : 30)));
+        if (full) {
+            json.append(",\n    \"industryIdentifiers\": [\n     {\"type\": \"ISBN_10\", \"identifier\": ")
+                    .append(quote(digits(random, 10))).append("},\n     {\"type\": \"ISBN_13\", \"identifier\": ")
+                    .append(quote(digits(random, 13))).append("}\n    ]");
+        }
+        json.append(",\n    \"readingModes\": {\"text\": ").append(random.nextBoolean())
+                .append(", \"image\": ").append(random.nextBoolean()).append("}");
+        if (full) {
+            json.append(",\n    \"pageCount\": ").append(50 + random.nextInt(900));
+            json.append(",\n    \"printType\": \"BOOK\"");
+            json.append(",\n    \"categories\": [").append(quote(capitalize(words(random, 2)))).append("]");
+            json.append(",\n    \"averageRating\": ").append(1 + random.nextInt(9) / 2.0);
+            json.append(",\n    \"ratingsCount\": ").append(random.nextInt(500));
+        }
+        json.append(",\n    \"maturityRating\": \"NOT_MATURE\"");
+        json.append(",\n    \"allowAnonLogging\": false");
+        json.append(",\n    \"contentVersion\": \"0.").append(random.nextInt(10)).append(".0.0.preview.1\"");
+        // Some volumes have no cover, as in the real responses
+        if (random.nextInt(10) != 0) {
+            json.append(",\n    \"imageLinks\": {\n     \"smallThumbnail\": ")
+                    .append(quote("http://books.google.com/books/content?id=" + id + "&printsec=frontcover&img=1&zoom=5&source=gbs_api"))
+                    .append(",\n     \"thumbnail\": ")
+                    .append(quote("http://books.google.com/books/content?id=" + id + "&printsec=frontcover&img=1&zoom=1&source=gbs_api"))
+                    .append("\n    }");
+        }
+        json.append(",\n    \"language\": \"en\"");
+        json.append(",\n    \"previewLink\": ").append(quote("http://books.google.com/books?id=" + id + "&printsec=frontcover&dq=android&hl=&cd=" + index + "&source=gbs_api"));
+        json.append(",\n    \"infoLink\": ").append(quote("http://books.google.com/books?id=" + id + "&dq=android&hl=&source=gbs_api"));
+        json.append(",\n    \"canonicalVolumeLink\": ").append(quote("https://books.google.com/books/about/Book.html?hl=&id=" + id));
+        json.append("\n   }");
+        if (full) {
+            json.append(",\n   \"saleInfo\": {\n    \"country\": \"US\",\n    \"saleability\": \"FOR_SALE\",\n    \"isEbook\": true,")
+                    .append("\n    \"listPrice\": {\"amount\": ").append(random.nextInt(60)).append(".99, \"currencyCode\": \"USD\"}")
+                    .append(",\n    \"buyLink\": ").append(quote("https://play.google.com/store/books/details?id=" + id + "&rdid=book-" + id))
+                    .append("\n   }");
+            json.append(",\n   \"accessInfo\": {\n    \"country\": \"US\",\n    \"viewability\": \"PARTIAL\",")
+                    .append("\n    \"embeddable\": true,\n    \"publicDomain\": false,\n    \"textToSpeechPermission\": \"ALLOWED\",")
+                    .append("\n    \"epub\": {\"isAvailable\": false},\n    \"pdf\": {\"isAvailable\": true},")
+                    .append("\n    \"webReaderLink\": ").append(quote("http://play.google.com/books/reader?id=" + id + "&hl=&printsec=frontcover&source=gbs_api"))
+                    .append(",\n    \"accessViewStatus\": \"SAMPLE\",\n    \"quoteSharingAllowed\": false\n   }");
+        }
+        json.append(",\n   \"searchInfo\": {\n    \"textSnippet\": ").append(quote("&quot;" + words(random, 20) + "&quot; ...")).append("\n   }");
+        json.append("\n  }");
+    }
+
+    private static String volumeId(int index, Random random) {
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789_-";
+        StringBuilder id = new StringBuilder(12);
+        for (int i = 0; i < 8; i++) {
+            id.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return id.append(String.format("%04d", index)).toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private static String digits(Random random, int count) {
+        StringBuilder text = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            text.append((char) ('0' + random.nextInt(10)));
+        }
+        return text.toString();
+    }
+
+    private static String capitalize(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    // Return the text as a JSON string. Non-ASCII characters are kept as UTF-8, as the API does
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
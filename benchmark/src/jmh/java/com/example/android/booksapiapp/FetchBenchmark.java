@@ -0,0 +1,106 @@
+package com.example.android.booksapiapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of {@link BookUtils#fetchBookData}, from the request URL to the
+ * books, against a {@link StandInServer} on the loopback interface. The latency includes
+ * the request policy, the HTTP client, gzip and parsing, but no real network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FetchBenchmark {
+
+    // Every fetch goes to the server
+    public static final String CACHE_NONE = "none";
+
+    // The response is served from the memory cache
+    public static final String CACHE_FRESH = "fresh";
+
+    // All the fields of the projection are requested
+    public static final String FIELDS_ALL = "all";
+
+    // Only the fields of the view are requested, like the app does: the list view with the
+    // lite projection and the ratings view with the full projection
+    public static final String FIELDS_VIEW = "view";
+
+    @Param({"10", "40"})
+    public int items;
+
+    @Param({BookFixtures.PROJECTION_LITE, BookFixtures.PROJECTION_FULL})
+    public String projection;
+
+    @Param({FIELDS_ALL, FIELDS_VIEW})
+    public String fields;
+
+    @Param({"dom", "streaming"})
+    public String parser;
+
+    @Param({CACHE_NONE, CACHE_FRESH})
+    public String cacheMode;
+
+    private StandInServer server;
+
+    private ResponseCache cache;
+
+    private File cacheDir;
+
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StandInServer();
+        StandInServer.liftRateLimit();
+        String requestUrl;
+        if (FIELDS_VIEW.equals(fields)) {
+            requestUrl = server.volumesUrl("android", BookFixtures.PROJECTION_FULL.equals(projection)
+                    ? BookQueryBuilder.VIEW_RATINGS : BookQueryBuilder.VIEW_LIST);
+        } else {
+            requestUrl = server.volumesUrl("android", projection);
+        }
+        url = BookUtils.pageUrl(requestUrl, 0, items);
+        BookUtils.setParser("dom".equals(parser) ? BookUtils.PARSER_DOM : BookUtils.PARSER_STREAMING);
+        if (CACHE_FRESH.equals(cacheMode)) {
+            cacheDir = File.createTempFile("fetch-benchmark", "");
+            cacheDir.delete();
+            cache = new ResponseCache(cacheDir, TimeUnit.HOURS.toMillis(1), 4 * 1024 * 1024, 16 * 1024 * 1024);
+        }
+        if (fetch() == null) {
+            throw new IllegalStateException("The stand-in server did not return any books for " + url);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+        if (cacheDir != null) {
+            File[] files = cacheDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            cacheDir.delete();
+        }
+    }
+
+    @Benchmark
+    public List<Book> fetch() {
+        return BookUtils.fetchBookData(url, cache);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.booksapiapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A fields= mask of the Google Books API, e.g. "items(id,volumeInfo(title,imageLinks/smallThumbnail))",
+ * applied to a response by the {@link StandInServer} like the real API does: an object only
+ * keeps the selected fields, and a mask applied to an array applies to each element.
+ */
+final class FieldMask {
+
+    // The selected fields, with the mask of their own fields or null to keep them whole
+    private final Map<String, FieldMask> fields = new LinkedHashMap<>();
+
+    private FieldMask() {
+    }
+
+    /**
+     * Parse the given mask, in the syntax of the fields= parameter
+     */
+    static FieldMask parse(String mask) {
+        FieldMask fieldMask = new FieldMask();
+        int end = fieldMask.parseList(mask, 0);
+        if (end != mask.length()) {
+            throw new IllegalArgumentException("Unexpected '" + mask.charAt(end) + "' at " + end + " in " + mask);
+        }
+        return fieldMask;
+    }
+
+    /**
+     * Return the given JSON response with only the fields of the mask
+     */
+    String apply(String json) throws JSONException {
+        return ((JSONObject) apply(new JSONObject(json))).toString(1);
+    }
+
+    private Object apply(Object value) throws JSONException {
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            JSONArray masked = new JSONArray();
+            for (int i = 0; i < array.length(); i++) {
+                masked.put(apply(array.get(i)));
+            }
+            return masked;
+        }
+        if (!(value instanceof JSONObject)) {
+            return value;
+        }
+        JSONObject object = (JSONObject) value;
+        JSONObject masked = new JSONObject();
+        for (Map.Entry<String, FieldMask> field : fields.entrySet()) {
+            if (object.has(field.getKey())) {
+                Object fieldValue = object.get(field.getKey());
+                masked.put(field.getKey(), field.getValue() == null ? fieldValue : field.getValue().apply(fieldValue));
+            }
+        }
+        return masked;
+    }
+
+    // Parses comma separated fields from the given position, up to a ')' or the end
+    private int parseList(String mask, int position) {
+        position = parseField(mask, position);
+        while (position < mask.length() && mask.charAt(position) == ',') {
+            position = parseField(mask, position + 1);
+        }
+        return position;
+    }
+
+    // Parses a field, a field with a sub-mask in parentheses, or a path of fields
+    private int parseField(String mask, int position) {
+        int end = position;
+        while (end < mask.length() && ",()/".indexOf(mask.charAt(end)) == -1) {
+            end++;
+        }
+        if (end == position) {
+            throw new IllegalArgumentException("Missing field name at " + position + " in " + mask);
+        }
+        String name = mask.substring(position, end);
+        if (end < mask.length() && mask.charAt(end) == '/') {
+            FieldMask child = childOf(name);
+            return child.parseField(mask, end + 1);
+        }
+        if (end < mask.length() && mask.charAt(end) == '(') {
+            FieldMask child = childOf(name);
+            end = child.parseList(mask, end + 1);
+            if (end >= mask.length() || mask.charAt(end) != ')') {
+                throw new IllegalArgumentException("Missing ')' at " + end + " in " + mask);
+            }
+            return end + 1;
+        }
+        fields.put(name, null);
+        return end;
+    }
+
+    // Returns the mask of the given field, created when the field is not selected yet
+    private FieldMask childOf(String name) {
+        FieldMask child = fields.get(name);
+        if (child == null) {
+            child = new FieldMask();
+            fields.put(name, child);
+        }
+        return child;
+    }
+}
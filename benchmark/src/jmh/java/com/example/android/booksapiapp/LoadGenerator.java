@@ -0,0 +1,205 @@
+package com.example.android.booksapiapp;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a fixed number of fetches through the whole pipeline of the app, the request policy,
+ * the HTTP client, gzip and parsing, from several threads at once, and prints the
+ * throughput and the latency percentiles. The requests go to a {@link StandInServer}
+ * started with the {@link ServerFaults} of the options, or to the server of the --url option.
+ * <p>
+ * Each client thread fetches the next request as soon as its previous one is done. The
+ * requests are the pages of a fixed set of queries, always in the same order, so two runs
+ * with the same options can be compared. Run it with e.g.
+ * <pre>
+ * ./gradlew :benchmark:loadTest -PloadArgs="--clients=16 --requests=5000 --latency=50 --jitter=100 --errors=0.02 --truncate=0.01"
+ * </pre>
+ * Options: --clients, --requests, --warmup (requests not measured), --queries (number of
+ * distinct queries), --page-size, --parser (dom or streaming), --cache (serve repeated
+ * pages from a response cache), --url (base URL of another server), --recordings, --rate
+ * and --burst (the rate limit of the {@link RequestScheduler}, none by default) and the
+ * options of {@link ServerFaults#fromOptions(Map)}. A server with a --quota is compared
+ * with a rate limit of the app at that quota with e.g.
+ * <pre>
+ * ./gradlew :benchmark:loadTest -PloadArgs="--clients=16 --requests=1000 --latency=50 --quota=100 --rate=100 --burst=10"
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    // Number of pages fetched for each query
+    private static final int PAGES_PER_QUERY = 5;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = StandInServer.options(args);
+        int clients = intOption(options, "clients", 8);
+        final int requests = intOption(options, "requests", 2000);
+        final int warmup = intOption(options, "warmup", 200);
+        final int queries = intOption(options, "queries", 50);
+        final int pageSize = intOption(options, "page-size", 20);
+
+        if (options.containsKey("rate")) {
+            RequestPolicy.getDefault().getScheduler().setRate(Double.parseDouble(options.get("rate")),
+                    intOption(options, "burst", RequestScheduler.DEFAULT_BURST));
+        } else {
+            StandInServer.liftRateLimit();
+        }
+
+        // The JsonReader of the framework cannot always refill its buffer on the JVM
+        BookUtils.setParser("streaming".equals(options.get("parser")) ? BookUtils.PARSER_STREAMING : BookUtils.PARSER_DOM);
+
+        StandInServer server = null;
+        final String baseUrl;
+        if (options.containsKey("url")) {
+            baseUrl = options.get("url");
+        } else {
+            File recordings = options.containsKey("recordings") ? new File(options.get("recordings")) : null;
+            server = new StandInServer("127.0.0.1", 0, ServerFaults.fromOptions(options), recordings);
+            baseUrl = server.baseUrl();
+        }
+        File cacheDir = null;
+        final ResponseCache cache;
+        if (options.containsKey("cache")) {
+            cacheDir = File.createTempFile("load-generator", "");
+            cacheDir.delete();
+            cache = new ResponseCache(cacheDir, TimeUnit.HOURS.toMillis(1), 4 * 1024 * 1024, 64 * 1024 * 1024);
+        } else {
+            cache = null;
+        }
+
+        // The failed fetches log their stack traces, which would bury the report
+        PrintStream err = System.err;
+        if (!options.containsKey("verbose")) {
+            System.setErr(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+        }
+
+        final long[] latencies = new long[requests];
+        final long[] starts = new long[requests];
+        final long[] ends = new long[requests];
+        final AtomicInteger nextRequest = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger incomplete = new AtomicInteger();
+        final AtomicInteger books = new AtomicInteger();
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int request;
+                    while ((request = nextRequest.getAndIncrement()) < warmup + requests) {
+                        String url = requestUrl(baseUrl, request, queries, pageSize);
+                        long start = System.nanoTime();
+                        List<Book> page = BookUtils.fetchBookData(url, cache);
+                        long end = System.nanoTime();
+                        if (request < warmup) {
+                            continue;
+                        }
+                        int measured = request - warmup;
+                        starts[measured] = start;
+                        ends[measured] = end;
+                        latencies[measured] = end - start;
+                        if (page == null) {
+                            failed.incrementAndGet();
+                        } else {
+                            books.addAndGet(page.size());
+                            if (!ParsedBooks.isComplete(page)) {
+                                incomplete.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            }, "load-client-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.setErr(err);
+
+        try {
+            report(options, clients, latencies, starts, ends, failed.get(), incomplete.get(), books.get());
+            if (server != null) {
+                System.out.println(server);
+            }
+            System.out.println(BookHttpClient.getDefault());
+            System.out.println(BookUtils.getNetworkFetches());
+            System.out.println(RequestPolicy.getDefault().getScheduler());
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+            deleteDirectory(cacheDir);
+        }
+    }
+
+    /**
+     * Return the URL of the given request: the pages of each query in turn, like a user
+     * scrolling through the results
+     */
+    static String requestUrl(String baseUrl, int request, int queries, int pageSize) {
+        String query = "load" + request % queries;
+        int page = request / queries % PAGES_PER_QUERY;
+        String requestUrl = new BookQueryBuilder(baseUrl).setQuery(query).setView(BookQueryBuilder.VIEW_LIST).build();
+        return BookUtils.pageUrl(requestUrl, page * pageSize, pageSize);
+    }
+
+    private static void report(Map<String, String> options, int clients, long[] latencies, long[] starts, long[] ends,
+                               int failed, int incomplete, int books) {
+        int count = latencies.length;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            first = Math.min(first, starts[i]);
+            last = Math.max(last, ends[i]);
+        }
+        double seconds = (last - first) / 1e9;
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+
+        System.out.println("options: " + options);
+        System.out.println(String.format(Locale.US, "%d requests from %d clients in %.2f s: %.1f requests/s, %.1f books/s",
+                count, clients, seconds, count / seconds, books / seconds));
+        System.out.println(String.format(Locale.US, "failed %d (%.2f%%), incomplete %d (%.2f%%)",
+                failed, 100.0 * failed / count, incomplete, 100.0 * incomplete / count));
+        System.out.println(String.format(Locale.US, "latency ms: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 99.9),
+                sorted[count - 1] / 1e6));
+    }
+
+    // Returns the given percentile of the sorted latencies, in milliseconds
+    static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private static void deleteDirectory(File dir) {
+        if (dir == null) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.booksapiapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast a response body is turned into books by each parser. Divide the
+ * gc.alloc.rate.norm of the gc profiler by the item count for the bytes allocated per book.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+
+    @Param({"10", "40", "1000"})
+    public int items;
+
+    @Param({BookFixtures.PROJECTION_LITE, BookFixtures.PROJECTION_FULL})
+    public String projection;
+
+    private byte[] body;
+
+    private String bodyJson;
+
+    @Setup
+    public void setUp() {
+        body = BookFixtures.response(items, projection);
+        bodyJson = BookFixtures.responseJson(items, projection);
+    }
+
+    /**
+     * Read the body into a String, the first step of the DOM parser
+     */
+    @Benchmark
+    public String readFromStream() throws IOException {
+        return BookUtils.readFromStream(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Parse a body already read into a String with org.json
+     */
+    @Benchmark
+    public List<Book> extractFromJson() {
+        return BookUtils.extractFromJson(bodyJson);
+    }
+
+    /**
+     * Read and parse a body with org.json, the whole DOM parser
+     */
+    @Benchmark
+    public List<Book> domParser() throws IOException {
+        return BookUtils.extractFromJson(BookUtils.readFromStream(new ByteArrayInputStream(body)));
+    }
+
+    /**
+     * Parse a body while it is read with the streaming parser
+     */
+    @Benchmark
+    public List<Book> streamingParser() throws IOException {
+        return BookUtils.extractFromStream(new ByteArrayInputStream(body));
+    }
+}
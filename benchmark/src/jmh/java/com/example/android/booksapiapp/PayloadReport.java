@@ -0,0 +1,74 @@
+package com.example.android.booksapiapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prints the bytes each kind of request transfers from the {@link StandInServer}, and the
+ * bytes the fields= mask of {@link BookQueryBuilder} saves per request compared with the
+ * request the app made before, the lite projection with all its fields.
+ * <p>
+ * Run it with
+ * <pre>
+ * ./gradlew :benchmark:payloadReport
+ * </pre>
+ */
+public final class PayloadReport {
+
+    // The sizes of the first and the following pages of a BookSearch
+    private static final int[] PAGE_SIZES = {10, 20};
+
+    private PayloadReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        // The JsonReader of the framework cannot always refill its buffer on the JVM
+        BookUtils.setParser(BookUtils.PARSER_DOM);
+        StandInServer server = new StandInServer();
+        StandInServer.liftRateLimit();
+        try {
+            System.out.println(String.format(Locale.US, "%-22s %5s %10s %10s %10s %10s %7s",
+                    "request", "books", "gzip B", "json B", "B/book", "saved B", "saved"));
+            for (int pageSize : PAGE_SIZES) {
+                long before = report(server, "lite, all fields", server.volumesUrl("android", BookFixtures.PROJECTION_LITE), pageSize, 0);
+                report(server, "full, all fields", server.volumesUrl("android", BookFixtures.PROJECTION_FULL), pageSize, before);
+                report(server, "list view", server.volumesUrl("android", BookQueryBuilder.VIEW_LIST), pageSize, before);
+                report(server, "ratings view", server.volumesUrl("android", BookQueryBuilder.VIEW_RATINGS), pageSize, before);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    // Prints a line for the given request and returns the bytes it transferred
+    private static long report(StandInServer server, String name, String requestUrl, int pageSize, long before)
+            throws IOException {
+        String url = BookUtils.pageUrl(requestUrl, 0, pageSize);
+        long decoded = 0;
+        BookHttpClient.Response response = BookHttpClient.getDefault().get(new URL(url), null);
+        try {
+            InputStream body = response.getBody();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                decoded += read;
+            }
+        } finally {
+            response.close();
+        }
+        long transferred = response.getBytesReceived();
+
+        // Make sure the masked response still has everything the parser reads
+        List<Book> books = BookUtils.fetchBookData(url, null);
+        int count = books == null ? 0 : books.size();
+        long saved = before - transferred;
+        System.out.println(String.format(Locale.US, "%-22s %5d %10d %10d %10d %10s %7s",
+                name, count, transferred, decoded, count == 0 ? 0 : transferred / count,
+                before == 0 ? "-" : String.valueOf(saved),
+                before == 0 ? "-" : String.format(Locale.US, "%.0f%%", 100.0 * saved / before)));
+        return transferred;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.android.booksapiapp;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The network conditions and the errors a {@link StandInServer} simulates: a latency before
+ * the response headers, a bandwidth limit on the body, and a share of the responses that
+ * fail with 503 Service Unavailable, with 429 Too Many Requests or with a body cut off in
+ * the middle. A quota can also limit the number of requests answered each second, like the
+ * per-user quota of the Books API, and answer the requests over it with 429.
+ * <p>
+ * What happens to a request only depends on the seed and on the order the request arrived
+ * in, so a run with the same seed and the same number of requests gets the same faults.
+ */
+final class ServerFaults {
+
+    // What happens to a request
+    static final int OK = 0;
+    static final int SERVER_ERROR = 1;
+    static final int TOO_MANY_REQUESTS = 2;
+    static final int TRUNCATED = 3;
+
+    private long latencyMillis;
+    private long jitterMillis;
+    private long bytesPerSecond;
+    private double serverErrorRate;
+    private double tooManyRequestsRate;
+    private int retryAfterSeconds = 1;
+    private double truncateRate;
+    private int quotaPerSecond;
+    private long seed = 42;
+
+    /**
+     * Return the faults given by the --latency, --jitter, --bandwidth, --errors, --throttle,
+     * --retry-after, --truncate, --quota and --seed options, and none for the missing ones
+     */
+    static ServerFaults fromOptions(Map<String, String> options) {
+        ServerFaults faults = new ServerFaults();
+        if (options.containsKey("latency")) {
+            faults.setLatency(Long.parseLong(options.get("latency")),
+                    options.containsKey("jitter") ? Long.parseLong(options.get("jitter")) : 0);
+        }
+        if (options.containsKey("bandwidth")) {
+            faults.setBandwidth(Long.parseLong(options.get("bandwidth")));
+        }
+        if (options.containsKey("errors")) {
+            faults.setServerErrorRate(Double.parseDouble(options.get("errors")));
+        }
+        if (options.containsKey("throttle")) {
+            faults.setTooManyRequestsRate(Double.parseDouble(options.get("throttle")),
+                    options.containsKey("retry-after") ? Integer.parseInt(options.get("retry-after")) : 1);
+        }
+        if (options.containsKey("truncate")) {
+            faults.setTruncateRate(Double.parseDouble(options.get("truncate")));
+        }
+        if (options.containsKey("quota")) {
+            faults.setQuota(Integer.parseInt(options.get("quota")));
+        }
+        if (options.containsKey("seed")) {
+            faults.setSeed(Long.parseLong(options.get("seed")));
+        }
+        return faults;
+    }
+
+    /**
+     * Wait the given time, plus a random time up to the jitter, before the response headers
+     */
+    ServerFaults setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Send the body at the given rate, or as fast as possible when it is 0
+     */
+    ServerFaults setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Answer the given share of the requests with 503 Service Unavailable
+     */
+    ServerFaults setServerErrorRate(double rate) {
+        serverErrorRate = rate;
+        return this;
+    }
+
+    /**
+     * Answer the given share of the requests with 429 Too Many Requests and a Retry-After
+     * of the given number of seconds
+     */
+    ServerFaults setTooManyRequestsRate(double rate, int retryAfterSeconds) {
+        tooManyRequestsRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Close the connection in the middle of the body of the given share of the responses
+     */
+    ServerFaults setTruncateRate(double rate) {
+        truncateRate = rate;
+        return this;
+    }
+
+    /**
+     * Answer at most the given number of requests each second, and the requests over it
+     * with 429 Too Many Requests, or any number of requests when it is 0
+     */
+    ServerFaults setQuota(int requestsPerSecond) {
+        quotaPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    ServerFaults setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    // Getter method that returns the bandwidth limit, 0 for none
+    long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    // Getter method that returns the number of requests answered each second, 0 for any number
+    int getQuotaPerSecond() {
+        return quotaPerSecond;
+    }
+
+    // Getter method that returns the Retry-After of the 429 responses
+    int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Return the random numbers of the given request, the same for every run
+     */
+    Random randomFor(long requestNumber) {
+        return new Random(seed * 1000003 + requestNumber);
+    }
+
+    /**
+     * Return the latency of the request with the given random numbers
+     */
+    long latencyMillis(Random random) {
+        return latencyMillis + (jitterMillis > 0 ? (long) (random.nextDouble() * jitterMillis) : 0);
+    }
+
+    /**
+     * Return what happens to the request with the given random numbers, one of the constants above
+     */
+    int outcome(Random random) {
+        double roll = random.nextDouble();
+        if (roll < serverErrorRate) {
+            return SERVER_ERROR;
+        }
+        roll -= serverErrorRate;
+        if (roll < tooManyRequestsRate) {
+            return TOO_MANY_REQUESTS;
+        }
+        roll -= tooManyRequestsRate;
+        if (roll < truncateRate) {
+            return TRUNCATED;
+        }
+        return OK;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "latency=%d+%dms bandwidth=%s errors=%.3f throttle=%.3f (Retry-After %ds) truncate=%.3f quota=%s seed=%d",
+                latencyMillis, jitterMillis, bytesPerSecond > 0 ? bytesPerSecond + "B/s" : "unlimited",
+                serverErrorRate, tooManyRequestsRate, retryAfterSeconds, truncateRate,
+                quotaPerSecond > 0 ? quotaPerSecond + "/s" : "none", seed);
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.android.booksapiapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the Google Books API, which answers every request to /volumes with
+ * a {@link BookFixtures} response. The number of volumes comes from the maxResults
+ * parameter, the projection from the projection parameter and the fields from the fields
+ * mask, as in the real API.
+ * <p>
+ * Like the real API it compresses the response when the client accepts gzip, sends an
+ * ETag, and answers 304 Not Modified when the client already has the response.
+ * <p>
+ * Responses recorded from the real API can be replayed instead: a query with a file named
+ * after it in the recordings directory, e.g. android.json for q=android, is answered with
+ * the volumes of that file from startIndex on, with the fields mask applied. A recording
+ * is made with e.g.
+ * <pre>
+ * curl -o android.json "https://www.googleapis.com/books/v1/volumes?q=android&amp;maxResults=40"
+ * </pre>
+ * The {@link ServerFaults} add latency, limit the bandwidth, and fail some of the requests.
+ * The server can also run on its own, for an app built with
+ * -PbooksApiBaseUrl=http://10.0.2.2:8080/volumes on the emulator:
+ * <pre>
+ * ./gradlew :benchmark:standInServer -PserverArgs="--port=8080 --latency=300 --jitter=200 --errors=0.05"
+ * </pre>
+ */
+final class StandInServer {
+
+    private static final String ETAG = "\"fixture\"";
+
+    // Size of the chunks the body is written in when the bandwidth is limited
+    private static final int THROTTLE_CHUNK_BYTES = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Rate of the app when the server has no quota, far above what the loopback can serve
+    private static final double UNLIMITED_PERMITS_PER_SECOND = 1e9;
+
+    static {
+        // Without TCP_NODELAY the headers and the body wait for each other's ACK, adding ~40 ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    // One thread per request being answered, so the latency of a request does not delay the others
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    // Response bodies already built, keyed by volume count, projection and fields
+    private final Map<String, byte[]> bodies = new HashMap<>();
+
+    private final ServerFaults faults;
+
+    // Directory of the recorded responses, or null to only serve generated ones
+    private final File recordings;
+
+    // Number of the next request, which decides its faults
+    private final AtomicLong requestCount = new AtomicLong();
+
+    // Number of requests answered with each outcome of ServerFaults
+    private final AtomicLongArray outcomeCounts = new AtomicLongArray(4);
+
+    // Second of the quota and the number of requests answered in it, guarded by this
+    private long quotaSecond;
+    private int quotaUsed;
+
+    // Number of requests answered with 429 because they were over the quota
+    private final AtomicLong overQuotaCount = new AtomicLong();
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Starts a {@link StandInServer} on a free port of the loopback interface, without faults
+     */
+    StandInServer() throws IOException {
+        this("127.0.0.1", 0, new ServerFaults(), null);
+    }
+
+    /**
+     * CONSTRUCTOR
+     * <p>
+     * Starts a {@link StandInServer} with the given faults
+     *
+     * @param host       is the address to listen on, e.g. 0.0.0.0 for an emulator or a device
+     * @param port       is the port to listen on, or 0 for a free one
+     * @param faults     is the faults to simulate
+     * @param recordings is the directory of the recorded responses, or null
+     */
+    StandInServer(String host, int port, ServerFaults faults, File recordings) throws IOException {
+        this.faults = faults;
+        this.recordings = recordings;
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.setExecutor(executor);
+        server.createContext("/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Return the request URL of the given query, without paging parameters and fields mask
+     */
+    String volumesUrl(String query, String projection) {
+        return baseUrl() + "?projection=" + projection + "&q=" + query;
+    }
+
+    /**
+     * Return the request URL the app builds for the given query in the given view of
+     * {@link BookQueryBuilder}, without paging parameters
+     */
+    String volumesUrl(String query, int view) {
+        return new BookQueryBuilder(baseUrl()).setQuery(query).setView(view).build();
+    }
+
+    // Returns the URL of the volumes collection
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/volumes";
+    }
+
+    /**
+     * Lift the rate limit of the app, for the runs that measure the pipeline rather than
+     * the quota of the server
+     */
+    static void liftRateLimit() {
+        RequestPolicy.getDefault().getScheduler().setRate(UNLIMITED_PERMITS_PER_SECOND, Integer.MAX_VALUE);
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // Returns the number of requests answered with the given outcome of ServerFaults
+    long getOutcomeCount(int outcome) {
+        return outcomeCounts.get(outcome);
+    }
+
+    @Override
+    public String toString() {
+        return "StandInServer[requests=" + requestCount.get() + ", ok=" + getOutcomeCount(ServerFaults.OK)
+                + ", 503=" + getOutcomeCount(ServerFaults.SERVER_ERROR)
+                + ", 429=" + getOutcomeCount(ServerFaults.TOO_MANY_REQUESTS)
+                + ", truncated=" + getOutcomeCount(ServerFaults.TRUNCATED)
+                + ", overQuota=" + overQuotaCount.get() + "]";
+    }
+
+    /**
+     * Serve the stand-in API until the process is stopped, with the faults of the options,
+     * see {@link ServerFaults#fromOptions(Map)}, on the port of the --port option
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = options(args);
+        int port = options.containsKey("port") ? Integer.parseInt(options.get("port")) : 8080;
+        File recordings = options.containsKey("recordings") ? new File(options.get("recordings")) : null;
+        ServerFaults faults = ServerFaults.fromOptions(options);
+        new StandInServer("0.0.0.0", port, faults, recordings);
+        System.out.println("Serving http://0.0.0.0:" + port + "/volumes with " + faults);
+    }
+
+    /**
+     * Return the --name=value options of the command line, by name
+     */
+    static Map<String, String> options(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Not an option: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        Random random = faults.randomFor(requestCount.getAndIncrement());
+        sleep(faults.latencyMillis(random));
+        int outcome = faults.outcome(random);
+        if (outcome == ServerFaults.OK && !withinQuota()) {
+            overQuotaCount.incrementAndGet();
+            outcome = ServerFaults.TOO_MANY_REQUESTS;
+        }
+        outcomeCounts.incrementAndGet(outcome);
+        if (outcome == ServerFaults.SERVER_ERROR) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        if (outcome == ServerFaults.TOO_MANY_REQUESTS) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(faults.getRetryAfterSeconds()));
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+            return;
+        }
+
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        int items = params.containsKey("maxResults") ? Integer.parseInt(params.get("maxResults")) : 10;
+        int startIndex = params.containsKey("startIndex") ? Integer.parseInt(params.get("startIndex")) : 0;
+        String query = params.containsKey("q") ? URLDecoder.decode(params.get("q"), "UTF-8") : "";
+        String projection = params.containsKey("projection") ? params.get("projection") : BookFixtures.PROJECTION_FULL;
+        String fields = params.containsKey("fields") ? URLDecoder.decode(params.get("fields"), "UTF-8") : null;
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        byte[] body;
+        try {
+            File recording = recordingOf(query);
+            body = recording != null ? replay(recording, startIndex, items, fields, gzip)
+                    : body(items, projection, fields, gzip);
+        } catch (IllegalArgumentException | JSONException e) {
+            // Like the API, answer an invalid fields mask with 400 Bad Request
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            if (outcome == ServerFaults.TRUNCATED) {
+                // Closing the stream before the announced length drops the connection
+                write(out, body, body.length / 2);
+            } else {
+                write(out, body, body.length);
+            }
+            out.close();
+        } catch (IOException e) {
+            // The body was cut off on purpose, or the client went away
+            exchange.close();
+        }
+    }
+
+    /**
+     * Write the given number of bytes of the body, at the bandwidth of the faults
+     */
+    /**
+     * Count the request against the quota of the current second
+     *
+     * @return false if the quota of this second is already used up
+     */
+    private synchronized boolean withinQuota() {
+        if (faults.getQuotaPerSecond() <= 0) {
+            return true;
+        }
+        long second = System.nanoTime() / 1000000000L;
+        if (second != quotaSecond) {
+            quotaSecond = second;
+            quotaUsed = 0;
+        }
+        return ++quotaUsed <= faults.getQuotaPerSecond();
+    }
+
+    private void write(OutputStream out, byte[] body, int length) throws IOException {
+        long bytesPerSecond = faults.getBytesPerSecond();
+        if (bytesPerSecond <= 0) {
+            out.write(body, 0, length);
+            return;
+        }
+        long start = System.nanoTime();
+        for (int offset = 0; offset < length; offset += THROTTLE_CHUNK_BYTES) {
+            int count = Math.min(THROTTLE_CHUNK_BYTES, length - offset);
+            out.write(body, offset, count);
+            out.flush();
+            // Wait until the bytes written so far took as long as the bandwidth allows
+            long dueNanos = (offset + count) * 1000000000L / bytesPerSecond;
+            sleep((dueNanos - (System.nanoTime() - start)) / 1000000);
+        }
+    }
+
+    // Returns the recorded response of the query, or null if there is none
+    private File recordingOf(String query) {
+        if (recordings == null || query.isEmpty()) {
+            return null;
+        }
+        File file = new File(recordings, query.replaceAll("[^A-Za-z0-9_-]", "_") + ".json");
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Return the page of the recorded response that starts at the given index
+     */
+    private synchronized byte[] replay(File recording, int startIndex, int items, String fields, boolean gzip)
+            throws IOException, JSONException {
+        String key = recording.getName() + "/" + startIndex + "/" + items + "/" + fields + "/" + gzip;
+        byte[] body = bodies.get(key);
+        if (body == null) {
+            JSONObject response = new JSONObject(new String(readFully(recording), UTF_8));
+            JSONArray recordedItems = response.optJSONArray("items");
+            JSONArray page = new JSONArray();
+            for (int i = startIndex; recordedItems != null && i < Math.min(recordedItems.length(), startIndex + items); i++) {
+                page.put(recordedItems.get(i));
+            }
+            // Like the API, a page past the last volume has no items at all
+            if (page.length() > 0) {
+                response.put("items", page);
+            } else {
+                response.remove("items");
+            }
+            String json = response.toString();
+            if (fields != null) {
+                json = FieldMask.parse(fields).apply(json);
+            }
+            body = json.getBytes(UTF_8);
+            if (gzip) {
+                body = gzip(body);
+            }
+            bodies.put(key, body);
+        }
+        return body;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized byte[] body(int items, String projection, String fields, boolean gzip)
+            throws IOException, JSONException {
+        String key = items + "/" + projection + "/" + fields + "/" + gzip;
+        byte[] body = bodies.get(key);
+        if (body == null) {
+            body = BookFixtures.response(items, projection, fields);
+            if (gzip) {
+                body = gzip(body);
+            }
+            bodies.put(key, body);
+        }
+        return body;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals > 0) {
+                params.put(param.substring(0, equals), param.substring(equals + 1));
+            }
+        }
+        return params;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(body);
+        out.close();
+        return bytes.toByteArray();
+    }
+}